@@ -1,9 +1,20 @@
 package com.hcl.feb.api;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
 /**
@@ -79,6 +90,8 @@ public interface FEBAPI {
 	 * filters.addFilter(new FEBFilterParam("F_Status","equals","Closed"));
 	 * filters.addFilter(new FEBFilterParam("F_Owner","equals","CDawes"));} 
 	 * </pre>
+	 * With keyset paging enabled (FEBFilters.setKeysetPaging) the last line ID of a JSON page is recorded in the filters, so
+	 * filters.nextPage() moves on to the records after it.  Keyset paging cannot be combined with AT_LEAST_ONE_MATCHES.
 	 * @param returnFormat - The format to return the data.  Valid values are XML and JSON, defaults to JSON.
 	 * 
 	 * @return FEBResponse
@@ -88,6 +101,102 @@ public interface FEBAPI {
 	 */
 	public FEBResponse listRecords (String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat) throws FEBAPIException;
 	
+	/**
+	 * Exports the records that match the filters and writes the response directly to a file, without holding it in memory.  
+	 * Intended for FEBReturnFormat.MS_EXCEL and FEBReturnFormat.OPEN_DOC exports of large forms.  An existing file is only replaced once the
+	 * whole export has been received, a failed export leaves it unchanged.
+	 * 
+	 * <pre>
+	 * {@code FEBResponse r = febapi.exportRecordsToPath(appid, "F_Form1", null, FEBReturnFormat.OPEN_DOC, Paths.get("/tmp/F_Form1.ods"));}
+	 * </pre>
+	 * 
+	 * The default implementation exports to a temporary file with exportRecordsToOutputStream and moves it into place on success.
+	 * 
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param filters - FEBFilters object that contains all the info related to filters to apply to the query.  May be null.
+	 * @param returnFormat - The format of the export.  Defaults to MS_EXCEL.
+	 * @param path - The file to write.
+	 * 
+	 * @return FEBResponse - Contains the HTTP Response code (responseCode) and message (responseText).  The file is only written if the response is 20x.
+	 * @throws FEBAPIException if the file cannot be written
+	 * @throws FEBAPIException if general exception occurs
+	 */
+	public default FEBResponse exportRecordsToPath (String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat, Path path) throws FEBAPIException {
+		Path tmp = null;
+		try {
+			tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".part");
+			
+			FEBResponse r;
+			OutputStream os = Files.newOutputStream(tmp);
+			try {
+				r = exportRecordsToOutputStream(appUid, formId, filters, returnFormat, os);
+			} finally {
+				os.close();
+			}
+			
+			if(r.isResponse20x()) {
+				FEBAPIImpl.moveIntoPlace(tmp, path);
+				tmp = null;
+			}
+			return r;
+		} catch (IOException ioe) {
+			throw new FEBAPIException(ioe.getMessage(), ioe);
+		} finally {
+			if(tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch (IOException ioe) {
+					//nothing more can be done, the target was not touched
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Same as exportRecordsToPath, except that the response is written to the channel.  The channel is not closed.
+	 * 
+	 * The default implementation writes to the channel through exportRecordsToOutputStream.
+	 * 
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param filters - FEBFilters object that contains all the info related to filters to apply to the query.  May be null.
+	 * @param returnFormat - The format of the export.  Defaults to MS_EXCEL.
+	 * @param channel - The channel to write the export to.
+	 * 
+	 * @return FEBResponse - Contains the HTTP Response code (responseCode) and message (responseText).
+	 * @throws FEBAPIException if general exception occurs
+	 */
+	public default FEBResponse exportRecordsToChannel (String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat, WritableByteChannel channel) throws FEBAPIException {
+		return exportRecordsToOutputStream(appUid, formId, filters, returnFormat, Channels.newOutputStream(channel));
+	}
+	
+	/**
+	 * Same as exportRecordsToPath, except that the response is written to the OutputStream.  The stream is not closed.
+	 * 
+	 * The default implementation reads the whole export into memory with listRecords and then writes it to the stream.
+	 * 
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param filters - FEBFilters object that contains all the info related to filters to apply to the query.  May be null.
+	 * @param returnFormat - The format of the export.  Defaults to MS_EXCEL.
+	 * @param os - The stream to write the export to.
+	 * 
+	 * @return FEBResponse - Contains the HTTP Response code (responseCode) and message (responseText).
+	 * @throws FEBAPIException if general exception occurs
+	 */
+	public default FEBResponse exportRecordsToOutputStream (String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat, OutputStream os) throws FEBAPIException {
+		FEBResponse r = listRecords(appUid, formId, filters, returnFormat == null ? FEBReturnFormat.MS_EXCEL : returnFormat);
+		if(r.isResponse20x()) {
+			try {
+				r.writeBody(os);
+			} catch (IOException ioe) {
+				throw new FEBAPIException(ioe.getMessage(), ioe);
+			}
+		}
+		return r;
+	}
+	
 	/**
 	 * Returns a FEBResponse object that contains a single record from a form.  User specifies the Application UID, the Form ID and the Record UID. 
 	 * 
@@ -175,6 +284,83 @@ public interface FEBAPI {
 	 */
 	public FEBResponse retrieveRecord (String appUid, String formId, String recordUid, FEBReturnFormat returnFormat) throws FEBAPIException;
 	
+	/**
+	 * Same as listRecords, except that the response is parsed as it is read and each record is passed to the callback one at a
+	 * time instead of being collected in responseJSON.  Use this to process large pages without holding every record in memory.
+	 * 
+	 * <pre>
+	 * {@code FEBResponse r = febapi.listRecordsToCallback(appid, "F_Form1", filters, new FEBRecordCallback() {
+	 * 	public boolean onRecord(JSONObject rec) {
+	 * 		logger.info("uid = {}", rec.get("uid"));
+	 * 		return true; //false stops reading the response
+	 * 	}
+	 * });}
+	 * </pre>
+	 * 
+	 * The default implementation reads the whole response with listRecords and then passes the records to the callback.
+	 * 
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param filters - FEBFilters object that contains all the info related to filters to apply to the query.  May be null.
+	 * @param callback - Receives each record.
+	 * 
+	 * @return FEBResponse - responseJSON contains everything in the response except the "items" array (i.e. recordCount).
+	 * @throws FEBAPIException if callback is null
+	 * @throws FEBAPIException if general exception occurs
+	 * 
+	 * @see <a href="https://www.ibm.com/support/knowledgecenter/SS6KJL_8.6.4/FEB/ref_data_rest_api_list.html">FEB REST API - List</a>
+	 */
+	public default FEBResponse listRecordsToCallback (String appUid, String formId, FEBFilters filters, FEBRecordCallback callback) throws FEBAPIException {
+		if(callback == null)
+			throw new FEBAPIException("A callback is required.");
+		
+		FEBResponse r = listRecords(appUid, formId, filters, FEBReturnFormat.JSON);
+		if(r.responseJSON != null) {
+			Object items = r.responseJSON.remove("items");
+			if(items instanceof JSONArray) {
+				for(Object rec : (JSONArray) items) {
+					if(rec instanceof JSONObject && !callback.onRecord((JSONObject) rec))
+						break;
+				}
+			}
+		}
+		return r;
+	}
+	
+	/**
+	 * Same as retrieveRecord, except that the record is parsed as it is read and passed to the callback instead of being 
+	 * collected in responseJSON.
+	 * 
+	 * The default implementation reads the whole response with retrieveRecord and then passes the record to the callback.
+	 * 
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param recordUid - The uid of the record to retrieve.
+	 * @param callback - Receives the record.
+	 * 
+	 * @return FEBResponse - responseJSON contains everything in the response except the "items" array.
+	 * @throws FEBAPIException if callback is null
+	 * @throws FEBAPIException if general exception occurs
+	 * 
+	 * @see <a href="https://www.ibm.com/support/knowledgecenter/SS6KJL_8.6.4/FEB/ref_data_rest_api_retrieve.html">FEB REST API - Retrieve</a>
+	 */
+	public default FEBResponse retrieveRecordToCallback (String appUid, String formId, String recordUid, FEBRecordCallback callback) throws FEBAPIException {
+		if(callback == null)
+			throw new FEBAPIException("A callback is required.");
+		
+		FEBResponse r = retrieveRecord(appUid, formId, recordUid, FEBReturnFormat.JSON);
+		if(r.responseJSON != null) {
+			Object items = r.responseJSON.remove("items");
+			if(items instanceof JSONArray) {
+				for(Object rec : (JSONArray) items) {
+					if(rec instanceof JSONObject && !callback.onRecord((JSONObject) rec))
+						break;
+				}
+			}
+		}
+		return r;
+	}
+	
 	/**
 	 * Retrieves a description of all the items in your form.
 	 * 
@@ -231,6 +417,10 @@ public interface FEBAPI {
 	/**
 	 * Retrieves the specified attachment from the FEB Application and returns it as an InputStream.
 	 * 
+	 * The stream reads straight from the server's response, so it keeps one of the transport's per-host connections leased
+	 * until it is closed.  Close it in a finally block; while it is open it counts against maxConnectionsPerHost and other
+	 * requests to the same server may have to wait for it.
+	 * 
 	 * @param appUid - The FEB application UID.
 	 * @param formId - The ID of the form.
 	 * @param attachmentUID - The UID of the attachment.
@@ -257,6 +447,8 @@ public interface FEBAPI {
 	/**
 	 * Retrieves the record id, extracts the attachment specified by "fieldID" and then returns the content as an InputStream.
 	 * 
+	 * As with retrieveAttachmentByUidToStream, the stream holds a per-host connection until it is closed.
+	 * 
 	 * @param appUid - The application uid.
 	 * @param formId - The form id.
 	 * @param recId - The record id.
@@ -414,6 +606,59 @@ public interface FEBAPI {
 	 */
 	public FEBResponse submitRecord (String appUid, String formId, JSONObject jsonData) throws FEBAPIException;
 	
+	/**
+	 * Submits many records to the form, with several requests in flight at once.  Records are read from the Iterable as slots
+	 * become free, so the whole input never has to be in memory.  A record that fails does not stop the others.
+	 * 
+	 * <pre>
+	 * {@code List<FEBRecordResult> results = febapi.submitRecords(appid, "F_Form1", records);
+	 * for(FEBRecordResult res : results) {
+	 * 	if(res.isSuccess())
+	 * 		logger.info("Created {} ({})", res.uid, res.id);
+	 * }}
+	 * </pre>
+	 * 
+	 * The default implementation submits the records with a FEBBatchSubmitter of the default concurrency.
+	 * 
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param records - The records to submit, each must identify the pressedButton and flowState.
+	 * 
+	 * @return the result of each record, in the same order as the input
+	 * @throws FEBAPIException if interrupted before all the records were submitted
+	 * @see FEBBatchSubmitter
+	 */
+	public default List<FEBRecordResult> submitRecords (String appUid, String formId, Iterable<JSONObject> records) throws FEBAPIException {
+		FEBBatchSubmitter batch = new FEBBatchSubmitter(this);
+		try {
+			return batch.submitRecords(appUid, formId, records);
+		} finally {
+			batch.shutdown();
+		}
+	}
+	
+	/**
+	 * Submits every record of the stream, with several requests in flight at once.
+	 * 
+	 * The default implementation submits the records with a FEBBatchSubmitter of the default concurrency.
+	 * 
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param records - The records to submit, each must identify the pressedButton and flowState.
+	 * 
+	 * @return the result of each record, in the same order as the stream
+	 * @throws FEBAPIException if interrupted before all the records were submitted
+	 * @see #submitRecords(String, String, Iterable)
+	 */
+	public default List<FEBRecordResult> submitRecords (String appUid, String formId, Stream<JSONObject> records) throws FEBAPIException {
+		FEBBatchSubmitter batch = new FEBBatchSubmitter(this);
+		try {
+			return batch.submitRecords(appUid, formId, records);
+		} finally {
+			batch.shutdown();
+		}
+	}
+	
 	/**
 	 * Create a new FEB record from a file containing the valid JSON representation of that form.  The JSON 
 	 * must include the "required" items as outlined in the API Create documentation.
@@ -538,8 +783,11 @@ public interface FEBAPI {
 	 * FEBResponse r = febapi.deleteRecords(appid, "c:/temp", filters);
 	 * }
 	 * </pre>
-	 * @return FEBResponse - The responseText will contain a report of all the applications that were processed
-	 * @throws FEBAPIException if generic exception occurs
+	 * The records are deleted several at a time, see {@link FEBRecordDeleter}.
+	 * 
+	 * @return FEBResponse - responseCode is 200 if every record was deleted, otherwise 207.  responseText contains a summary and
+	 * responseJSON contains the counts, the UIDs of the records that could not be deleted and the timings (see {@link FEBDeleteResult}).
+	 * @throws FEBAPIException if the records to delete cannot be listed
 	 */
 	public FEBResponse deleteRecords(String appUid, String formId, FEBFilters filters) throws FEBAPIException;
 	
@@ -560,6 +808,8 @@ public interface FEBAPI {
 	/**
 	 * Exports the specified FEB application from the server and writes it to the specified InputStream.
 	 * 
+	 * The stream holds a per-host connection until it is closed, so close it once the export has been read.
+	 * 
 	 * @param appUid - The application UID
 	 * @param includeData - If true all the submitted data and attachments will be included.  Default is false.
 	 * @return FEBResponse
@@ -606,6 +856,9 @@ public interface FEBAPI {
 	 * ec651f4a-0b97-4cf3-9c66-ef61e8b8ae25 deleted successfully
 	 * Failed to delete 6173bf6c-f2e7-43f2-8226-3c27d2154ff1
 	 * 
+	 * responseCode is 200 if every application was deleted, otherwise the code returned for the first one that failed.  The
+	 * applications are deleted several at a time, use {@link FEBBulkAppOperations} for per application results.
+	 * 
 	 * @throws FEBAPIException if IO or generic exception occur
 	 * @see <a href='https://www.ibm.com/support/knowledgecenter/SS6KJL_8.6.4/FEB/ref_rest_api_auto_deploy.html'>Application Management REST API</a>
 	 */
@@ -796,6 +1049,75 @@ public interface FEBAPI {
 	 */
 	public FEBResponse listAppsForUser (Integer pageNum, Integer pageSize, String sortBy, String orderBy) throws FEBAPIException;
 	
+	/**
+	 * Same as listAppsForUser, except that the feed is returned as a FEBFeedReader that parses one application entry at a time
+	 * as it is read from the server.  The reader must be closed to release the connection; until then it holds one of the
+	 * transport's per-host connections, and a reader left open blocks other requests once maxConnectionsPerHost is reached.
+	 * 
+	 * <pre>
+	 * {@code FEBFeedReader apps = febapi.listAppsForUserToFeedReader(1, 1000, null, null);
+	 * try {
+	 * 	while(apps.hasNext()) {
+	 * 		FEBFeedEntry app = apps.next();
+	 * 		logger.info("{} ({}) status = {}, count = {}", app.title, app.id, app.status, app.count);
+	 * 	}
+	 * } finally {
+	 * 	apps.close();
+	 * }}
+	 * </pre>
+	 * 
+	 * The default implementation reads the whole feed with listAppsForUser and then reads the entries from the parsed document.
+	 * 
+	 * @param pageNum	Results are paginated, this is the page number. If not specified the first page is shown.
+	 * @param pageSize	The number of applications to show per page.  Default is 10.
+	 * @param sortBy  Sorts the applications, possible values are FEBFilterMetaColumns.APP_SORTBY_TITLE.toString() and FEBFilterMetaColumns.APP_SORTBY_LAST_UPDATED_TIMESTAMP.toString()
+	 * @param orderBy Results can be sorted as FEBFilterOrder.ASCENDING.toString() or FEBFilterOrder.DESCENDING.toString()
+	 * @return FEBFeedReader
+	 * @throws FEBAPIException if the request does not return HTTP 200
+	 * @throws FEBAPIException if generic exception occurs
+	 */
+	public default FEBFeedReader listAppsForUserToFeedReader (Integer pageNum, Integer pageSize, String sortBy, String orderBy) throws FEBAPIException {
+		FEBResponse r = listAppsForUser(pageNum, pageSize, sortBy, orderBy);
+		if(r.responseCode != 200)
+			throw new FEBAPIException("Failed to retrieve feed.  Request returned HTTP " + r.responseCode + " (" + r.responseText + ")");
+		
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try {
+			r.writeBody(bos);
+		} catch (IOException ioe) {
+			throw new FEBAPIException(ioe.getMessage(), ioe);
+		}
+		return new FEBFeedReader(new ByteArrayInputStream(bos.toByteArray()));
+	}
+	
+	/**
+	 * Same as listRecords with FEBReturnFormat.XML, except that the feed is returned as a FEBFeedReader that parses one record
+	 * entry at a time as it is read from the server.  The reader must be closed to release the connection, it holds a per-host
+	 * connection for as long as it is open.
+	 * 
+	 * The default implementation reads the whole feed with listRecords and then reads the entries from the parsed document.
+	 * 
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param filters - FEBFilters object that contains all the info related to filters to apply to the query.  May be null.
+	 * @return FEBFeedReader
+	 * @throws FEBAPIException if the request does not return HTTP 200
+	 * @throws FEBAPIException if generic exception occurs
+	 */
+	public default FEBFeedReader listRecordsToFeedReader (String appUid, String formId, FEBFilters filters) throws FEBAPIException {
+		FEBResponse r = listRecords(appUid, formId, filters, FEBReturnFormat.XML);
+		if(r.responseCode != 200)
+			throw new FEBAPIException("Failed to retrieve feed.  Request returned HTTP " + r.responseCode + " (" + r.responseText + ")");
+		
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try {
+			r.writeBody(bos);
+		} catch (IOException ioe) {
+			throw new FEBAPIException(ioe.getMessage(), ioe);
+		}
+		return new FEBFeedReader(new ByteArrayInputStream(bos.toByteArray()));
+	}
+	
 	/**
 	 * Returns all the applications for the user credentials provided when setting up the API object. This service can only be called
 	 * by users in the AdministrativeUsers Role.  This service returns a JSON response. 
@@ -1,24 +1,40 @@
 package com.hcl.feb.api;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-import java.io.PrintWriter;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
-import java.security.cert.X509Certificate;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Date;
 
@@ -26,16 +42,29 @@ import java.util.Date;
 import org.apache.commons.codec.binary.Base64; //java 1.6  //add to manifest -> Import-Package: org.apache.commons.codec.binary
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
-import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 
 //import org.apache.commons.codec.binary.Base64;
 import org.json.simple.JSONArray;
@@ -65,6 +94,33 @@ public class FEBAPIImpl implements FEBAPI {
 	private String orgUrlBase = "";
 	private String adminUrlBase = "";
 	private boolean ignoreSSL = false;
+	private FEBTransport transport = new FEBPooledTransport();
+	private ScheduledExecutorService scheduler = null; //runs the delayed steps of asynchronous requests, created on first use
+	private final FEBResponseCache schemaCache = new FEBResponseCache(DEFAULT_SCHEMA_CACHE_TTL, DEFAULT_SCHEMA_CACHE_SIZE);
+	private final FEBResponseCache recordCache = new FEBResponseCache(DEFAULT_RECORD_CACHE_TTL, 0);
+	private final ConcurrentHashMap<String,Flight> inFlight = new ConcurrentHashMap<String,Flight>();
+	//bumped by every write and invalidation, a GET in flight from an earlier generation can no longer be joined
+	private final AtomicLong writeGeneration = new AtomicLong();
+	private volatile boolean coalesceRequests = true;
+	private int batchConcurrency = FEBBatchSubmitter.DEFAULT_CONCURRENCY;
+	private final ConcurrentHashMap<FEBOperationType,FEBRetryPolicy> retryPolicies = defaultRetryPolicies();
+	private final ConcurrentHashMap<String,FEBCircuitBreaker> breakers = new ConcurrentHashMap<String,FEBCircuitBreaker>();
+	private volatile int breakerThreshold = FEBCircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+	private volatile long breakerOpenMillis = FEBCircuitBreaker.DEFAULT_OPEN_MILLIS;
+	private volatile String idempotencyKeyHeader = null;
+	private final FEBSessionManager sessions = new FEBSessionManager();
+	private volatile boolean sessionCookies = true;
+	private volatile FEBTLSConfig tlsConfig = new FEBTLSConfig();
+	private volatile boolean compression = true;
+	private volatile boolean requestCompression = false;
+	private volatile int requestCompressionMinSize = 1024;
+	//hosts that answered a gzip request body with 415, they are sent uncompressed bodies from then on
+	private final Set<String> gzipRejected = ConcurrentHashMap.newKeySet();
+	//limiter settings are kept under "host|type", with "*" as the host for the defaults
+	private final ConcurrentHashMap<String,FEBRateLimiter> rateLimitSettings = new ConcurrentHashMap<String,FEBRateLimiter>();
+	private final ConcurrentHashMap<String,FEBRateLimiter> rateLimiters = new ConcurrentHashMap<String,FEBRateLimiter>();
+	private final ConcurrentHashMap<String,int[]> concurrencySettings = defaultConcurrencySettings();
+	private final ConcurrentHashMap<String,FEBConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<String,FEBConcurrencyLimiter>();
 //	private String logDir = "";
 //	private boolean debug = false;
 	
@@ -83,9 +139,21 @@ public class FEBAPIImpl implements FEBAPI {
 //	private static final String FEB_EXTENSION = ".nitro_s";
 	private static final String MULTIPART_MEDIATYPE = "multipart/form-data";
 	private static final String LINE_FEED = "\r\n";
+	private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+	private static final String SCHEMA_METADATA = "metadata";
+	private static final String SCHEMA_SWAGGER = "swagger";
+	private static final String SCHEMA_SAMPLE = "sample";
+	
+	public static final long DEFAULT_SCHEMA_CACHE_TTL = 300000;
+	public static final int DEFAULT_SCHEMA_CACHE_SIZE = 256;
+	public static final long DEFAULT_RECORD_CACHE_TTL = 60000;
 	
 	private final Logger logger = LoggerFactory.getLogger(FEBAPIImpl.class);
 	
+	//looking up the factory is expensive, so it is done once and each thread keeps its own builder
+	private static final DocumentBuilderFactory DOC_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+	private static final ThreadLocal<DocumentBuilder> DOC_BUILDER = new ThreadLocal<DocumentBuilder>();
+	
 	/**
 	 * 
 	 * @param hostname - The hostname of the FEB server.
@@ -138,6 +206,24 @@ public class FEBAPIImpl implements FEBAPI {
 	 * @throws FEBAPIException if password is not specified
 	 */
 	public FEBAPIImpl (String hostname, String context, boolean ignoreSSL, String protocol, String username, char[] password, String freedomIdentifyKey) throws FEBAPIException {
+		this(hostname, context, ignoreSSL, protocol, username, password, freedomIdentifyKey, false);
+	}
+	
+	/**
+	 * 
+	 * @param hostname - The server host (i.e. "https://myformsserver.com")
+	 * @param context - The context of the forms application (i.e. "forms-basic") 
+	 * @param ignoreSSL - A development flag to bypass certificate verification.  Defaults to false.  Should not be true in a production implementation.
+	 * @param protocol - If ignoreSSL is "true" then you must specify a communication protocol, i.e. SSL, TLSv1.2
+	 * @param username - The username to use for this API request
+	 * @param password - The user's password
+	 * @param freedomIdentifyKey - The value to assign as the freedomIdentifyKey
+	 * @param http2 - true to send requests over HTTP/2 with a FEBHttp2Transport, falling back to HTTP/1.1 when the server does not support it.  Defaults to false.  Requires Java 11.
+	 * @throws FEBAPIException if hostname is not specified
+	 * @throws FEBAPIException if username is not specified
+	 * @throws FEBAPIException if password is not specified
+	 */
+	public FEBAPIImpl (String hostname, String context, boolean ignoreSSL, String protocol, String username, char[] password, String freedomIdentifyKey, boolean http2) throws FEBAPIException {
 				
 		this.protocol = protocol;		
 		this.freedomIdentifyKey = freedomIdentifyKey;
@@ -155,6 +241,7 @@ public class FEBAPIImpl implements FEBAPI {
 			this.protocol = "TLSv1.2";
 			logger.debug("Protocol was not provided, defaulting to {}", this.protocol);
 		}
+		this.tlsConfig = new FEBTLSConfig(ignoreSSL, ignoreSSL ? this.protocol : null);
 		
 		//usage validation and output
 		if(hostname == null || hostname.isEmpty()) {
@@ -165,74 +252,1211 @@ public class FEBAPIImpl implements FEBAPI {
 			logger.debug("Hostname was provided, setting to {}", this.server);
 		}
 		
-		if(username == null || username.isEmpty()) {
-			logger.debug("Username is required and was not provided, throwing an exception...");
-			throw new FEBAPIException("The username is required.");	
+		if(username == null || username.isEmpty()) {
+			logger.debug("Username is required and was not provided, throwing an exception...");
+			throw new FEBAPIException("The username is required.");	
+		}
+		
+		if(password == null || new String(password).isEmpty()) {
+			logger.debug("Password is required and was not provided, throwing an exception...");
+			throw new FEBAPIException("The password is required.");
+		}
+		
+		this.urlBase = this.server + "/" + this.context + "/secure/org/data/";
+		this.appUrlBase = this.server + "/" + this.context + "/secure/org/app";
+		this.orgUrlBase = this.server + "/" + this.context + "/secure/org/";
+		this.adminUrlBase = this.server + "/" + this.context + "/secure/org/admin/";
+		this.credentials = this.getEncodedString(username, password);		
+		
+		if(http2)
+			setTransport(newHttp2Transport());
+	}
+	
+	/**
+	 * FEBHttp2Transport is built on java.net.http, which needs Java 11.  It is loaded by name so that the rest of the API still
+	 * compiles and runs on Java 8 without it.
+	 * 
+	 * @return FEBTransport
+	 * @throws FEBAPIException if the JVM is older than Java 11 or the class was left out of the build
+	 */
+	private FEBTransport newHttp2Transport() throws FEBAPIException {
+		try {
+			return (FEBTransport) Class.forName("com.hcl.feb.api.FEBHttp2Transport").getConstructor(FEBTLSConfig.class).newInstance(tlsConfig);
+		} catch (LinkageError | ReflectiveOperationException e) {
+			throw new FEBAPIException("HTTP/2 is not available, it requires Java 11 or later.", e);
+		}
+	}
+
+	/**
+	 * Sets the transport used to open and release the HTTP connections for every request.  Defaults to a {@link FEBPooledTransport}.
+	 * The transport is given the TLS settings of this object, see {@link FEBTransport#setTLSConfig(FEBTLSConfig)}.
+	 *
+	 * @param transport - The transport to use.
+	 */
+	public void setTransport(FEBTransport transport) {
+		if(transport == null)
+			transport = new FEBPooledTransport();
+		transport.setTLSConfig(tlsConfig);
+
+		this.transport = transport;
+	}
+
+	public FEBTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Shuts down the transport.  This FEBAPIImpl should not be used afterwards.
+	 */
+	public void shutdown() {
+		transport.shutdown();
+		synchronized(this) {
+			if(scheduler != null)
+				scheduler.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Sets how long the responses of getFormMetaData, getCompleteJSONForForm and getSampleJSONForForm are used before checking
+	 * with the server again.  Once an entry expires it is revalidated with its ETag or Last-Modified date when the server provided
+	 * one.  Defaults to 5 minutes.
+	 * 
+	 * @param ttl - The number of milliseconds.
+	 */
+	public void setSchemaCacheTTL(long ttl) {
+		schemaCache.setTTL(ttl);
+	}
+	
+	public long getSchemaCacheTTL() {
+		return schemaCache.getTTL();
+	}
+	
+	/**
+	 * Sets the maximum number of form schemas cached.  The least recently used are removed first.  0 disables the cache.
+	 * 
+	 * @param size - The maximum number of entries.
+	 */
+	public void setSchemaCacheSize(int size) {
+		schemaCache.setMaxEntries(size);
+	}
+	
+	public int getSchemaCacheSize() {
+		return schemaCache.getMaxEntries();
+	}
+	
+	/**
+	 * Removes every cached form schema of the application.  Called automatically by upgradeApplication, call it if the
+	 * application is changed in any other way (i.e. through the designer).
+	 * 
+	 * @param appUid - The UID of the application.
+	 */
+	public void invalidateSchemaCache(String appUid) {
+		schemaCache.removeAll(appUid + "/");
+		writeGeneration.incrementAndGet();
+	}
+	
+	/**
+	 * Removes the cached schema of a single form.
+	 * 
+	 * @param appUid - The UID of the application.
+	 * @param formId - The ID of the form.
+	 */
+	public void invalidateSchemaCache(String appUid, String formId) {
+		schemaCache.removeAll(appUid + "/" + formId + "/");
+		writeGeneration.incrementAndGet();
+	}
+	
+	/**
+	 * Sets the maximum number of records kept by retrieveRecord.  The least recently used are removed first.  Defaults to 0, which
+	 * disables the record cache.
+	 * 
+	 * Records updated or deleted through this FEBAPIImpl are removed from the cache automatically.  Changes made by anyone else
+	 * are only seen once the entry expires, so only enable the cache when a short delay is acceptable.
+	 * 
+	 * @param size - The maximum number of records.
+	 */
+	public void setRecordCacheSize(int size) {
+		recordCache.setMaxEntries(size);
+	}
+	
+	public int getRecordCacheSize() {
+		return recordCache.getMaxEntries();
+	}
+	
+	/**
+	 * Sets how long a cached record is returned before checking with the server again.  Once an entry expires it is revalidated
+	 * with its ETag or Last-Modified date when the server provided one.  Defaults to 1 minute.
+	 * 
+	 * @param ttl - The number of milliseconds.
+	 */
+	public void setRecordCacheTTL(long ttl) {
+		recordCache.setTTL(ttl);
+	}
+	
+	public long getRecordCacheTTL() {
+		return recordCache.getTTL();
+	}
+	
+	/**
+	 * Removes a record from the cache, in every return format.
+	 * 
+	 * @param appUid - The UID of the application.
+	 * @param formId - The ID of the form.
+	 * @param recordUid - The UID of the record.
+	 */
+	public void invalidateRecordCache(String appUid, String formId, String recordUid) {
+		recordCache.removeAll(appUid + "/" + formId + "/" + recordUid + "/");
+		writeGeneration.incrementAndGet();
+	}
+	
+	/**
+	 * Removes every record from the cache.
+	 */
+	public void clearRecordCache() {
+		recordCache.clear();
+		writeGeneration.incrementAndGet();
+	}
+	
+	/**
+	 * When enabled (the default) threads that make the same GET request (same URL and Accept header) while it is in flight wait
+	 * for that request and share its response instead of each sending their own.  A request is not shared with callers that
+	 * start after a record is submitted, updated or deleted through this FEBAPIImpl, so they always see their own writes.  Applies to retrieveRecord, listRecords,
+	 * getFormMetaData, getCompleteJSONForForm, getSampleJSONForForm, listAppsForUser and adminListApps.
+	 * 
+	 * @param coalesceRequests - true to share identical requests.
+	 */
+	public void setCoalesceRequests(boolean coalesceRequests) {
+		this.coalesceRequests = coalesceRequests;
+	}
+	
+	public boolean isCoalesceRequests() {
+		return coalesceRequests;
+	}
+	
+	/**
+	 * Sets the number of records submitRecords sends at the same time.  Defaults to 8.
+	 * 
+	 * @param batchConcurrency - The maximum number of requests in flight.
+	 */
+	public void setBatchConcurrency(int batchConcurrency) {
+		if(batchConcurrency > 0)
+			this.batchConcurrency = batchConcurrency;
+	}
+	
+	public int getBatchConcurrency() {
+		return batchConcurrency;
+	}
+	
+	/**
+	 * Sets how failed requests of the given type are retried.  By default every type is retried up to 3 attempts with
+	 * jittered exponential backoff, see FEBRetryPolicy.
+	 * 
+	 * @param type - The class of request.
+	 * @param policy - The retry policy, or null to never retry.
+	 */
+	public void setRetryPolicy(FEBOperationType type, FEBRetryPolicy policy) {
+		retryPolicies.put(type, policy == null ? FEBRetryPolicy.noRetries() : policy);
+	}
+	
+	public FEBRetryPolicy getRetryPolicy(FEBOperationType type) {
+		return retryPolicies.get(type);
+	}
+	
+	/**
+	 * Configures the circuit breaker kept for each host.  After failureThreshold consecutive connection failures or 502/503/504
+	 * responses, requests to the host fail immediately for openMillis.  Defaults to 5 failures and 30 seconds.
+	 * 
+	 * @param failureThreshold - The number of consecutive failures that open the breaker.  0 disables the breaker.
+	 * @param openMillis - How long the breaker stays open.
+	 */
+	public void setCircuitBreaker(int failureThreshold, long openMillis) {
+		this.breakerThreshold = failureThreshold;
+		this.breakerOpenMillis = openMillis;
+		breakers.clear();
+	}
+	
+	/**
+	 * When set, every record submitted with POST carries this header with a unique key (a random UUID), and the POST is retried
+	 * like a PUT.  Only set this if the FEB server, or a proxy in front of it, discards requests whose key it has already seen.
+	 * Without it a POST is only retried when the connection could not be made.
+	 * 
+	 * @param header - The name of the header, for example "Idempotency-Key", or null to disable.
+	 */
+	public void setIdempotencyKeyHeader(String header) {
+		this.idempotencyKeyHeader = header;
+	}
+	
+	public String getIdempotencyKeyHeader() {
+		return idempotencyKeyHeader;
+	}
+	
+	/**
+	 * When enabled (the default) the session cookies (JSESSIONID, LtpaToken2) set by the server are sent with later requests in
+	 * place of the Basic credentials, so the server does not authenticate every request.  The credentials are sent again if
+	 * the server rejects the session with a 401.  Requests whose body is read from a caller's InputStream always send the
+	 * credentials, as they could not be sent again.
+	 * 
+	 * @param sessionCookies - true to reuse the session.
+	 */
+	public void setSessionCookies(boolean sessionCookies) {
+		this.sessionCookies = sessionCookies;
+		if(!sessionCookies)
+			sessions.clear();
+	}
+	
+	public boolean isSessionCookies() {
+		return sessionCookies;
+	}
+	
+	/**
+	 * When enabled (the default) GET requests ask for a gzip or deflate encoded response, and encoded responses are decompressed
+	 * as they are read.  JSON pages and Atom feeds are typically 5-10 times smaller on the wire.
+	 * 
+	 * @param compression - true to accept compressed responses.
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+	
+	public boolean isCompression() {
+		return compression;
+	}
+	
+	/**
+	 * When enabled the JSON body of submitRecord and updateRecord is sent gzip encoded, if it is at least minSize characters.
+	 * A server that does not accept encoded bodies answers 415, the request is then sent again uncompressed and later requests
+	 * to that server are not compressed.  Disabled by default.
+	 * 
+	 * @param requestCompression - true to compress request bodies.
+	 * @param minSize - The smallest body that is compressed, smaller bodies do not gain enough to be worth it.
+	 */
+	public void setRequestCompression(boolean requestCompression, int minSize) {
+		this.requestCompression = requestCompression;
+		this.requestCompressionMinSize = Math.max(0, minSize);
+	}
+	
+	public boolean isRequestCompression() {
+		return requestCompression;
+	}
+	
+	/**
+	 * Sets the TLS settings for HTTPS connections, such as a custom trust store or a client certificate.  By default the JVM's
+	 * trust store is used, or any certificate is trusted if the ignoreSSL constructor argument was true.
+	 * 
+	 * @param tlsConfig - The TLS settings.
+	 */
+	public void setTLSConfig(FEBTLSConfig tlsConfig) {
+		this.tlsConfig = tlsConfig == null ? new FEBTLSConfig(ignoreSSL, ignoreSSL ? protocol : null) : tlsConfig;
+		transport.setTLSConfig(this.tlsConfig);
+	}
+	
+	public FEBTLSConfig getTLSConfig() {
+		return tlsConfig;
+	}
+	
+	/**
+	 * Limits the rate of requests of the given type sent to each host.  Each host gets its own token bucket.  There is no rate
+	 * limit by default.
+	 * 
+	 * @param type - The class of request.
+	 * @param requestsPerSecond - The sustained rate, or 0 to remove the limit.
+	 * @param burst - The number of requests that can be sent at once after a quiet period.
+	 */
+	public void setRateLimit(FEBOperationType type, double requestsPerSecond, int burst) {
+		setRateLimit("*", type, requestsPerSecond, burst);
+	}
+	
+	/**
+	 * Limits the rate of requests of the given type sent to one host, overriding setRateLimit(type, ...).
+	 * 
+	 * @param host - The host and port, as in the URL (e.g. "feb.example.com:9443").
+	 * @param type - The class of request.
+	 * @param requestsPerSecond - The sustained rate, or 0 to use the limit for every host.
+	 * @param burst - The number of requests that can be sent at once after a quiet period.
+	 */
+	public void setRateLimit(String host, FEBOperationType type, double requestsPerSecond, int burst) {
+		String key = host + "|" + type;
+		if(requestsPerSecond > 0)
+			rateLimitSettings.put(key, new FEBRateLimiter(requestsPerSecond, burst));
+		else
+			rateLimitSettings.remove(key);
+		rateLimiters.clear();
+	}
+	
+	/**
+	 * Sets the adaptive concurrency limit for requests of the given type, see FEBConcurrencyLimiter.  Each host gets its own
+	 * limit.  By default every type starts at 10 requests per host and adapts between 1 and 100.
+	 * 
+	 * @param type - The class of request.
+	 * @param initialLimit - The limit to start with.
+	 * @param minLimit - The lowest the limit can go.
+	 * @param maxLimit - The highest the limit can go, or 0 to remove the limit.
+	 */
+	public void setConcurrencyLimit(FEBOperationType type, int initialLimit, int minLimit, int maxLimit) {
+		setConcurrencyLimit("*", type, initialLimit, minLimit, maxLimit);
+	}
+	
+	/**
+	 * Sets the adaptive concurrency limit for requests of the given type sent to one host, overriding setConcurrencyLimit(type, ...).
+	 * 
+	 * @param host - The host and port, as in the URL (e.g. "feb.example.com:9443").
+	 * @param type - The class of request.
+	 * @param initialLimit - The limit to start with.
+	 * @param minLimit - The lowest the limit can go.
+	 * @param maxLimit - The highest the limit can go, or 0 to remove the limit.
+	 */
+	public void setConcurrencyLimit(String host, FEBOperationType type, int initialLimit, int minLimit, int maxLimit) {
+		concurrencySettings.put(host + "|" + type, new int[] {initialLimit, minLimit, maxLimit});
+		concurrencyLimiters.clear();
+	}
+	
+	/**
+	 * Returns the concurrency limiter in use for the host and type, for monitoring.
+	 * 
+	 * @param host - The host and port, as in the URL.
+	 * @param type - The class of request.
+	 * @return the limiter, or null if the limit is disabled
+	 */
+	public FEBConcurrencyLimiter getConcurrencyLimiter(String host, FEBOperationType type) {
+		return getConcurrencyLimiterImpl(host, type);
+	}
+	
+	private FEBRateLimiter getRateLimiter(String host, FEBOperationType type) {
+		String key = host + "|" + type;
+		FEBRateLimiter limiter = rateLimiters.get(key);
+		if(limiter == null) {
+			FEBRateLimiter settings = rateLimitSettings.get(key);
+			if(settings == null)
+				settings = rateLimitSettings.get("*|" + type);
+			if(settings == null)
+				return null;
+			
+			limiter = new FEBRateLimiter(settings.getRequestsPerSecond(), settings.getBurst());
+			FEBRateLimiter existing = rateLimiters.putIfAbsent(key, limiter);
+			if(existing != null)
+				limiter = existing;
+		}
+		return limiter;
+	}
+	
+	private FEBConcurrencyLimiter getConcurrencyLimiterImpl(String host, FEBOperationType type) {
+		String key = host + "|" + type;
+		FEBConcurrencyLimiter limiter = concurrencyLimiters.get(key);
+		if(limiter == null) {
+			int[] settings = concurrencySettings.get(key);
+			if(settings == null)
+				settings = concurrencySettings.get("*|" + type);
+			if(settings == null || settings[2] <= 0)
+				return null;
+			
+			limiter = new FEBConcurrencyLimiter(key, settings[0], settings[1], settings[2], FEBConcurrencyLimiter.DEFAULT_TOLERANCE);
+			FEBConcurrencyLimiter existing = concurrencyLimiters.putIfAbsent(key, limiter);
+			if(existing != null)
+				limiter = existing;
+		}
+		return limiter;
+	}
+	
+	private static ConcurrentHashMap<String,int[]> defaultConcurrencySettings() {
+		ConcurrentHashMap<String,int[]> settings = new ConcurrentHashMap<String,int[]>();
+		for(FEBOperationType type : FEBOperationType.values()) {
+			settings.put("*|" + type, new int[] {FEBConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, FEBConcurrencyLimiter.DEFAULT_MIN_LIMIT,
+					FEBConcurrencyLimiter.DEFAULT_MAX_LIMIT});
+		}
+		return settings;
+	}
+	
+	private static ConcurrentHashMap<FEBOperationType,FEBRetryPolicy> defaultRetryPolicies() {
+		ConcurrentHashMap<FEBOperationType,FEBRetryPolicy> policies = new ConcurrentHashMap<FEBOperationType,FEBRetryPolicy>();
+		for(FEBOperationType type : FEBOperationType.values())
+			policies.put(type, new FEBRetryPolicy());
+		return policies;
+	}
+	
+	/* DEPRECATED*/
+//	private String processFEBFilters(ArrayList<FEBFilterParam> filters, FEBFilterRelationship filterOperator) throws FEBAPIException {
+//		String r = "";		
+//
+//		if(filters != null) {
+//			logger.debug("Building URL Filter Params...");
+//			for(int i=0;i<filters.size();i++) {
+//				r = this.addURLParam(r, filters.get(i).getFilterString());
+//				logger.debug("    Adding param {}", filters.get(i).getFilterString());
+//			}				
+//		}
+//		
+//		if(filterOperator != null && !filterOperator.getValue().isEmpty()) {
+//			r = this.addURLParam(r, "searchOperator=" + filterOperator);
+//			logger.debug("    Adding param {}", "searchOperator=" + filterOperator);
+//		}
+//		
+//		return r;
+//	}
+
+	/**
+	 * Returns all the FEB records that match the specified criteria.
+	 * filters - According to the supported filters in KC
+	 */
+	public FEBResponse listRecords (String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat) throws FEBAPIException {
+		FEBResponse r = new FEBResponse();
+		
+		try {
+			String apiURL = this.urlBase + appUid + "/" + formId;
+		
+			if(filters != null)
+				apiURL += filters.getFilterURLString();
+			
+			logger.debug("REST URL = {}", apiURL);	
+			
+			HashMap<String,String> headers = new HashMap<String,String>();
+			if(returnFormat == null || "".equals(returnFormat.toString())) {
+				headers.put("Accept", FEBReturnFormat.JSON.toString());
+			} else {
+				headers.put("Accept", returnFormat.toString());
+			}
+			
+			r = sharedGet(apiURL, headers, false);
+			
+			if(filters != null)
+				filters.notePageEnd(r);
+			
+		} catch (Exception e) {
+			throw new FEBAPIException(e.getMessage(), e);
+		}
+		
+		return r;	
+		
+	}
+	
+	public FEBResponse exportRecordsToPath (String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat, Path path) throws FEBAPIException {
+		//written next to the target and moved into place on success, so a failed export leaves an existing file alone
+		Path tmp = null;
+		try {
+			Path dir = path.toAbsolutePath().getParent();
+			tmp = Files.createTempFile(dir, path.getFileName().toString(), ".part");
+			logger.debug("Writing export to file {}", path);
+			
+			FEBResponse r;
+			FileChannel fc = FileChannel.open(tmp, StandardOpenOption.WRITE);
+			try {
+				r = exportRecordsToChannel(appUid, formId, filters, returnFormat, fc);
+			} finally {
+				fc.close();
+			}
+			
+			if(r.isResponse20x()) {
+				moveIntoPlace(tmp, path);
+				tmp = null;
+			}
+			return r;
+		} catch (IOException ioe) {
+			throw new FEBAPIException(ioe.getMessage(), ioe);
+		} finally {
+			if(tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch (IOException ioe) {
+					logger.debug("Failed to remove temporary file {}. {}", tmp, ioe.getMessage());
+				}
+			}
+		}
+	}
+	
+	public FEBResponse exportRecordsToOutputStream (String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat, OutputStream os) throws FEBAPIException {
+		return exportRecordsToChannel(appUid, formId, filters, returnFormat, Channels.newChannel(os));
+	}
+	
+	public FEBResponse exportRecordsToChannel (String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat, WritableByteChannel channel) throws FEBAPIException {
+		FEBResponse r = new FEBResponse();
+		HttpURLConnection conn = null;
+		InputStream is = null;
+		boolean reusable = false;
+		
+		if(returnFormat == null)
+			returnFormat = FEBReturnFormat.MS_EXCEL;
+		
+		try {
+			String apiURL = this.urlBase + appUid + "/" + formId;
+		
+			if(filters != null)
+				apiURL += filters.getFilterURLString();
+			
+			logger.debug("REST URL = {}", apiURL);	
+			
+			HashMap<String,String> headers = new HashMap<String,String>();
+			headers.put("Accept", returnFormat.toString());
+			conn = execute(FEBOperationType.READ, apiURL, HTTP_GET, headers, false, null, true);
+			
+			r.responseCode = conn.getResponseCode();
+			r.responseText = conn.getResponseMessage();
+			
+			if(r.isResponse20x()) {
+				is = getResponseStream(conn);
+				long written = transfer(Channels.newChannel(is), channel);
+				logger.debug("Exported {} bytes", written);
+			}
+			reusable = true;
+			
+		} catch (Exception e) {
+			throw new FEBAPIException(e.getMessage(), e);
+		} finally {
+			if(is != null) {
+				try {
+					is.close();
+				} catch (IOException e) {
+					reusable = false;
+				}
+			}
+			releaseConnection(conn, reusable);
+		}
+		
+		return r;
+	}
+	
+	/**
+	 * Copies everything from the source to the target through a single reusable buffer.  If the target is a FileChannel the
+	 * copy is done by the channel itself.
+	 * 
+	 * @param in
+	 * @param out
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 */
+	private long transfer(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+		long total = 0;
+		
+		if(out instanceof FileChannel) {
+			FileChannel fc = (FileChannel) out;
+			long pos = fc.position();
+			long n;
+			while((n = fc.transferFrom(in, pos + total, TRANSFER_BUFFER_SIZE)) > 0) {
+				total += n;
+			}
+			fc.position(pos + total);
+			return total;
+		}
+		
+		ByteBuffer buf = ByteBuffer.allocateDirect(TRANSFER_BUFFER_SIZE);
+		while(in.read(buf) != -1) {
+			buf.flip();
+			while(buf.hasRemaining()) {
+				total += out.write(buf);
+			}
+			buf.clear();
+		}
+		return total;
+	}
+	
+	/**
+	 * Performs a GET that is shared with any identical GET (same URL and Accept header) already in flight.  The callers that join
+	 * the request each receive their own copy of its response.
+	 * 
+	 * @param urlStr
+	 * @param headers
+	 * @param omitFIK
+	 * @return FEBResponse
+	 * @throws FEBAPIException
+	 */
+	private FEBResponse sharedGet(String urlStr, HashMap<String,String> headers, boolean omitFIK) throws FEBAPIException {
+		return cachedGet(null, null, urlStr, headers, omitFIK);
+	}
+	
+	/**
+	 * Performs a GET through the cache.  A fresh entry is returned without contacting the server.  An expired entry that has
+	 * validators is revalidated with a conditional request and reused if the server answers 304 Not Modified.  Requests that
+	 * do go to the server are shared the same way as sharedGet.
+	 * 
+	 * @param cache - The cache to use, or null to not cache the response
+	 * @param key
+	 * @param urlStr
+	 * @param headers
+	 * @param omitFIK
+	 * @return FEBResponse
+	 * @throws FEBAPIException
+	 */
+	private FEBResponse cachedGet(FEBResponseCache cache, String key, String urlStr, HashMap<String,String> headers, boolean omitFIK) throws FEBAPIException {
+		long stamp = cache != null ? cache.stamp() : 0; //taken first, so an invalidation during the request is seen
+		FEBResponseCache.Entry e = (cache != null && cache.isEnabled()) ? cache.get(key) : null;
+		
+		if(e != null && !e.isExpired()) {
+			logger.debug("Cache hit for {}", key);
+			return FEBResponseCache.copy(e.response);
+		}
+		
+		if(!coalesceRequests)
+			return fetch(cache, key, e, stamp, urlStr, headers, omitFIK);
+		
+		String flightKey = urlStr + "|" + headers.get("Accept");
+		final Flight mine = new Flight(writeGeneration.get());
+		Flight flight = inFlight.compute(flightKey, (k, existing) -> {
+			//a request sent before a write may return the old data, so it is replaced rather than joined
+			if(existing == null || existing.generation != mine.generation)
+				return mine;
+			existing.followers++;
+			return existing;
+		});
+		
+		if(flight != mine) {
+			logger.debug("Joining the request in flight for {}", flightKey);
+			try {
+				return FEBResponseCache.copy(flight.result.get());
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new FEBAPIException("Interrupted while waiting for " + urlStr, ie);
+			} catch(ExecutionException ee) {
+				throw new FEBAPIException(ee.getCause().getMessage(), ee.getCause());
+			}
+		}
+		
+		FEBResponse r = null;
+		Throwable failure = null;
+		try {
+			r = fetch(cache, key, e, stamp, urlStr, headers, omitFIK);
+			return r;
+		} catch(FEBAPIException | RuntimeException | Error t) {
+			failure = t;
+			throw t;
+		} finally {
+			//once removed no one else can join, so the follower count is final
+			inFlight.remove(flightKey, mine);
+			if(failure != null) {
+				mine.result.completeExceptionally(failure);
+			} else {
+				//the followers get a copy so the caller is free to modify r
+				mine.result.complete(mine.followers > 0 ? FEBResponseCache.copy(r) : r);
+			}
+		}
+	}
+	
+	private FEBResponse fetch(FEBResponseCache cache, String key, FEBResponseCache.Entry e, long stamp, String urlStr, HashMap<String,String> headers, boolean omitFIK) throws FEBAPIException {
+		addRevalidationHeaders(e, headers);
+		HttpURLConnection conn = execute(FEBOperationType.READ, urlStr, HTTP_GET, headers, omitFIK, null, true);
+		return readFetched(conn, cache, key, e, stamp);
+	}
+	
+	/**
+	 * The asynchronous form of cachedGet.  A request already in flight for the same URL is joined without waiting on it.
+	 */
+	private CompletableFuture<FEBResponse> cachedGetAsync(FEBResponseCache cache, String key, String urlStr, HashMap<String,String> headers) {
+		long stamp = cache != null ? cache.stamp() : 0;
+		FEBResponseCache.Entry e = (cache != null && cache.isEnabled()) ? cache.get(key) : null;
+		
+		if(e != null && !e.isExpired()) {
+			logger.debug("Cache hit for {}", key);
+			return CompletableFuture.completedFuture(FEBResponseCache.copy(e.response));
+		}
+		
+		if(!coalesceRequests)
+			return fetchAsync(cache, key, e, stamp, urlStr, headers);
+		
+		String flightKey = urlStr + "|" + headers.get("Accept");
+		final Flight mine = new Flight(writeGeneration.get());
+		Flight flight = inFlight.compute(flightKey, (k, existing) -> {
+			if(existing == null || existing.generation != mine.generation)
+				return mine;
+			existing.followers++;
+			return existing;
+		});
+		
+		if(flight != mine) {
+			logger.debug("Joining the request in flight for {}", flightKey);
+			return flight.result.thenApply(FEBResponseCache::copy);
+		}
+		
+		CompletableFuture<FEBResponse> f = fetchAsync(cache, key, e, stamp, urlStr, headers);
+		f.whenComplete((r, t) -> {
+			inFlight.remove(flightKey, mine);
+			if(t != null)
+				mine.result.completeExceptionally(unwrap(t));
+			else
+				mine.result.complete(mine.followers > 0 ? FEBResponseCache.copy(r) : r);
+		});
+		return f;
+	}
+	
+	private CompletableFuture<FEBResponse> fetchAsync(FEBResponseCache cache, String key, FEBResponseCache.Entry e, long stamp, String urlStr, HashMap<String,String> headers) {
+		addRevalidationHeaders(e, headers);
+		return executeAsync(FEBOperationType.READ, urlStr, HTTP_GET, headers, null).thenApply(step(conn -> readFetched(conn, cache, key, e, stamp)));
+	}
+	
+	private static void addRevalidationHeaders(FEBResponseCache.Entry e, HashMap<String,String> headers) {
+		if(e != null && e.canRevalidate()) {
+			if(e.etag != null)
+				headers.put("If-None-Match", e.etag);
+			if(e.lastModified != null)
+				headers.put("If-Modified-Since", e.lastModified);
+		}
+	}
+	
+	/**
+	 * Reads the response of a GET sent by fetch or fetchAsync, answering a 304 from the cache entry and caching anything else.
+	 */
+	private FEBResponse readFetched(HttpURLConnection conn, FEBResponseCache cache, String key, FEBResponseCache.Entry e, long stamp) throws FEBAPIException {
+		String etag = null;
+		String lastModified = null;
+		try {
+			if(e != null && conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				logger.debug("Cache entry for {} revalidated", key);
+				if(cache.isCurrent(key, stamp))
+					cache.touch(e);
+				releaseConnection(conn, true);
+				return FEBResponseCache.copy(e.response);
+			}
+			if(cache != null) {
+				etag = conn.getHeaderField("ETag");
+				lastModified = conn.getHeaderField("Last-Modified");
+			}
+		} catch(IOException ioe) {
+			releaseConnection(conn, false);
+			throw new FEBAPIException(ioe.getMessage(), ioe);
+		}
+		
+		FEBResponse r = new FEBResponse();
+		populateFEBResponse(conn, r);
+		if(cache != null)
+			cache.put(key, r, etag, lastModified, stamp);
+		
+		return r;
+	}
+	
+	/**
+	 * A GET in progress and the number of callers waiting for its response.  followers is only changed inside inFlight.compute
+	 * and read after the flight is removed from inFlight.
+	 */
+	private static class Flight {
+		final CompletableFuture<FEBResponse> result = new CompletableFuture<FEBResponse>();
+		final long generation;
+		int followers = 0;
+		
+		Flight(long generation) {
+			this.generation = generation;
+		}
+	}
+	
+	/**
+	 * Writes the request, normally the body, to a connection before its response is read.
+	 */
+	private interface RequestWriter {
+		void write(HttpURLConnection conn) throws IOException, FEBAPIException;
+	}
+	
+	/**
+	 * Sends the request and waits for the response code, retrying according to the retry policy of the operation type and
+	 * the circuit breaker of the host.  The response of the connection returned is ready to be read and the caller must
+	 * release the connection.
+	 * 
+	 * A POST is only repeated if it carries an idempotency key or the connection could not be made.  A request whose body is
+	 * not replayable is never repeated.
+	 * 
+	 * @param type - The class of request, selects the retry policy.
+	 * @param urlStr
+	 * @param method
+	 * @param headers
+	 * @param omitFIK
+	 * @param writer - Writes the request body, called again for each attempt.  May be null.
+	 * @param replayable - false if the body comes from a stream and can only be written once.
+	 * @return HttpURLConnection
+	 * @throws FEBAPIException if the request fails and cannot be retried, or the circuit breaker is open
+	 */
+	private HttpURLConnection execute(FEBOperationType type, String urlStr, String method, HashMap<String,String> headers, boolean omitFIK, RequestWriter writer, boolean replayable) throws FEBAPIException {
+		FEBRetryPolicy policy = getRetryPolicy(type);
+		String host = getHost(urlStr);
+		FEBCircuitBreaker breaker = getCircuitBreaker(host);
+		FEBRateLimiter rateLimiter = getRateLimiter(host, type);
+		FEBConcurrencyLimiter concurrencyLimiter = getConcurrencyLimiterImpl(host, type);
+		boolean idempotent = !HTTP_POST.equals(method) || (idempotencyKeyHeader != null && headers != null && headers.containsKey(idempotencyKeyHeader));
+		boolean credentialsOnly = !replayable; //a rejected session could not be retried with the credentials
+		int attempt = 0;
+		
+		while(true) {
+			attempt++;
+			breaker.acquire();
+			//every way out of the attempt must tell the breaker, or a trial request that ends early leaves it half open
+			boolean reported = false;
+			try {
+				if(rateLimiter != null)
+					rateLimiter.acquire();
+				if(concurrencyLimiter != null)
+					concurrencyLimiter.acquire();
+			
+				int code = -1;
+				IOException failure = null;
+				HttpURLConnection conn = null;
+				String session = sessionCookies && !credentialsOnly ? sessions.getCookieHeader(host) : null;
+				long start = System.nanoTime();
+				try {
+					conn = establishURLConnection(urlStr, method, headers, omitFIK, session);
+					start = System.nanoTime(); //not counting the wait for a pooled connection
+					if(writer != null) {
+						writer.write(conn);
+						start = System.nanoTime(); //nor the upload of a streamed body, which depends on its size and not on the server
+					}
+					code = conn.getResponseCode();
+				} catch(IOException ioe) {
+					failure = ioe;
+				} catch(FEBAPIException e) {
+					//the upload helpers report I/O errors as FEBAPIException
+					if(conn == null || !(e.getCause() instanceof IOException)) {
+						releaseConnection(conn, false);
+						releaseSlot(concurrencyLimiter, start, false);
+						throw e;
+					}
+					failure = (IOException) e.getCause();
+				} catch(RuntimeException e) {
+					releaseConnection(conn, false);
+					releaseSlot(concurrencyLimiter, start, false);
+					throw e;
+				}
+			
+				releaseSlot(concurrencyLimiter, start, failure != null || code >= 500 || code == 429);
+			
+				if(failure != null) {
+					releaseConnection(conn, false);
+					breaker.onFailure();
+					reported = true;
+				
+					//if the connection could not be made nothing was sent, so any request with a replayable body can be repeated
+					boolean retry = replayable && (idempotent || failure instanceof ConnectException);
+					if(!retry || attempt >= policy.getMaxAttempts())
+						throw new FEBAPIException(failure.getMessage(), failure);
+				
+					long delay = policy.getDelay(attempt, -1);
+					logger.debug("{} {} failed ({}), retrying in {}ms", method, urlStr, failure.getMessage(), delay);
+					pause(delay);
+					continue;
+				}
+			
+				if(code == 502 || code == 503 || code == 504)
+					breaker.onFailure();
+				else
+					breaker.onSuccess();
+				reported = true;
+			
+				if(code == HttpURLConnection.HTTP_UNAUTHORIZED && session != null) {
+					//the session has expired, send the credentials instead.  Not counted as a retry.
+					logger.debug("Session for {} was rejected, sending credentials", host);
+					sessions.invalidate(host, session);
+					releaseConnection(conn, false);
+					credentialsOnly = true;
+					attempt--;
+					continue;
+				}
+			
+				if(sessionCookies)
+					sessions.capture(host, conn);
+			
+				//a 429 means the request was not processed, so even a POST can be repeated
+				if(!policy.isRetryable(code) || !replayable || !(idempotent || code == 429) || attempt >= policy.getMaxAttempts())
+					return conn;
+			
+				long delay = policy.getDelay(attempt, getRetryAfter(conn));
+				logger.debug("{} {} returned HTTP {}, retrying in {}ms", method, urlStr, code, delay);
+				releaseConnection(conn, false);
+				pause(delay);
+			} finally {
+				if(!reported)
+					breaker.release();
+			}
+		}
+	}
+	
+	private void releaseSlot(FEBConcurrencyLimiter limiter, long start, boolean overloaded) {
+		if(limiter != null)
+			limiter.release(System.nanoTime() - start, overloaded);
+	}
+	
+	/**
+	 * true if the transport can send requests without blocking, see {@link FEBAsyncTransport}.  FEBAsyncAPIImpl then uses the
+	 * *Async methods of this class rather than running the blocking ones on its executor.
+	 * 
+	 * @return boolean
+	 */
+	boolean isAsyncTransport() {
+		return transport instanceof FEBAsyncTransport;
+	}
+	
+	/**
+	 * The asynchronous form of execute.  The retry policy, circuit breaker, rate and concurrency limits and sessions apply the
+	 * same way, but waits are scheduled instead of slept and the request is sent with the transport's sendAsync, so no thread
+	 * is held while it is in flight.  The body is complete in memory, so every attempt can resend it.
+	 * 
+	 * The future completes with a connection whose response has been received in full.  The caller must release it.
+	 * 
+	 * @param type - The class of request, selects the retry policy.
+	 * @param urlStr
+	 * @param method
+	 * @param headers
+	 * @param body - The request body, or null.
+	 * @return CompletableFuture
+	 */
+	private CompletableFuture<HttpURLConnection> executeAsync(FEBOperationType type, String urlStr, String method, HashMap<String,String> headers, byte[] body) {
+		AsyncExchange x = new AsyncExchange(type, urlStr, method, headers, body);
+		x.attempt();
+		return x.result;
+	}
+	
+	/**
+	 * The state of an executeAsync request, carried from one attempt to the next.  Each step runs on whichever thread completed
+	 * the previous one: the caller, the transport or the scheduler.
+	 */
+	private class AsyncExchange {
+		final String urlStr;
+		final String method;
+		final HashMap<String,String> headers;
+		final byte[] body;
+		final FEBRetryPolicy policy;
+		final String host;
+		final FEBCircuitBreaker breaker;
+		final FEBRateLimiter rateLimiter;
+		final FEBConcurrencyLimiter concurrencyLimiter;
+		final boolean idempotent;
+		final CompletableFuture<HttpURLConnection> result = new CompletableFuture<HttpURLConnection>();
+		boolean credentialsOnly = false;
+		int attempt = 0;
+		
+		AsyncExchange(FEBOperationType type, String urlStr, String method, HashMap<String,String> headers, byte[] body) {
+			this.urlStr = urlStr;
+			this.method = method;
+			this.headers = headers;
+			this.body = body;
+			this.policy = getRetryPolicy(type);
+			this.host = getHost(urlStr);
+			this.breaker = getCircuitBreaker(host);
+			this.rateLimiter = getRateLimiter(host, type);
+			this.concurrencyLimiter = getConcurrencyLimiterImpl(host, type);
+			this.idempotent = !HTTP_POST.equals(method) || (idempotencyKeyHeader != null && headers != null && headers.containsKey(idempotencyKeyHeader));
+		}
+		
+		void attempt() {
+			attempt++;
+			try {
+				breaker.acquire();
+			} catch(FEBAPIException e) {
+				result.completeExceptionally(e);
+				return;
+			}
+			
+			//from here every way out must tell the breaker, as in execute
+			long wait = rateLimiter != null ? rateLimiter.reserve() : 0;
+			if(wait > 0) {
+				if(!schedule(this::acquireSlot, wait, TimeUnit.NANOSECONDS))
+					breaker.release();
+			} else {
+				acquireSlot();
+			}
+		}
+		
+		void acquireSlot() {
+			if(concurrencyLimiter == null)
+				send();
+			else
+				concurrencyLimiter.acquireAsync().thenRun(this::send);
+		}
+		
+		void send() {
+			String session = sessionCookies && !credentialsOnly ? sessions.getCookieHeader(host) : null;
+			HttpURLConnection conn;
+			try {
+				conn = establishURLConnection(urlStr, method, headers, false, session);
+				if(!(transport instanceof FEBAsyncTransport))
+					throw new FEBAPIException("The transport was changed to one that cannot send requests asynchronously.");
+			} catch(FEBAPIException | RuntimeException e) {
+				releaseSlot(concurrencyLimiter, System.nanoTime(), false);
+				breaker.release();
+				result.completeExceptionally(e);
+				return;
+			}
+			
+			long start = System.nanoTime();
+			((FEBAsyncTransport) transport).sendAsync(conn, body).whenComplete((c, t) -> onResponse(conn, session, start, t));
+		}
+		
+		void onResponse(HttpURLConnection conn, String session, long start, Throwable t) {
+			boolean reported = false;
+			try {
+				int code = -1;
+				IOException failure = null;
+				if(t != null) {
+					Throwable cause = unwrap(t);
+					if(!(cause instanceof IOException)) {
+						releaseConnection(conn, false);
+						releaseSlot(concurrencyLimiter, start, false);
+						result.completeExceptionally(cause);
+						return;
+					}
+					failure = (IOException) cause;
+				} else {
+					try {
+						code = conn.getResponseCode();
+					} catch(IOException ioe) {
+						failure = ioe;
+					}
+				}
+				
+				releaseSlot(concurrencyLimiter, start, failure != null || code >= 500 || code == 429);
+				
+				if(failure != null) {
+					releaseConnection(conn, false);
+					breaker.onFailure();
+					reported = true;
+					
+					if(!(idempotent || failure instanceof ConnectException) || attempt >= policy.getMaxAttempts()) {
+						result.completeExceptionally(new FEBAPIException(failure.getMessage(), failure));
+						return;
+					}
+					
+					long delay = policy.getDelay(attempt, -1);
+					logger.debug("{} {} failed ({}), retrying in {}ms", method, urlStr, failure.getMessage(), delay);
+					schedule(this::attempt, delay, TimeUnit.MILLISECONDS);
+					return;
+				}
+				
+				if(code == 502 || code == 503 || code == 504)
+					breaker.onFailure();
+				else
+					breaker.onSuccess();
+				reported = true;
+				
+				if(code == HttpURLConnection.HTTP_UNAUTHORIZED && session != null) {
+					logger.debug("Session for {} was rejected, sending credentials", host);
+					sessions.invalidate(host, session);
+					releaseConnection(conn, false);
+					credentialsOnly = true;
+					attempt--;
+					attempt();
+					return;
+				}
+				
+				if(sessionCookies)
+					sessions.capture(host, conn);
+				
+				if(!policy.isRetryable(code) || !(idempotent || code == 429) || attempt >= policy.getMaxAttempts()) {
+					result.complete(conn);
+					return;
+				}
+				
+				long delay = policy.getDelay(attempt, getRetryAfter(conn));
+				logger.debug("{} {} returned HTTP {}, retrying in {}ms", method, urlStr, code, delay);
+				releaseConnection(conn, false);
+				schedule(this::attempt, delay, TimeUnit.MILLISECONDS);
+			} catch(RuntimeException e) {
+				releaseConnection(conn, false);
+				result.completeExceptionally(e);
+			} finally {
+				if(!reported)
+					breaker.release();
+			}
+		}
+		
+		/**
+		 * Runs the next step after a delay.  If the scheduler has been shut down the request fails instead.
+		 * 
+		 * @return false if the step could not be scheduled
+		 */
+		boolean schedule(Runnable next, long delay, TimeUnit unit) {
+			try {
+				getScheduler().schedule(next, delay, unit);
+				return true;
+			} catch(RejectedExecutionException ree) {
+				result.completeExceptionally(new FEBAPIException("The API has been shut down.", ree));
+				return false;
+			}
 		}
-		
-		if(password == null || new String(password).isEmpty()) {
-			logger.debug("Password is required and was not provided, throwing an exception...");
-			throw new FEBAPIException("The password is required.");
+	}
+	
+	private synchronized ScheduledExecutorService getScheduler() {
+		if(scheduler == null)
+			scheduler = Executors.newSingleThreadScheduledExecutor(new FEBAsyncAPIImpl.DaemonThreadFactory("feb-scheduler-"));
+		return scheduler;
+	}
+	
+	/**
+	 * A step of an asynchronous request that may throw.  The exception completes the request exceptionally.
+	 */
+	private interface AsyncStep<T,R> {
+		R apply(T t) throws Exception;
+	}
+	
+	private static <T,R> Function<T,R> step(AsyncStep<T,R> s) {
+		return t -> {
+			try {
+				return s.apply(t);
+			} catch(RuntimeException e) {
+				throw e;
+			} catch(Exception e) {
+				throw new CompletionException(e);
+			}
+		};
+	}
+	
+	private static <T> CompletableFuture<T> failed(Throwable t) {
+		CompletableFuture<T> f = new CompletableFuture<T>();
+		f.completeExceptionally(t);
+		return f;
+	}
+	
+	/**
+	 * Returns the exception that stopped an asynchronous request, without the CompletionException the future wraps it in.
+	 * 
+	 * @param t
+	 * @return Throwable
+	 */
+	static Throwable unwrap(Throwable t) {
+		while((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null)
+			t = t.getCause();
+		return t;
+	}
+	
+	private static String getHost(String urlStr) {
+		try {
+			return new URL(urlStr).getAuthority();
+		} catch(MalformedURLException mue) {
+			return "";
 		}
-		
-		this.urlBase = this.server + "/" + this.context + "/secure/org/data/";
-		this.appUrlBase = this.server + "/" + this.context + "/secure/org/app";
-		this.orgUrlBase = this.server + "/" + this.context + "/secure/org/";
-		this.adminUrlBase = this.server + "/" + this.context + "/secure/org/admin/";
-		this.credentials = this.getEncodedString(username, password);		
 	}
 	
-	/* DEPRECATED*/
-//	private String processFEBFilters(ArrayList<FEBFilterParam> filters, FEBFilterRelationship filterOperator) throws FEBAPIException {
-//		String r = "";		
-//
-//		if(filters != null) {
-//			logger.debug("Building URL Filter Params...");
-//			for(int i=0;i<filters.size();i++) {
-//				r = this.addURLParam(r, filters.get(i).getFilterString());
-//				logger.debug("    Adding param {}", filters.get(i).getFilterString());
-//			}				
-//		}
-//		
-//		if(filterOperator != null && !filterOperator.getValue().isEmpty()) {
-//			r = this.addURLParam(r, "searchOperator=" + filterOperator);
-//			logger.debug("    Adding param {}", "searchOperator=" + filterOperator);
-//		}
-//		
-//		return r;
-//	}
-
+	private FEBCircuitBreaker getCircuitBreaker(String host) {
+		FEBCircuitBreaker breaker = breakers.get(host);
+		if(breaker == null) {
+			breaker = new FEBCircuitBreaker(host, breakerThreshold, breakerOpenMillis);
+			FEBCircuitBreaker existing = breakers.putIfAbsent(host, breaker);
+			if(existing != null)
+				breaker = existing;
+		}
+		return breaker;
+	}
+	
 	/**
-	 * Returns all the FEB records that match the specified criteria.
-	 * filters - According to the supported filters in KC
+	 * Reads the Retry-After header, either a number of seconds or an HTTP date.
+	 * 
+	 * @param conn
+	 * @return the wait in milliseconds, or -1 if there is no valid header
 	 */
-	public FEBResponse listRecords (String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat) throws FEBAPIException {
-		FEBResponse r = new FEBResponse();
+	private static long getRetryAfter(HttpURLConnection conn) {
+		String value = conn.getHeaderField("Retry-After");
+		if(value == null || value.trim().isEmpty())
+			return -1;
 		
+		value = value.trim();
 		try {
-			String apiURL = this.urlBase + appUid + "/" + formId;
-		
-			if(filters != null)
-				apiURL += filters.getFilterURLString();
-			
-			logger.debug("REST URL = {}", apiURL);	
-			
-			HashMap<String,String> headers = new HashMap<String,String>();
-			if(returnFormat == null || "".equals(returnFormat.toString())) {
-				headers.put("Accept", FEBReturnFormat.JSON.toString());
-			} else {
-				headers.put("Accept", returnFormat.toString());
+			return Long.parseLong(value) * 1000;
+		} catch(NumberFormatException nfe) {
+			try {
+				ZonedDateTime when = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+				return Math.max(0, when.toInstant().toEpochMilli() - System.currentTimeMillis());
+			} catch(DateTimeParseException dtpe) {
+				return -1;
 			}
-			HttpURLConnection conn = establishURLConnection(apiURL, HTTP_GET, headers, false);			
-			
-			populateFEBResponse(conn, r);			
-			
-		} catch (Exception e) {
-			throw new FEBAPIException(e.getMessage(), e);
 		}
-		
-		return r;	
-		
+	}
+	
+	private static void pause(long millis) throws FEBAPIException {
+		try {
+			Thread.sleep(millis);
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new FEBAPIException("Interrupted while waiting to retry.", ie);
+		}
 	}
 	
 	/**
@@ -240,9 +1464,10 @@ public class FEBAPIImpl implements FEBAPI {
 	 * 
 	 * @param urlStr
 	 * @param method
+	 * @param sessionCookie - The session cookies to send in place of the credentials, or null to send the credentials.
 	 * @return
 	 */
-	private HttpURLConnection establishURLConnection(String urlStr, String method, HashMap<String,String> headers, boolean omitFIK) throws FEBAPIException {
+	private HttpURLConnection establishURLConnection(String urlStr, String method, HashMap<String,String> headers, boolean omitFIK, String sessionCookie) throws FEBAPIException {
 		URL url = null;
 		HttpURLConnection conn = null;
 		try {
@@ -255,22 +1480,22 @@ public class FEBAPIImpl implements FEBAPI {
 			url = new URL(urlStr);
 			
 			if(url != null) {
-				conn = (HttpURLConnection) url.openConnection();
-				if(conn instanceof HttpsURLConnection) {			
-		            if (this.ignoreSSL) {
-		                ((HttpsURLConnection) conn).setSSLSocketFactory(getSSLContext(this.protocol).getSocketFactory());
-						((HttpsURLConnection) conn).setHostnameVerifier(getHostNameVerifier());
-		            } else {
-		                ((HttpsURLConnection) conn).setSSLSocketFactory((SSLSocketFactory) SSLSocketFactory.getDefault());
-		            }
+				conn = transport.openConnection(url);
+				if(conn instanceof HttpsURLConnection) {
+					//the same factory for every connection, so TLS sessions are resumed and sockets kept alive
+					FEBTLSConfig tls = this.tlsConfig;
+					((HttpsURLConnection) conn).setSSLSocketFactory(tls.getSocketFactory());
+					((HttpsURLConnection) conn).setHostnameVerifier(tls.getHostnameVerifier());
 					((HttpsURLConnection) conn).setRequestMethod(method);
 				} else if(conn instanceof HttpURLConnection) {
 					conn.setRequestMethod(method);
 				}
 			}
 		} catch(ProtocolException pe) {
+			releaseConnection(conn, false);
 			throw new FEBAPIException(pe.getMessage(), pe);
 		} catch(Exception e) {
+			releaseConnection(conn, false);
 			throw new FEBAPIException(e.getMessage(), e);
 		}
 		
@@ -285,8 +1510,15 @@ public class FEBAPIImpl implements FEBAPI {
 			}
 		}
 		
-		conn.addRequestProperty("Authorization", "Basic " + this.credentials);
-		logger.debug("Adding Authorization header: " + "Basic " + this.credentials);
+		if(compression && method.equals(HTTP_GET) && (headers == null || !headers.containsKey("Accept-Encoding"))) {
+			conn.addRequestProperty("Accept-Encoding", "gzip, deflate");
+		}
+		
+		//the session cookies replace the credentials
+		if(sessionCookie == null) {
+			conn.addRequestProperty("Authorization", "Basic " + this.credentials);
+			logger.debug("Adding Authorization header: " + "Basic " + this.credentials);
+		}
 		conn.setDoOutput(true);
 		
 		if(method.equals(HTTP_POST) || method.equals(HTTP_PUT)) {
@@ -294,26 +1526,32 @@ public class FEBAPIImpl implements FEBAPI {
 		}			
 
 		
+		String cookie = sessionCookie;
 		if(this.freedomIdentifyKey != null && !this.freedomIdentifyKey.isEmpty() && !omitFIK) {
 			logger.debug("Adding Cookie: freedomIdentifyKey=" + this.freedomIdentifyKey);
-			conn.addRequestProperty("Cookie", "freedomIdentifyKey=" + this.freedomIdentifyKey);
+			cookie = "freedomIdentifyKey=" + this.freedomIdentifyKey + (cookie == null ? "" : "; " + cookie);
 		}
+		if(cookie != null)
+			conn.addRequestProperty("Cookie", cookie);
 		
-		return (HttpURLConnection)conn;
+		return conn;
 	}
 	
 	@SuppressWarnings("unchecked")
 	private void populateFEBResponse(HttpURLConnection conn, FEBResponse resp) throws FEBAPIException {
 		
 		InputStream is = null;
+		boolean reusable = false;
 		try {
 			
 			resp.responseCode = conn.getResponseCode();
 			resp.responseText = conn.getResponseMessage();			
 			
 			if(resp.responseCode == 200 || resp.responseCode == 201) {
-				is = conn.getInputStream();
+				is = getResponseStream(conn);
 				if(is != null) {
+					CountingInputStream counter = new CountingInputStream(is);
+					is = counter;
 					
 					if(conn.getContentType().startsWith(JSON_MEDIATYPE)) {
 
@@ -339,33 +1577,88 @@ public class FEBAPIImpl implements FEBAPI {
 						}
 
 					} else if(conn.getContentType().startsWith(ATOM_MEDIATYPE)) {
-						DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-						DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+						DocumentBuilder dBuilder = getDocumentBuilder();
 						Document d = dBuilder.parse(is);
 						d.getDocumentElement().normalize();
 						resp.responseXML = d;
-					} else {
-						resp.responseBinary = new byte[conn.getContentLength()];
+					} else if(getDecodedLength(conn) >= 0) {
+						resp.responseBinary = new byte[(int) getDecodedLength(conn)];
 						DataInputStream dis = new DataInputStream(is);
 						dis.readFully(resp.responseBinary);
 						dis.close();
+					} else {
+						//chunked response, the length is not known up front
+						ByteArrayOutputStream bos = new ByteArrayOutputStream();
+						transfer(Channels.newChannel(is), Channels.newChannel(bos));
+						resp.responseBinary = bos.toByteArray();
 					}
+					resp.responseLength = counter.count;
 				}
 			}
+			reusable = true;
 			
 		} catch(Exception e) {
 			throw new FEBAPIException(e.getMessage(), e);
 		} finally {
-			if(conn != null) {
-				conn.disconnect();	
+			if(is != null) {
+				try {
+					is.close();
+				} catch (IOException e) {
+					reusable = false;
+				}
+			}
+			releaseConnection(conn, reusable);
+		}
+	}
+	
+	/**
+	 * Parses a JSON record list directly from the response stream, passing each record in "items" to the callback rather than
+	 * building the complete JSONObject.  responseJSON will contain everything in the response except the items.
+	 * 
+	 * Responses that are not JSON are handled the same as populateFEBResponse(conn, resp).
+	 * 
+	 * @param conn
+	 * @param resp
+	 * @param callback
+	 * @throws FEBAPIException
+	 */
+	private void populateFEBResponse(HttpURLConnection conn, FEBResponse resp, FEBRecordCallback callback) throws FEBAPIException {
+		
+		InputStream is = null;
+		boolean reusable = false;
+		try {
+			
+			resp.responseCode = conn.getResponseCode();
+			resp.responseText = conn.getResponseMessage();
+			
+			String contentType = conn.getContentType();
+			if(!resp.isResponse20x() || contentType == null || !contentType.startsWith(JSON_MEDIATYPE)) {
+				populateFEBResponse(conn, resp);
+				return;
+			}
+			
+			is = getResponseStream(conn);
+			if(is != null) {
+				FEBRecordContentHandler handler = new FEBRecordContentHandler(callback);
+				JSONParser jsonParser = new JSONParser();
+				jsonParser.parse(new InputStreamReader(is, ENCODING_UTF8), handler);
+				
+				resp.responseJSON = handler.getHeader();
+				logger.debug("Streamed {} records, stopped by callback = {}", handler.getRecordCount(), handler.isStopped());
 			}
+			reusable = true;
+			
+		} catch(Exception e) {
+			throw new FEBAPIException(e.getMessage(), e);
+		} finally {
 			if(is != null) {
 				try {
 					is.close();
 				} catch (IOException e) {
-					throw new FEBAPIException(e.getMessage(), e);
+					reusable = false;
 				}
 			}
+			releaseConnection(conn, reusable);
 		}
 	}
 	
@@ -382,37 +1675,234 @@ public class FEBAPIImpl implements FEBAPI {
 private void writeFEBAttachment(HttpURLConnection conn, FEBResponse resp, String filePath) throws FEBAPIException {
 		
 		InputStream is = null;
+		boolean reusable = false;
 		try {
 			
 			resp.responseCode = conn.getResponseCode();
 			resp.responseText = conn.getResponseMessage();
 						
 			if(resp.responseCode == 200 || resp.responseCode == 201) {
-				is = conn.getInputStream();
+				is = getResponseStream(conn);
 				if(is != null) {
 //					File f = new File(filePath);
 //					if(f.canWrite()) {
-						printStreamToFile(is, filePath);
+						writeStreamToFile(is, getDecodedLength(conn), Paths.get(filePath));
 //					} else {
 //						throw new Exception("Do not have permission to write to specified path");
 //					}
 				}
 			}
+			reusable = true;
 		} catch(IOException ioe) {
 			throw new FEBAPIException(ioe.getMessage(), ioe);
 		} catch(Exception e) {
 			throw new FEBAPIException(e.getMessage(), e);
 		} finally {
-			if(conn != null) {
-				conn.disconnect();
-			}
 			if(is != null) {
 				try {
 					is.close();
 				} catch (IOException e) {
-					throw new FEBAPIException(e.getMessage(), e);
+					reusable = false;
 				}
 			}
+			releaseConnection(conn, reusable);
+		}
+	}
+	
+	/**
+	 * Returns this thread's DocumentBuilder, creating it the first time.
+	 * 
+	 * @return
+	 * @throws ParserConfigurationException
+	 */
+	private DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		DocumentBuilder b = DOC_BUILDER.get();
+		if(b == null) {
+			synchronized(DOC_BUILDER_FACTORY) {
+				b = DOC_BUILDER_FACTORY.newDocumentBuilder();
+			}
+			DOC_BUILDER.set(b);
+		} else {
+			b.reset();
+		}
+		return b;
+	}
+	
+	/**
+	 * Opens a GET request for an Atom feed and returns a FEBFeedReader over the response.  The connection is released when
+	 * the reader is closed.
+	 * 
+	 * @param apiURL
+	 * @return
+	 * @throws FEBAPIException if the request does not return HTTP 200
+	 */
+	private FEBFeedReader openFeedReader(String apiURL) throws FEBAPIException {
+		HashMap<String,String> headers = new HashMap<String,String>();
+		headers.put("Accept", ATOM_MEDIATYPE);
+		HttpURLConnection conn = execute(FEBOperationType.READ, apiURL, HTTP_GET, headers, false, null, true);
+		
+		try {
+			int code = conn.getResponseCode();
+			if(code != 200) {
+				String msg = conn.getResponseMessage();
+				releaseConnection(conn, true);
+				throw new FEBAPIException("Failed to retrieve feed.  Request returned HTTP " + code + " (" + msg + ")");
+			}
+			InputStream is = getReleasingInputStream(conn);
+			try {
+				return new FEBFeedReader(is);
+			} catch (FEBAPIException e) {
+				is.close();
+				throw e;
+			}
+		} catch (IOException ioe) {
+			releaseConnection(conn, false);
+			throw new FEBAPIException(ioe.getMessage(), ioe);
+		}
+	}
+	
+	/**
+	 * Hands the connection back to the transport.  Safe to call more than once, or with a null connection.
+	 * 
+	 * @param conn
+	 * @param reusable - true if the response was received and the socket can be kept alive
+	 */
+	private void releaseConnection(HttpURLConnection conn, boolean reusable) {
+		if(conn != null) {
+			transport.releaseConnection(conn, reusable);
+		}
+	}
+	
+	/**
+	 * Returns the response stream of the connection, wrapped so that the connection is released when the caller closes the stream.
+	 * 
+	 * @param conn
+	 * @return
+	 * @throws IOException
+	 */
+	private InputStream getReleasingInputStream(HttpURLConnection conn) throws IOException {
+		try {
+			return new ConnectionInputStream(conn, getResponseStream(conn));
+		} catch (IOException ioe) {
+			releaseConnection(conn, true);
+			throw ioe;
+		}
+	}
+	
+	/**
+	 * Returns the response stream of the connection, decompressed as it is read if the server sent it gzip or deflate encoded.
+	 * 
+	 * @param conn
+	 * @return
+	 * @throws IOException
+	 */
+	private static InputStream getResponseStream(HttpURLConnection conn) throws IOException {
+		InputStream is = conn.getInputStream();
+		String encoding = conn.getContentEncoding();
+		if(is == null || encoding == null)
+			return is;
+		
+		encoding = encoding.trim().toLowerCase();
+		if(encoding.equals("gzip") || encoding.equals("x-gzip")) {
+			return new GZIPInputStream(is, 8192);
+		} else if(encoding.equals("deflate")) {
+			//deflate should be zlib wrapped, but some servers send the raw stream, the zlib header tells them apart
+			BufferedInputStream bis = new BufferedInputStream(is, 8192);
+			bis.mark(2);
+			int b0 = bis.read();
+			int b1 = bis.read();
+			bis.reset();
+			boolean zlib = b0 >= 0 && b1 >= 0 && (b0 & 0x0f) == 8 && ((b0 << 8) | b1) % 31 == 0;
+			return new InflatingInputStream(bis, new Inflater(!zlib));
+		}
+		return is;
+	}
+	
+	/**
+	 * The length of the body returned by getResponseStream, or -1 if it is not known.  Content-Length is the encoded length
+	 * when the body is compressed, so it does not apply.
+	 * 
+	 * @param conn
+	 * @return
+	 */
+	private static long getDecodedLength(HttpURLConnection conn) {
+		String encoding = conn.getContentEncoding();
+		if(encoding != null && !encoding.trim().equalsIgnoreCase("identity"))
+			return -1;
+		return conn.getContentLengthLong();
+	}
+	
+	/**
+	 * Inflates a deflate encoded response, releasing the Inflater when the stream is closed.
+	 */
+	private static class InflatingInputStream extends InflaterInputStream {
+		
+		InflatingInputStream(InputStream is, Inflater inflater) {
+			super(is, inflater, 8192);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				inf.end();
+			}
+		}
+	}
+	
+	/**
+	 * Releases the underlying connection back to the transport when the stream is closed.
+	 */
+	private class ConnectionInputStream extends FilterInputStream {
+		private final HttpURLConnection conn;
+		
+		ConnectionInputStream(HttpURLConnection conn, InputStream is) {
+			super(is);
+			this.conn = conn;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				releaseConnection(conn, true);
+			}
+		}
+	}
+	
+	/**
+	 * Counts the bytes read from the response body.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		long count = 0;
+		
+		CountingInputStream(InputStream is) {
+			super(is);
+		}
+		
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b >= 0)
+				count++;
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if(n > 0)
+				count += n;
+			return n;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
 		}
 	}
 	
@@ -450,9 +1940,59 @@ private void writeFEBAttachment(HttpURLConnection conn, FEBResponse resp, String
 			} else {
 				headers.put("Accept", returnFormat.toString());
 			}
-			HttpURLConnection conn = establishURLConnection(apiURL, HTTP_GET, headers, false);
+			
+			String key = appUid + "/" + formId + "/" + recordUid + "/" + headers.get("Accept");
+			r = cachedGet(recordCache, key, apiURL, headers, false);
+			
+		} catch (Exception e) {
+			throw new FEBAPIException(e.getMessage(), e);
+		}
+		
+		return r;
+	}
+	
+	public FEBResponse listRecordsToCallback (String appUid, String formId, FEBFilters filters, FEBRecordCallback callback) throws FEBAPIException {
+		FEBResponse r = new FEBResponse();
+		
+		if(callback == null)
+			throw new FEBAPIException("A callback is required.");
+		
+		try {
+			String apiURL = this.urlBase + appUid + "/" + formId;
+		
+			if(filters != null)
+				apiURL += filters.getFilterURLString();
+			
+			logger.debug("REST URL = {}", apiURL);	
+			
+			HashMap<String,String> headers = new HashMap<String,String>();
+			headers.put("Accept", JSON_MEDIATYPE);
+			HttpURLConnection conn = execute(FEBOperationType.READ, apiURL, HTTP_GET, headers, false, null, true);			
+			
+			populateFEBResponse(conn, r, callback);
+			
+		} catch (Exception e) {
+			throw new FEBAPIException(e.getMessage(), e);
+		}
+		
+		return r;
+	}
+	
+	public FEBResponse retrieveRecordToCallback (String appUid, String formId, String recordUid, FEBRecordCallback callback) throws FEBAPIException {
+		FEBResponse r = new FEBResponse();
+		
+		if(callback == null)
+			throw new FEBAPIException("A callback is required.");
+		
+		try {
+			String apiURL = this.urlBase + appUid + "/" + formId + "/" + recordUid;	
+			logger.debug("REST URL = {}", apiURL);
+					
+			HashMap<String,String> headers = new HashMap<String,String>();
+			headers.put("Accept", JSON_MEDIATYPE);
+			HttpURLConnection conn = execute(FEBOperationType.READ, apiURL, HTTP_GET, headers, false, null, true);
 						
-			populateFEBResponse(conn, r);
+			populateFEBResponse(conn, r, callback);
 			
 		} catch (Exception e) {
 			throw new FEBAPIException(e.getMessage(), e);
@@ -479,7 +2019,7 @@ private void writeFEBAttachment(HttpURLConnection conn, FEBResponse resp, String
 					
 			HashMap<String,String> headers = new HashMap<String,String>();
 			headers.put("Accept", JSON_MEDIATYPE);
-			HttpURLConnection conn = establishURLConnection(apiURL, HTTP_GET, headers, false);
+			HttpURLConnection conn = execute(FEBOperationType.READ, apiURL, HTTP_GET, headers, false, null, true);
 						
 			//populateFEBResponse(conn, r);
 			writeFEBAttachment(conn, r, filePath);
@@ -497,9 +2037,9 @@ private void writeFEBAttachment(HttpURLConnection conn, FEBResponse resp, String
 			String apiURL = this.urlBase + appUid + "/" + formId + "/attachment/" + attachmentUID;
 			logger.debug("REST URL = {}", apiURL);
 					
-			HttpURLConnection conn = establishURLConnection(apiURL, HTTP_GET, null, false);
+			HttpURLConnection conn = execute(FEBOperationType.READ, apiURL, HTTP_GET, null, false, null, true);
 						
-			return conn.getInputStream();
+			return getReleasingInputStream(conn);
 			
 		} catch (Exception e) {
 			throw new FEBAPIException(e.getMessage(), e);
@@ -564,6 +2104,7 @@ private void writeFEBAttachment(HttpURLConnection conn, FEBResponse resp, String
 	
 	public FEBResponse uploadAttachment (String appUid, String formId, String mediaType, String filePath) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
+		HttpURLConnection conn = null;
 		
 		try {
 			String apiURL = this.urlBase + appUid + "/" + formId + "/attachment"; //?invitecode=2414893244";
@@ -572,23 +2113,28 @@ private void writeFEBAttachment(HttpURLConnection conn, FEBResponse resp, String
 					
 			HashMap<String,String> headers = new HashMap<String,String>();
 			headers.put("Accept", JSON_MEDIATYPE);
-			HttpURLConnection conn = establishURLConnection(apiURL, HTTP_POST, headers, false);
-						
+			
 			File theFile = new File(filePath);
 			
 			if(!theFile.exists()|| !theFile.canRead())
 				throw new FEBAPIException("File does not exist or don't have read access.");
-				
-			FileInputStream fis = new FileInputStream(theFile);
-	    	uploadFileToServer(conn, theFile.getName(), theFile.getName(), mediaType, fis);
-	    	fis.close();
+			
+			//the file is opened again for each attempt
+			conn = execute(FEBOperationType.WRITE, apiURL, HTTP_POST, headers, false, c -> {
+				FileInputStream fis = new FileInputStream(theFile);
+				try {
+					uploadFileToServer(c, theFile.getName(), theFile.getName(), mediaType, fis);
+				} finally {
+					fis.close();
+				}
+			}, true);
 						
 			populateFEBResponse(conn, r);
 			
-			conn.disconnect();
-			
 		} catch (Exception e) {
 			throw new FEBAPIException(e.getMessage() + ":: " + r.responseText, e);
+		} finally {
+			releaseConnection(conn, false);
 		}
 		
 		return r;		
@@ -596,6 +2142,7 @@ private void writeFEBAttachment(HttpURLConnection conn, FEBResponse resp, String
 	
 	public FEBResponse uploadAttachment (String appUid, String formId, String mediaType, String fileName, InputStream fileStream) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
+		HttpURLConnection conn = null;
 		
 		try {
 			String apiURL = this.urlBase + appUid + "/" + formId + "/attachment"; //?invitecode=2414893244";
@@ -603,16 +2150,15 @@ private void writeFEBAttachment(HttpURLConnection conn, FEBResponse resp, String
 					
 			HashMap<String,String> headers = new HashMap<String,String>();
 			headers.put("Accept", JSON_MEDIATYPE);
-			HttpURLConnection conn = establishURLConnection(apiURL, HTTP_POST, headers, false);
-						
-	    	uploadFileToServer(conn, fileName, fileName, mediaType, fileStream);
+			conn = execute(FEBOperationType.WRITE, apiURL, HTTP_POST, headers, false,
+					c -> uploadFileToServer(c, fileName, fileName, mediaType, fileStream), false);
 						
 			populateFEBResponse(conn, r);
 			
-			conn.disconnect();
-			
 		} catch (Exception e) {
 			throw new FEBAPIException(e.getMessage() + ":: " + r.responseText, e);
+		} finally {
+			releaseConnection(conn, false);
 		}
 		
 		return r;		
@@ -629,6 +2175,24 @@ private void writeFEBAttachment(HttpURLConnection conn, FEBResponse resp, String
 		return r;
 	}
 	
+	public List<FEBRecordResult> submitRecords (String appUid, String formId, Iterable<JSONObject> records) throws FEBAPIException {
+		FEBBatchSubmitter batch = new FEBBatchSubmitter(this, batchConcurrency);
+		try {
+			return batch.submitRecords(appUid, formId, records);
+		} finally {
+			batch.shutdown();
+		}
+	}
+	
+	public List<FEBRecordResult> submitRecords (String appUid, String formId, Stream<JSONObject> records) throws FEBAPIException {
+		FEBBatchSubmitter batch = new FEBBatchSubmitter(this, batchConcurrency);
+		try {
+			return batch.submitRecords(appUid, formId, records);
+		} finally {
+			batch.shutdown();
+		}
+	}
+	
 	public FEBResponse submitRecord (String appUid, String formId, File jsonData) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
 		
@@ -775,10 +2339,7 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 	public FEBResponse updateRecord (String appUid, String formId, String recordUid, String jsonData) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
 		
-		String apiURL = this.urlBase + appUid + "/" + formId + "/" + recordUid;			
-		logger.debug("REST URL = {}", apiURL);
-				
-		r = submitUpdateImpl(apiURL, HTTP_PUT, jsonData);
+		r = updateRecordImpl(appUid, formId, recordUid, HTTP_PUT, jsonData);
 		
 		return r;
 	}
@@ -786,8 +2347,6 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 	public FEBResponse updateRecord (String appUid, String formId, String recordUid, JSONObject jsonData) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
 		
-		String apiURL = this.urlBase + appUid + "/" + formId + "/" + recordUid;			
-		logger.debug("REST URL = {}", apiURL);
 		logger.debug("JSON = {}", jsonData.toJSONString());
 		String pressedButton = (String) jsonData.get("pressedButton");
 		String flowState = (String) jsonData.get("flowState");
@@ -799,7 +2358,7 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 			throw new FEBAPIException("You must identify the ID of the current stage of the record being updated.");
 		
 				
-		r = submitUpdateImpl(apiURL, HTTP_PUT, jsonData.toJSONString());
+		r = updateRecordImpl(appUid, formId, recordUid, HTTP_PUT, jsonData.toJSONString());
 		
 		return r;
 	}
@@ -814,14 +2373,33 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 			throw new FEBAPIException("Failed to convert file to string.", e);
 		}
 		
-		String apiURL = this.urlBase + appUid + "/" + formId + "/" + recordUid;			
-		logger.debug("REST URL = {}", apiURL);
-				
-		r = submitUpdateImpl(apiURL, HTTP_PUT, fileContents);
+		r = updateRecordImpl(appUid, formId, recordUid, HTTP_PUT, fileContents);
 		
 		return r;
 	}
 	
+	/**
+	 * Updates or deletes a single record and removes it from the record cache, whether the request succeeded or not.
+	 * 
+	 * @param appUid
+	 * @param formId
+	 * @param recordUid
+	 * @param method - HTTP_PUT or HTTP_DELETE
+	 * @param jsonData
+	 * @return FEBResponse
+	 * @throws FEBAPIException
+	 */
+	private FEBResponse updateRecordImpl(String appUid, String formId, String recordUid, String method, String jsonData) throws FEBAPIException {
+		String apiURL = this.urlBase + appUid + "/" + formId + "/" + recordUid;
+		logger.debug("REST URL = {}", apiURL);
+		
+		try {
+			return submitUpdateImpl(apiURL, method, jsonData);
+		} finally {
+			invalidateRecordCache(appUid, formId, recordUid);
+		}
+	}
+	
 	@SuppressWarnings("unchecked")
 	public FEBResponse retrieveAndUpdateRecord (String appUid, String formId, String recordUid, String pressedButton, String flowState, HashMap<String,String> itemsToSet) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
@@ -886,25 +2464,26 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 	
 	private FEBResponse submitUpdateImpl(String url, String method, String jsonData) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
-		PrintStream fr = null;
-		OutputStreamWriter osw = null;
 		HttpURLConnection conn = null;
-		DataOutputStream dos = null;
 		
 		try {
 								
 			HashMap<String,String> headers = new HashMap<String,String>();
 			headers.put("Accept", JSON_MEDIATYPE);
 			headers.put("Content-Type", JSON_MEDIATYPE);
-			conn = establishURLConnection(url, method, headers, false);
-			
-			//upload the json content used to update the record
-			if(jsonData != null) {
-				dos = new DataOutputStream(conn.getOutputStream());
-				osw = new OutputStreamWriter(dos, "UTF-8");
-				osw.write(jsonData);
-				osw.flush();
-				osw.close();
+			if(HTTP_POST.equals(method) && idempotencyKeyHeader != null)
+				headers.put(idempotencyKeyHeader, UUID.randomUUID().toString()); //the same key is sent by every attempt
+			
+			String host = getHost(url);
+			boolean gzip = requestCompression && jsonData != null && jsonData.length() >= requestCompressionMinSize && !gzipRejected.contains(host);
+			
+			conn = execute(FEBOperationType.WRITE, url, method, headers, false, getJSONWriter(jsonData, gzip, headers), true);
+			if(gzip && conn.getResponseCode() == 415) {
+				//the server does not accept an encoded body, send it again as it is
+				logger.debug("{} does not accept gzip request bodies", host);
+				gzipRejected.add(host);
+				releaseConnection(conn, true);
+				conn = execute(FEBOperationType.WRITE, url, method, headers, false, getJSONWriter(jsonData, false, headers), true);
 			}
 						
 			populateFEBResponse(conn, r);
@@ -912,30 +2491,178 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		} catch (Exception e) {
 			throw new FEBAPIException(e.getMessage(), e);
 		} finally {
-			if(conn != null) {
-				conn.disconnect();
-			}
-			
-			if(dos != null) {
-				try {
-					dos.close();
-				} catch (IOException e) {
-					throw new FEBAPIException(e.getMessage(), e);
-				}
-			}
+			releaseConnection(conn, false);
+			writeGeneration.incrementAndGet();
 		}
 		
 		return r;
 	}
 	
+	private CompletableFuture<FEBResponse> submitUpdateImplAsync(String url, String method, String jsonData) {
+		HashMap<String,String> headers = new HashMap<String,String>();
+		headers.put("Accept", JSON_MEDIATYPE);
+		headers.put("Content-Type", JSON_MEDIATYPE);
+		if(HTTP_POST.equals(method) && idempotencyKeyHeader != null)
+			headers.put(idempotencyKeyHeader, UUID.randomUUID().toString());
+		
+		String host = getHost(url);
+		boolean gzip = requestCompression && jsonData != null && jsonData.length() >= requestCompressionMinSize && !gzipRejected.contains(host);
+		
+		CompletableFuture<HttpURLConnection> sent;
+		try {
+			sent = executeAsync(FEBOperationType.WRITE, url, method, headers, getJSONBody(jsonData, gzip, headers));
+		} catch(IOException ioe) {
+			writeGeneration.incrementAndGet();
+			return failed(new FEBAPIException(ioe.getMessage(), ioe));
+		}
+		
+		return sent.thenCompose(step(conn -> {
+			if(!gzip || conn.getResponseCode() != 415)
+				return CompletableFuture.completedFuture(conn);
+			
+			logger.debug("{} does not accept gzip request bodies", host);
+			gzipRejected.add(host);
+			releaseConnection(conn, true);
+			return executeAsync(FEBOperationType.WRITE, url, method, headers, getJSONBody(jsonData, false, headers));
+		})).thenApply(step(conn -> {
+			FEBResponse r = new FEBResponse();
+			populateFEBResponse(conn, r);
+			return r;
+		})).whenComplete((r, t) -> writeGeneration.incrementAndGet());
+	}
+	
+	private CompletableFuture<FEBResponse> updateRecordImplAsync(String appUid, String formId, String recordUid, String method, String jsonData) {
+		String apiURL = this.urlBase + appUid + "/" + formId + "/" + recordUid;
+		logger.debug("REST URL = {}", apiURL);
+		
+		return submitUpdateImplAsync(apiURL, method, jsonData).whenComplete((r, t) -> invalidateRecordCache(appUid, formId, recordUid));
+	}
+	
+	/*
+	 * The asynchronous forms of the record functions, used by FEBAsyncAPIImpl when the transport is a FEBAsyncTransport.  They
+	 * go through the same caches, coalescing and invalidation as the blocking functions.
+	 */
+	
+	CompletableFuture<FEBResponse> listRecordsAsync(String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat) {
+		String apiURL = this.urlBase + appUid + "/" + formId;
+		try {
+			if(filters != null)
+				apiURL += filters.getFilterURLString();
+		} catch(IllegalStateException ise) {
+			return failed(new FEBAPIException(ise.getMessage(), ise));
+		}
+		logger.debug("REST URL = {}", apiURL);
+		
+		HashMap<String,String> headers = new HashMap<String,String>();
+		headers.put("Accept", returnFormat == null || "".equals(returnFormat.toString()) ? FEBReturnFormat.JSON.toString() : returnFormat.toString());
+		
+		return cachedGetAsync(null, null, apiURL, headers).thenApply(r -> {
+			if(filters != null)
+				filters.notePageEnd(r);
+			return r;
+		});
+	}
+	
+	CompletableFuture<FEBResponse> retrieveRecordAsync(String appUid, String formId, String recordUid, FEBReturnFormat returnFormat) {
+		String apiURL = this.urlBase + appUid + "/" + formId + "/" + recordUid;
+		logger.debug("REST URL = {}", apiURL);
+		
+		HashMap<String,String> headers = new HashMap<String,String>();
+		headers.put("Accept", returnFormat == null || "".equals(returnFormat.toString()) ? FEBReturnFormat.JSON.toString() : returnFormat.toString());
+		
+		String key = appUid + "/" + formId + "/" + recordUid + "/" + headers.get("Accept");
+		return cachedGetAsync(recordCache, key, apiURL, headers);
+	}
+	
+	CompletableFuture<FEBResponse> getFormMetaDataAsync(String appUid, String formId) {
+		String apiURL = this.urlBase + appUid + "/" + formId + "/metadata";
+		logger.debug("REST URL = {}", apiURL);
+		
+		HashMap<String,String> headers = new HashMap<String,String>();
+		headers.put("Accept", JSON_MEDIATYPE);
+		
+		return cachedGetAsync(schemaCache, appUid + "/" + formId + "/" + SCHEMA_METADATA, apiURL, headers);
+	}
+	
+	CompletableFuture<FEBResponse> listAppsForUserAsync(Integer pageNum, Integer pageSize, String sortBy, String orderBy) {
+		String url = getAppsForUserURL(pageNum, pageSize, sortBy, orderBy);
+		logger.debug("REST URL = {}", url);
+		
+		HashMap<String,String> headers = new HashMap<String,String>();
+		headers.put("Accept", ATOM_MEDIATYPE);
+		headers.put("Content-Type", ATOM_MEDIATYPE);
+		
+		return cachedGetAsync(null, null, url, headers);
+	}
+	
+	CompletableFuture<FEBResponse> submitRecordAsync(String appUid, String formId, String jsonData) {
+		String apiURL = this.urlBase + appUid + "/" + formId;
+		logger.debug("REST URL = {}", apiURL);
+		logger.debug("SUBMITTED JSON = {}", jsonData);
+		return submitUpdateImplAsync(apiURL, HTTP_POST, jsonData);
+	}
+	
+	CompletableFuture<FEBResponse> updateRecordAsync(String appUid, String formId, String recordUid, String jsonData) {
+		return updateRecordImplAsync(appUid, formId, recordUid, HTTP_PUT, jsonData);
+	}
+	
+	CompletableFuture<FEBResponse> deleteRecordAsync(String appUid, String formId, String recordUid) {
+		return updateRecordImplAsync(appUid, formId, recordUid, HTTP_DELETE, null);
+	}
+	
+	/**
+	 * Returns the writer that uploads the json content used to submit or update a record, or null if there is no content.
+	 * 
+	 * @param jsonData
+	 * @param gzip - true to send the content gzip encoded, the Content-Encoding header is added to headers.
+	 * @param headers
+	 * @return
+	 */
+	private static RequestWriter getJSONWriter(String jsonData, boolean gzip, HashMap<String,String> headers) {
+		if(jsonData == null)
+			return null;
+		
+		if(gzip)
+			headers.put("Content-Encoding", "gzip");
+		else
+			headers.remove("Content-Encoding");
+		
+		return c -> {
+			OutputStream os = new DataOutputStream(c.getOutputStream());
+			if(gzip)
+				os = new GZIPOutputStream(os, 8192);
+			OutputStreamWriter osw = new OutputStreamWriter(os, ENCODING_UTF8);
+			osw.write(jsonData);
+			osw.flush();
+			osw.close();
+		};
+	}
+	
+	/**
+	 * The same as getJSONWriter, except that the body is encoded up front for a request sent with executeAsync.
+	 */
+	private static byte[] getJSONBody(String jsonData, boolean gzip, HashMap<String,String> headers) throws IOException {
+		if(jsonData == null)
+			return null;
+		
+		if(gzip)
+			headers.put("Content-Encoding", "gzip");
+		else
+			headers.remove("Content-Encoding");
+		
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		OutputStream os = gzip ? new GZIPOutputStream(bos, 8192) : bos;
+		OutputStreamWriter osw = new OutputStreamWriter(os, ENCODING_UTF8);
+		osw.write(jsonData);
+		osw.close();
+		return bos.toByteArray();
+	}
+	
 	public FEBResponse deleteRecord (String appUid, String formId, String recordUid) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
 		
 		try {
-			String apiURL = this.urlBase + appUid + "/" + formId + "/" + recordUid;
-			logger.debug("REST URL = {}", apiURL);
-					
-			r = submitUpdateImpl(apiURL, HTTP_DELETE, null);
+			r = updateRecordImpl(appUid, formId, recordUid, HTTP_DELETE, null);
 			
 		} catch (Exception e) {
 			throw new FEBAPIException(e.getMessage(), e);
@@ -946,59 +2673,19 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 	
 	public FEBResponse deleteRecords(String appUid, String formId, FEBFilters filters) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
-		JSONObject recordsJSON;
-		boolean moreRecs = true;	
-		FEBResponse listRes = null;
-		FEBResponse delRes = null;
-		Integer pageSize = 50;
-					
-		while(moreRecs) {
-			
-			listRes = this.listRecords(appUid, formId, filters, FEBReturnFormat.JSON);
 		
-			if(listRes.responseCode != 200)
-				throw new FEBAPIException("Failed to get records to delete. (" + listRes.responseText + ")");
-				
-			//get all the records we want to delete
-			recordsJSON = listRes.responseJSON;
-			
-			if(recordsJSON == null) 
-				throw new FEBAPIException("There are no records to delete. (" + listRes.responseText + ")");
-				
-			JSONArray recs = (JSONArray) recordsJSON.get("items");
-			int recCount = ((Long) recordsJSON.get("recordCount")).intValue();
-			
-			if(recs.size() != 0) {
-				//then loop through and delete
-				for(int i=0;i<recs.size();i++) {
-					JSONObject rec = (JSONObject)recs.get(i);
-					String rid = ((String) rec.get("uid"));
-					
-					logger.debug("  Trying to delete record " + rid);
-					
-					delRes = deleteRecord(appUid, formId, rid);
-					
-					if(delRes.responseCode != 200) {
-						r.responseText += "\nFailed to delete record " + rid;
-						logger.debug("  Failed to delete record " + rid);
-					} else {
-						r.responseText += "\nSuccessfully deleted record " + rid;
-						logger.debug("  Successfully deleted record " + rid);
-					}
-				}						
-			} 
-			
-			if(filters != null)
-				pageSize = filters.getPageSize();
+		FEBRecordDeleter deleter = new FEBRecordDeleter(this, batchConcurrency);
+		deleter.setPageSizer(new FEBPageSizer(FEBPageSizer.DEFAULT_MIN_PAGE_SIZE, FEBPageSizer.DEFAULT_MAX_PAGE_SIZE,
+				FEBRecordDeleter.DEFAULT_PAGE_SIZE, FEBPageSizer.DEFAULT_TARGET_LATENCY, FEBPageSizer.DEFAULT_MAX_PAGE_BYTES));
+		try {
+			FEBDeleteResult res = deleter.deleteRecords(appUid, formId, filters);
 			
-			if(recCount == pageSize) {
-				//do not have to change the from and to because the records are deleted, so the next time
-				//through the results will be reduced
-				logger.debug("  Getting the next page of records to delete...");
-			} else {
-				moreRecs = false;
-			}				
-		}		
+			r.responseCode = res.isComplete() ? 200 : 207; //some of the records could not be deleted
+			r.responseText = res.toString();
+			r.responseJSON = res.toJSON();
+		} finally {
+			deleter.shutdown();
+		}
 		
 		return r;
 	}
@@ -1012,9 +2699,8 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 					
 			HashMap<String,String> headers = new HashMap<String,String>();
 			headers.put("Accept", JSON_MEDIATYPE);
-			HttpURLConnection conn = establishURLConnection(apiURL, HTTP_GET, headers, false);
-						
-			populateFEBResponse(conn, r);	
+			
+			r = cachedGet(schemaCache, appUid + "/" + formId + "/" + SCHEMA_METADATA, apiURL, headers, false);
 			
 		} catch (Exception e) {
 			throw new FEBAPIException(e.getMessage(), e);
@@ -1079,56 +2765,17 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 //    private Vector trustManagers = new Vector(); 
     
 	/**
-	 * Returns the SSLContext for use in HTTPS connections
-	 * @return
-	 * @throws Exception
-	 */
-	private SSLContext getSSLContext(String commType) throws Exception {
-		/***
-		 * http://www.nakov.com/blog/2009/07/16/disable-certificate-validation-in-java-ssl-connections/
-		 * 
-		 * Change all HttpURLConnection to HttpsURLConnection
-		 *
-		 */
-		// Create a trust manager that does not validate certificate chains
-	    TrustManager[] trustAllCerts = new TrustManager[] {new X509TrustManager() {
-	            public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-	                return null;
-	            }
-	            public void checkClientTrusted(X509Certificate[] certs, String authType) {
-	            }
-	            public void checkServerTrusted(X509Certificate[] certs, String authType) {
-	            }
-	        }
-	    };
-	    
-	    // Install the all-trusting trust manager
-	    SSLContext sc = SSLContext.getInstance(commType); //SSL_TLS
-	    sc.init(null, trustAllCerts, new java.security.SecureRandom());
-//	    sc.init((KeyManager[]) keyManagers.toArray(new KeyManager[] {}), 
-//                (TrustManager[]) trustManagers.toArray(new TrustManager[] {}), 
-//                null); 
-	    
-	    return sc;
-	}
-
-	/**
-	 * Returns a HostNameVerifier for use in HTTPS connections.
-	 * @return
+	 * Writes the multipart/form-data request body.  The body is streamed rather than buffered by the connection: a fixed length 
+	 * is sent when the size of the source is known (FileInputStream), otherwise the body is sent in chunks.  File sources are
+	 * copied with FileChannel.transferTo.
+	 * 
+	 * @param conn
+	 * @param name
+	 * @param fileName
+	 * @param contentType
+	 * @param is - The content to upload, closed once it has been sent.
+	 * @throws FEBAPIException
 	 */
-	private HostnameVerifier getHostNameVerifier() {
-		// Create all-trusting host name verifier
-//	    HostnameVerifier allHostsValid = new HostnameVerifier() {
-//	        @Override
-//	    	public boolean verify(String hostname, SSLSession session) {
-//	            return true;
-//	        }
-//	    };
-	    
-	    //return allHostsValid;
-		return HttpsURLConnection.getDefaultHostnameVerifier();
-	}
-	
 	private void uploadFileToServer(HttpURLConnection conn, String name, String fileName, String contentType, InputStream is) throws FEBAPIException {
     	
     	String boundary = Long.toHexString(System.currentTimeMillis()); // Just generate some unique random value.
@@ -1139,7 +2786,6 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		conn.setUseCaches(false);
 		
 		//Send request
-		PrintWriter pw = null;
 		OutputStream output = null;
 		
 		if(name == null)
@@ -1148,93 +2794,126 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		if(fileName == null)
 			fileName = "dummyFileName";
 		
+		contentType = "application/octet-stream"; //debugging
+		
 		try {
+			// set header params
+			byte[] head = ("--" + boundary + LINE_FEED + 
+					"Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + fileName + "\"" + LINE_FEED + 
+					"Content-Type: " + contentType + LINE_FEED + 
+					"Content-Transfer-Encoding: binary" + LINE_FEED + 
+					LINE_FEED).getBytes(ENCODING_UTF8);
+			
+			//End of multipart/form-data.
+			byte[] tail = (LINE_FEED + "--" + boundary + "--" + LINE_FEED).getBytes(ENCODING_UTF8);
+			
+			FileChannel fc = null;
+			long length = -1;
+			if(is instanceof FileInputStream) {
+				fc = ((FileInputStream) is).getChannel();
+				length = fc.size() - fc.position();
+			}
+			
+			if(length >= 0) {
+				conn.setFixedLengthStreamingMode(head.length + length + tail.length);
+				logger.debug("Uploading {} bytes", length);
+			} else {
+				conn.setChunkedStreamingMode(TRANSFER_BUFFER_SIZE);
+				logger.debug("Uploading stream of unknown length in chunks");
+			}
+			
 			output = conn.getOutputStream();
-			pw = new PrintWriter(new OutputStreamWriter(output), true); //true = auto flush
+			output.write(head);
+			
+			if(fc != null) {
+				WritableByteChannel out = Channels.newChannel(output);
+				long pos = fc.position();
+				long sent = 0;
+				while(sent < length) {
+					sent += fc.transferTo(pos + sent, length - sent, out);
+				}
+			} else {
+				transfer(Channels.newChannel(is), Channels.newChannel(output));
+			}
 			
-			// set header params
-			pw.append("--" + boundary).append(LINE_FEED);
-			pw.append("Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + fileName + "\"").append(LINE_FEED);
-			contentType = "application/octet-stream"; //debugging
-			pw.append("Content-Type: " + contentType).append(LINE_FEED);
-			pw.append("Content-Transfer-Encoding: binary").append(LINE_FEED);
-			pw.append(LINE_FEED).flush();
-			
-			//read in the file and append to writer
-			try {  
-		        byte[] buffer = new byte[4096];  				        
-		        for (int n; (n = is.read(buffer)) != -1; ) {
-		            output.write(buffer, 0, n);  
-		        }
-		        output.flush();
-		        is.close();
-		    } finally {  	
-		    	if (is != null) try { is.close(); } catch (IOException logOrIgnore) {}
-		    }
-		    pw.append(LINE_FEED).flush();
-		    
-		    //End of multipart/form-data.
-		    pw.append("--" + boundary + "--").append(LINE_FEED);
-		    pw.close();
+			output.write(tail);
+			output.flush();
 		} catch (IOException ioe) {
 			throw new FEBAPIException(ioe.getMessage(), ioe);
 		} finally {
-		
-			if (pw != null) {
-				pw.close();
-				pw.flush();
-			}
+			if (is != null) try { is.close(); } catch (IOException logOrIgnore) {}
+			
 			if(output != null) {
 				try {
 					output.close();
-					output.flush();
 				} catch (IOException ioe) {
 					throw new FEBAPIException(ioe.getMessage(), ioe);
 				}
 			}
 		}
-	    
-		//Get Response	 - returns the XML that contains the content ID that needs to be inserted into the form			    
-//		String r = printStreamToString(con.getInputStream());
-//		return r;
-    
-    }
+	}
 	
 	/**
+	 * Writes the stream to a temporary file next to the target and moves it into place once the whole stream has been
+	 * read, so the target is never left half written.  When the length is known the file is allocated up front.
 	 * 
 	 * @param is
-	 * @param filePath
-	 * @throws IOException
+	 * @param contentLength - The expected number of bytes, or -1 if unknown
+	 * @param target
+	 * @return the number of bytes written
+	 * @throws FEBAPIException
 	 */
-	private void printStreamToFile(InputStream is, String filePath) throws FEBAPIException {
-			
-		OutputStream os = null;
+	private long writeStreamToFile(InputStream is, long contentLength, Path target) throws FEBAPIException {
 		
+		Path tmp = null;
 		try {
-			os = new FileOutputStream (new File(filePath));		
-	
-			int read = 0;
-			byte[] bytes = new byte[1024];
-	 
-			while ((read = is.read(bytes)) != -1) {
-				os.write(bytes, 0, read);
+			Path dir = target.toAbsolutePath().getParent();
+			tmp = Files.createTempFile(dir, target.getFileName().toString(), ".part");
+			
+			long total;
+			FileChannel fc = FileChannel.open(tmp, StandardOpenOption.WRITE);
+			try {
+				if(contentLength > 0) {
+					fc.write(ByteBuffer.allocate(1), contentLength - 1);
+				}
+				total = transfer(Channels.newChannel(is), fc);
+				if(total < fc.size()) {
+					fc.truncate(total);
+				}
+			} finally {
+				fc.close();
 			}
-	
-		} catch (FileNotFoundException e) {
-			throw new FEBAPIException(e.getMessage(), e);			
+			
+			if(contentLength >= 0 && total != contentLength) {
+				throw new IOException("Expected " + contentLength + " bytes but received " + total);
+			}
+			
+			moveIntoPlace(tmp, target);
+			tmp = null;
+			
+			logger.debug("Wrote {} bytes to {}", total, target);
+			return total;
 		} catch (IOException e) {
 			throw new FEBAPIException(e.getMessage(), e);
 		} finally {
-			if (os != null) {
+			if(tmp != null) {
 				try {
-					os.close();
+					Files.deleteIfExists(tmp);
 				} catch (IOException ioe) {
-					throw new FEBAPIException(ioe.getMessage(), ioe);					
-				} 
+					logger.debug("Failed to remove temporary file {}. {}", tmp, ioe.getMessage());
+				}
 			}
 		}
 	}
 	
+	static void moveIntoPlace(Path tmp, Path target) throws IOException {
+		try {
+			Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(AtomicMoveNotSupportedException amnse) {
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
 //	private void printToLog(String type, String str) throws FEBAPIException {
 //		try {
 //			SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd h:mm:ss SSS");
@@ -1279,6 +2958,7 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		HttpURLConnection conn = null;
 		InputStream is = null;
 		String fileName = null;
+		boolean reusable = false;
 		
 		try {			
 			String actionURL = "/archive?mode=source&submitted=";
@@ -1290,8 +2970,8 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 			String url = this.appUrlBase + "/" + appUid + actionURL;
 			logger.debug("Exporting {}", url);		
 			
-			conn = this.establishURLConnection(url, HTTP_GET, null, false);						
-			is = conn.getInputStream();
+			conn = this.execute(FEBOperationType.ADMIN, url, HTTP_GET, null, false, null, true);						
+			is = getResponseStream(conn);
 			
 			fileName = basePath + "/" + appUid + ".nitro_s";
 			File dir = new File(basePath);
@@ -1305,17 +2985,13 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 			
 			logger.debug("Writing export to file {}", fileName);
 			
-			OutputStream os = new FileOutputStream(f);
-		    try {  
-		        byte[] buffer = new byte[4096];  
-		        for (int n; (n = is.read(buffer)) != -1; )   
-		            os.write(buffer, 0, n);  
-		    } finally { os.close(); }
+			writeStreamToFile(is, getDecodedLength(conn), f.toPath());
 		    
 		    //this.populateFEBResponse(conn, r); //the content of the stream has already been written out
 			
 			r.responseCode = conn.getResponseCode();
 			r.responseText = conn.getResponseMessage();
+			reusable = true;
 		} catch(Exception e) {
 			fileName = null;
 			throw new FEBAPIException("fail: " + e.getMessage(), e);
@@ -1324,13 +3000,12 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 				try {
 					is.close();
 				} catch (IOException e) {
+					releaseConnection(conn, false);
 					throw new FEBAPIException("There was a problem closing the connection: " + e.getMessage(), e);
 				}
 			}
 			
-			if(conn != null) {				
-		        conn.disconnect();
-			}
+			releaseConnection(conn, reusable);
 		}
 		
 		//check to make sure the file exists
@@ -1358,8 +3033,8 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 			String url = this.appUrlBase + "/" + appUid + actionURL;
 			logger.debug("Exporting {}", url);		
 			
-			conn = this.establishURLConnection(url, HTTP_GET, null, false);						
-			return conn.getInputStream();
+			conn = this.execute(FEBOperationType.ADMIN, url, HTTP_GET, null, false, null, true);						
+			return getReleasingInputStream(conn);
 		} catch (IOException ioe) {
 			throw new FEBAPIException("Failed to retrieve expxorted application: " + ioe.getMessage(), ioe);
 		}
@@ -1372,18 +3047,17 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		logger.debug("Deleting {}", url);
 		
 		try {						
-			conn = this.establishURLConnection(url, HTTP_DELETE, null, false);
+			conn = this.execute(FEBOperationType.ADMIN, url, HTTP_DELETE, null, false, null, true);
 			r.responseCode = conn.getResponseCode();
 			r.responseText = conn.getResponseMessage();			
-			conn.disconnect();
+			releaseConnection(conn, true);
 		} catch (IOException ioe) {
 			throw new FEBAPIException(ioe.getMessage(), ioe);
 		} catch (Exception e) {
 			throw new FEBAPIException(e.getMessage(), e);
 		} finally {
-			if(conn != null) {
-				conn.disconnect();		        
-			}
+			releaseConnection(conn, false);
+			invalidateSchemaCache(appUid);
 		}
 		
 		return r;
@@ -1391,37 +3065,28 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 	
 	public FEBResponse deleteApplications (ArrayList<String> appUids) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
-		HttpURLConnection conn = null;
 		
 		if(appUids != null) {
-			for(int i=0;i<appUids.size();i++) {
-				String appid = appUids.get(i);
-				
-				if(appid != null && !"".equals(appid)) {
-					String url = this.appUrlBase + "/" + appid;
-					logger.debug("Deleting {}", url);
-					
-					try {						
-						conn = this.establishURLConnection(url, HTTP_DELETE, null, false);
-						r.responseCode = conn.getResponseCode();
-						
-						if(r.responseCode == 200)
-							r.responseText += "\n" + appUids.get(i) + " deleted successfully";
-						else
-							r.responseText += "\n Failed to delete " + appUids.get(i);
-						
-						conn.disconnect();
-					} catch (IOException ioe) {
-						throw new FEBAPIException(ioe.getMessage(), ioe);
-					} catch (Exception e) {
-						throw new FEBAPIException(e.getMessage(), e);
-					} finally {
-						if(conn != null) {
-							conn.disconnect();		        
-						}
-					}
+			List<FEBAppResult> results;
+			FEBBulkAppOperations bulk = new FEBBulkAppOperations(this, batchConcurrency);
+			try {
+				results = bulk.deleteApplications(appUids);
+			} finally {
+				bulk.shutdown();
+			}
+			
+			StringBuilder sb = new StringBuilder();
+			r.responseCode = 200;
+			for(FEBAppResult res : results) {
+				if(res.responseCode == 200) {
+					sb.append("\n").append(res.appUid).append(" deleted successfully");
+				} else {
+					sb.append("\n Failed to delete ").append(res.appUid);
+					if(r.responseCode == 200)
+						r.responseCode = res.responseCode;
 				}
 			}
+			r.responseText = sb.toString();
 		}
 		
 		return r;
@@ -1559,8 +3224,8 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 			String url = this.appUrlBase + actionURL;					
 			
 			logger.debug("REST URL = {}", url);
-			conn = this.establishURLConnection(url, HTTP_POST, null, false);
-			uploadFileToServer(conn, appName, appName, MULTIPART_MEDIATYPE, fileStream);
+			conn = this.execute(FEBOperationType.ADMIN, url, HTTP_POST, null, false,
+					c -> uploadFileToServer(c, appName, appName, MULTIPART_MEDIATYPE, fileStream), false);
 			//fileStream.close();
 		
 			//Get Response - why does it return the application.xml content?
@@ -1569,12 +3234,15 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 			
 			logger.debug("Import code = " + r.responseCode + " :: Import Response Text = " + r.responseText);
 			
-			InputStream is = conn.getInputStream();				
+			InputStream is = getResponseStream(conn);
+			String tempString = is != null ? printStreamToString(is) : null;
 			
-			if(is != null) {
+			//the response has been read, hand the connection back before the tags request asks for another one to the same host
+			releaseConnection(conn, true);
+			conn = null;
+			
+			if(tempString != null) {
 				//content is wrapped in "<textarea>" tag...have to strip that out
-				String tempString = printStreamToString(is); 
-				
 				if(!"".equals(tempString)) {
 					String jsonString = tempString.replaceFirst("<textarea>", "").replaceFirst("</textarea>", "");
 					jsonString = jsonString.replaceAll("&quot;", "\"");
@@ -1588,7 +3256,6 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 					if(r.responseCode == 200 && tags != null && !tags.isEmpty()) {
 						
 						HttpURLConnection tagConn = null;
-						DataOutputStream tagOutput = null;
 						try {											
 							
 							String importedID = (String)jsonObject.get("id");
@@ -1603,24 +3270,21 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 								
 								HashMap<String,String> tagHeaders = new HashMap<String,String>();
 								tagHeaders.put("Content-Type", TEXT_MEDIATYPE);
-								tagConn = this.establishURLConnection(url, HTTP_PUT, tagHeaders, false);
-								tagOutput = new DataOutputStream(tagConn.getOutputStream());
-								tagOutput.writeBytes(tags);
-								tagOutput.flush();
-								tagOutput.close();	
+								tagConn = this.execute(FEBOperationType.ADMIN, url, HTTP_PUT, tagHeaders, false, c -> {
+									DataOutputStream out = new DataOutputStream(c.getOutputStream());
+									out.writeBytes(tags);
+									out.flush();
+									out.close();
+								}, true);
 								
 								logger.debug("TAG Response Code = {}, Response Message = {}", tagConn.getResponseCode(), tagConn.getResponseMessage());
+								releaseConnection(tagConn, true);
 							}
 							
 						} catch (Exception e) {
 							throw new FEBAPIException(e.getMessage(), e);
 						} finally {
-							if(tagConn != null) {							
-						        tagConn.disconnect();					        
-							}
-							if(tagOutput != null) {
-								tagOutput.close();
-							}
+							releaseConnection(tagConn, false);
 						}
 					}
 				}
@@ -1631,16 +3295,55 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		} catch (Exception e) {
 			throw new FEBAPIException(e.getMessage(), e);
 		} finally {
-			if(conn != null) {
-		        conn.disconnect();
-			}
+			releaseConnection(conn, false);
+			
+			//the forms may have changed, even if the upgrade failed part way through
+			if(operation.equals(APP_UPGRADE) && appUid != null)
+				invalidateSchemaCache(appUid);
 		}
 	}
 	
 	public FEBResponse listAppsForUser (Integer pageNum, Integer pageSize, String sortBy, String orderBy) throws FEBAPIException {
 		
 		FEBResponse r = new FEBResponse();
-		HttpURLConnection conn = null;
+		String url = getAppsForUserURL(pageNum, pageSize, sortBy, orderBy);
+		
+		logger.debug("REST URL = {}", url);
+		HashMap<String,String> headers = new HashMap<String,String>();
+		headers.put("Accept", ATOM_MEDIATYPE);
+		headers.put("Content-Type", ATOM_MEDIATYPE);
+		
+		r = sharedGet(url, headers, false);
+		
+		return r;
+	}
+	
+	public FEBFeedReader listAppsForUserToFeedReader (Integer pageNum, Integer pageSize, String sortBy, String orderBy) throws FEBAPIException {
+		
+		String url = getAppsForUserURL(pageNum, pageSize, sortBy, orderBy);
+		logger.debug("REST URL = {}", url);
+		
+		return openFeedReader(url);
+	}
+	
+	public FEBFeedReader listRecordsToFeedReader (String appUid, String formId, FEBFilters filters) throws FEBAPIException {
+		
+		String apiURL = this.urlBase + appUid + "/" + formId;
+		
+		try {
+			if(filters != null)
+				apiURL += filters.getFilterURLString();
+		} catch(IllegalStateException ise) {
+			throw new FEBAPIException(ise.getMessage(), ise);
+		}
+		
+		logger.debug("REST URL = {}", apiURL);
+		
+		return openFeedReader(apiURL);
+	}
+	
+	private String getAppsForUserURL (Integer pageNum, Integer pageSize, String sortBy, String orderBy) {
+		
 		String url = this.orgUrlBase + "myapps"; //this.adminUrlBase + "apps"; //
 		
 		if(pageNum != null) {
@@ -1663,15 +3366,7 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 			url = this.addURLParam(url, "order=" + orderBy);
 		}
 		
-		logger.debug("REST URL = {}", url);
-		HashMap<String,String> headers = new HashMap<String,String>();
-		headers.put("Accept", ATOM_MEDIATYPE);
-		headers.put("Content-Type", ATOM_MEDIATYPE);
-		conn = this.establishURLConnection(url, HTTP_GET, headers, false);
-		
-		populateFEBResponse(conn, r);
-		
-		return r;
+		return url;
 	}
 	
 	/**
@@ -1680,7 +3375,6 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 	public FEBResponse adminListApps(Integer pageNum, Integer pageSize, String sortBy, String orderBy) throws FEBAPIException {
 		
 		FEBResponse r = new FEBResponse();
-		HttpURLConnection conn = null;
 		String url = this.adminUrlBase + "apps";
 		
 		if(pageNum != null) {
@@ -1707,9 +3401,8 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		HashMap<String,String> headers = new HashMap<String,String>();
 		headers.put("Accept", JSON_MEDIATYPE);
 		headers.put("Content-Type", JSON_MEDIATYPE);
-		conn = this.establishURLConnection(url, HTTP_GET, headers, false);
 		
-		populateFEBResponse(conn, r);
+		r = sharedGet(url, headers, false);
 		
 		if(r.responseCode == 404) {
 			throw new FEBAPIException("User is not part of the AdministrativeUsers role.");
@@ -1723,15 +3416,13 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		
 		logger.debug("Stopping FEB Application " + appid);
 		
-		startStopApplicationImpl(appid, APP_STOP);
+		r = startStopApplicationImpl(appid, APP_STOP);
 		
 		return r;
 	}
 	
 	private FEBResponse startStopApplicationImpl(String appid, String action) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
-		DataOutputStream dos = null;
-		PrintStream fr = null;		
 		HttpURLConnection conn = null;
 		
 		//https://tapintofeb.victoria.ibm.com/forms-basic/secure/org/app/c092624c-a5cf-4204-88e9-cf318b124263/deployed/latest?tzOffset=-28800
@@ -1740,7 +3431,6 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		HashMap<String,String> headers = new HashMap<String,String>();
 		headers.put("Accept", "application/atom+xml");
 		headers.put("Content-Type", "application/atom+xml");
-		conn = this.establishURLConnection(url, HTTP_PUT, headers, false);
 		
 		String actionStr = "";
 		
@@ -1759,28 +3449,19 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 				"</a:entry>";
 		
 		try {
-			dos = new DataOutputStream(conn.getOutputStream());
-			fr = new PrintStream(dos);
-			fr.print(xmlData);
-			fr.flush();
-			fr.close();
+			conn = this.execute(FEBOperationType.ADMIN, url, HTTP_PUT, headers, false, c -> {
+				PrintStream fr = new PrintStream(new DataOutputStream(c.getOutputStream()));
+				fr.print(xmlData);
+				fr.flush();
+				fr.close();
+			}, true);
 			
 			populateFEBResponse(conn, r);
 			
 		} catch (Exception e) {
 			throw new FEBAPIException(e.getMessage(), e);
 		} finally {
-			if(conn != null) {
-				conn.disconnect();
-			}
-			
-			if(dos != null) {
-				try {
-					dos.close();
-				} catch (IOException e) {
-					throw new FEBAPIException(e.getMessage(), e);
-				}
-			}
+			releaseConnection(conn, false);
 		}
 		
 		return r;
@@ -1791,7 +3472,7 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		
 		logger.debug("Starting FEB Application " + appid);
 		
-		startStopApplicationImpl(appid, APP_START);
+		r = startStopApplicationImpl(appid, APP_START);
 		
 		return r;
 	}
@@ -1799,6 +3480,15 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 	public FEBResponse getSampleJSONForForm (String appUid, String formId) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
 		
+		//the sample is derived from the swagger, so it is cached for the same TTL but never revalidated on its own
+		String key = appUid + "/" + formId + "/" + SCHEMA_SAMPLE;
+		long stamp = schemaCache.stamp();
+		FEBResponseCache.Entry e = schemaCache.isEnabled() ? schemaCache.get(key) : null;
+		if(e != null && !e.isExpired()) {
+			logger.debug("Cache hit for {}", key);
+			return FEBResponseCache.copy(e.response);
+		}
+		
 		r = getCompleteJSONForForm(appUid, formId);
 		
 		if(r.isResponse20x()) {
@@ -1814,6 +3504,7 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 				clearValuesInJson(theJson);
 				
 				r.responseJSON = theJson;
+				schemaCache.put(key, r, null, null, stamp);
 			}
 		}
 		
@@ -1822,7 +3513,6 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 	
 	public FEBResponse getCompleteJSONForForm (String appUid, String formId) throws FEBAPIException {
 		FEBResponse r = new FEBResponse();
-		HttpURLConnection conn = null;
 		
 		if(appUid == null || "".equals(appUid))
 			throw new FEBAPIException("App Id is required.");
@@ -1835,9 +3525,7 @@ public FEBResponse submitRecordWithAttachment (String appUid, String formId, Str
 		HashMap<String,String> headers = new HashMap<String,String>();
 		headers.put("Accept", "application/json");
 		
-		conn = this.establishURLConnection(url, HTTP_GET, headers, true);
-		
-		populateFEBResponse(conn, r);
+		r = cachedGet(schemaCache, appUid + "/" + formId + "/" + SCHEMA_SWAGGER, url, headers, true);
 		
 		return r;
 	}
@@ -0,0 +1,16 @@
+package com.hcl.feb.api;
+
+/**
+ * The operations {@link FEBBulkAppOperations} can run against many applications.
+ *
+ * DELETE	- Deletes the application, see FEBAPI.deleteApplication.
+ * START	- Deploys and starts the application, see FEBAPI.startApplication.
+ * STOP		- Stops the application, see FEBAPI.stopApplication.
+ * EXPORT	- Exports the application to a directory, see FEBAPI.exportApplication.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public enum FEBAppOperation {
+	DELETE, START, STOP, EXPORT;
+}
@@ -0,0 +1,36 @@
+package com.hcl.feb.api;
+
+/**
+ * The outcome of a bulk operation against a single application.  The object contains:
+ *
+ * String appUid				- The UID of the application.
+ * FEBAppOperation operation	- The operation that was run.
+ * int responseCode				- The HTTP code returned for the application, or -1 if the request could not be made.
+ * String responseText			- Any text returned from the response.
+ * FEBAPIException error		- The exception thrown by the operation, if any.
+ * long elapsedMillis			- How long the operation took.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBAppResult {
+	public String appUid;
+	public FEBAppOperation operation;
+	public int responseCode = -1;
+	public String responseText = "";
+	public FEBAPIException error;
+	public long elapsedMillis;
+
+	public FEBAppResult(String appUid, FEBAppOperation operation) {
+		this.appUid = appUid;
+		this.operation = operation;
+	}
+
+	/**
+	 * True if the operation succeeded.
+	 * @return boolean
+	 */
+	public boolean isSuccess() {
+		return error == null && (responseCode == 200 || responseCode == 201 || responseCode == 204);
+	}
+}
@@ -0,0 +1,231 @@
+package com.hcl.feb.api;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+
+import org.json.simple.JSONObject;
+
+/**
+ * The asynchronous version of {@link FEBAPI}.  Every function returns immediately with a CompletableFuture that is completed
+ * with the FEBResponse once the request finishes, or completed exceptionally with the FEBAPIException that the matching
+ * FEBAPI function would have thrown.
+ *
+ * <pre>
+ * {@code FEBAPI febapi = new FEBAPIImpl(host, context, ignoreSSL, protocol, user, pwd, freedomIdentifyKey);
+ * FEBAsyncAPI async = new FEBAsyncAPIImpl(febapi, 200);
+ *
+ * List<CompletableFuture<FEBResponse>> futures = new ArrayList<CompletableFuture<FEBResponse>>();
+ * for(String recUid : recUids) {
+ * 	futures.add(async.retrieveRecord(appid, "F_Form1", recUid, FEBReturnFormat.JSON));
+ * }
+ * CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();}
+ * </pre>
+ *
+ * Refer to the matching function in {@link FEBAPI} for a description of each parameter.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public interface FEBAsyncAPI {
+
+	/**
+	 * @see FEBAPI#listRecords(String, String, FEBFilters, FEBReturnFormat)
+	 */
+	public CompletableFuture<FEBResponse> listRecords (String appUid, String formId, FEBFilters filters, FEBReturnFormat returnFormat);
+
+	/**
+	 * @see FEBAPI#retrieveRecord(String, String, String, FEBReturnFormat)
+	 */
+	public CompletableFuture<FEBResponse> retrieveRecord (String appUid, String formId, String recordUid, FEBReturnFormat returnFormat);
+
+	/**
+	 * @see FEBAPI#getFormMetaData(String, String)
+	 */
+	public CompletableFuture<FEBResponse> getFormMetaData (String appUid, String formId);
+
+	/**
+	 * @see FEBAPI#retrieveAttachmentByUidToPath(String, String, String, String)
+	 */
+	public CompletableFuture<FEBResponse> retrieveAttachmentByUidToPath (String appUid, String formId, String attachmentUID, String filePath);
+
+	/**
+	 * The returned stream must be closed by the caller.
+	 *
+	 * @see FEBAPI#retrieveAttachmentByUidToStream(String, String, String)
+	 */
+	public CompletableFuture<InputStream> retrieveAttachmentByUidToStream (String appUid, String formId, String attachmentUID);
+
+	/**
+	 * @see FEBAPI#retrieveAttachmentByFieldIdToPath(String, String, String, String, String)
+	 */
+	public CompletableFuture<FEBResponse> retrieveAttachmentByFieldIdToPath (String appUid, String formId, String recId, String fieldID, String filePath);
+
+	/**
+	 * The returned stream must be closed by the caller.
+	 *
+	 * @see FEBAPI#retrieveAttachmentByFieldIdToStream(String, String, String, String)
+	 */
+	public CompletableFuture<InputStream> retrieveAttachmentByFieldIdToStream (String appUid, String formId, String recId, String fieldID);
+
+	/**
+	 * @see FEBAPI#uploadAttachment(String, String, String, String)
+	 */
+	public CompletableFuture<FEBResponse> uploadAttachment (String appUid, String formId, String mediaType, String filePath);
+
+	/**
+	 * @see FEBAPI#uploadAttachment(String, String, String, String, InputStream)
+	 */
+	public CompletableFuture<FEBResponse> uploadAttachment (String appUid, String formId, String mediaType, String fileName, InputStream fileStream);
+
+	/**
+	 * @see FEBAPI#submitRecord(String, String, String)
+	 */
+	public CompletableFuture<FEBResponse> submitRecord (String appUid, String formId, String jsonData);
+
+	/**
+	 * @see FEBAPI#submitRecord(String, String, JSONObject)
+	 */
+	public CompletableFuture<FEBResponse> submitRecord (String appUid, String formId, JSONObject jsonData);
+
+	/**
+	 * @see FEBAPI#submitRecord(String, String, File)
+	 */
+	public CompletableFuture<FEBResponse> submitRecord (String appUid, String formId, File jsonData);
+
+	/**
+	 * @see FEBAPI#submitRecordWithAttachment(String, String, String, String, String, String, String)
+	 */
+	public CompletableFuture<FEBResponse> submitRecordWithAttachment (String appUid, String formId, String jsonData, String pressedButton, String attachFieldID, String mediaType, String filePath);
+
+	/**
+	 * @see FEBAPI#submitRecordWithAttachment(String, String, String, String, String, String, String, InputStream)
+	 */
+	public CompletableFuture<FEBResponse> submitRecordWithAttachment (String appUid, String formId, String jsonData, String pressedButton, String attachFieldID, String mediaType, String fileName, InputStream fileStream);
+
+	/**
+	 * @see FEBAPI#getSampleJSONForForm(String, String)
+	 */
+	public CompletableFuture<FEBResponse> getSampleJSONForForm (String appUid, String formId);
+
+	/**
+	 * @see FEBAPI#getCompleteJSONForForm(String, String)
+	 */
+	public CompletableFuture<FEBResponse> getCompleteJSONForForm (String appUid, String formId);
+
+	/**
+	 * @see FEBAPI#updateRecord(String, String, String, String)
+	 */
+	public CompletableFuture<FEBResponse> updateRecord (String appUid, String formId, String recordUid, String jsonData);
+
+	/**
+	 * @see FEBAPI#updateRecord(String, String, String, JSONObject)
+	 */
+	public CompletableFuture<FEBResponse> updateRecord (String appUid, String formId, String recordUid, JSONObject jsonData);
+
+	/**
+	 * @see FEBAPI#updateRecord(String, String, String, File)
+	 */
+	public CompletableFuture<FEBResponse> updateRecord (String appUid, String formId, String recordUid, File jsonData);
+
+	/**
+	 * @see FEBAPI#retrieveAndUpdateRecord(String, String, String, String, String, HashMap)
+	 */
+	public CompletableFuture<FEBResponse> retrieveAndUpdateRecord (String appUid, String formId, String recordUid, String pressedButton, String flowState, HashMap<String,String> itemsToSet);
+
+	/**
+	 * @see FEBAPI#deleteRecord(String, String, String)
+	 */
+	public CompletableFuture<FEBResponse> deleteRecord (String appUid, String formId, String recordUid);
+
+	/**
+	 * @see FEBAPI#deleteRecords(String, String, FEBFilters)
+	 */
+	public CompletableFuture<FEBResponse> deleteRecords (String appUid, String formId, FEBFilters filters);
+
+	/**
+	 * @see FEBAPI#exportApplication(String, String, boolean)
+	 */
+	public CompletableFuture<FEBResponse> exportApplication (String appUid, String basePath, boolean includeData);
+
+	/**
+	 * The returned stream must be closed by the caller.
+	 *
+	 * @see FEBAPI#exportApplication(String, boolean)
+	 */
+	public CompletableFuture<InputStream> exportApplication (String appUid, boolean includeData);
+
+	/**
+	 * @see FEBAPI#deleteApplication(String)
+	 */
+	public CompletableFuture<FEBResponse> deleteApplication (String appUid);
+
+	/**
+	 * @see FEBAPI#deleteApplications(ArrayList)
+	 */
+	public CompletableFuture<FEBResponse> deleteApplications (ArrayList<String> appUids);
+
+	/**
+	 * @see FEBAPI#importApplication(String, boolean, boolean, boolean, String)
+	 */
+	public CompletableFuture<FEBResponse> importApplication (String appPath, boolean deployApp, boolean includeData, boolean removePreviousIds, String tags);
+
+	/**
+	 * @see FEBAPI#importApplication(File, boolean, boolean, boolean, String)
+	 */
+	public CompletableFuture<FEBResponse> importApplication (File appFile, boolean deployApp, boolean includeData, boolean removePreviousIds, String tags);
+
+	/**
+	 * @see FEBAPI#importApplication(InputStream, String, boolean, boolean, boolean, String)
+	 */
+	public CompletableFuture<FEBResponse> importApplication (InputStream appStream, String appName, boolean deployApp, boolean includeData, boolean removePreviousIds, String tags);
+
+	/**
+	 * @see FEBAPI#upgradeApplication(String, boolean, String)
+	 */
+	public CompletableFuture<FEBResponse> upgradeApplication (String appPath, boolean includeData, String appUid);
+
+	/**
+	 * @see FEBAPI#upgradeApplication(File, boolean, String)
+	 */
+	public CompletableFuture<FEBResponse> upgradeApplication (File appFile, boolean includeData, String appUid);
+
+	/**
+	 * @see FEBAPI#upgradeApplication(InputStream, boolean, String)
+	 */
+	public CompletableFuture<FEBResponse> upgradeApplication (InputStream appStream, boolean includeData, String appUid);
+
+	/**
+	 * @see FEBAPI#listAppsForUser(Integer, Integer, String, String)
+	 */
+	public CompletableFuture<FEBResponse> listAppsForUser (Integer pageNum, Integer pageSize, String sortBy, String orderBy);
+
+	/**
+	 * @see FEBAPI#adminListApps(Integer, Integer, String, String)
+	 */
+	public CompletableFuture<FEBResponse> adminListApps (Integer pageNum, Integer pageSize, String sortBy, String orderBy);
+
+	/**
+	 * @see FEBAPI#stopApplication(String)
+	 */
+	public CompletableFuture<FEBResponse> stopApplication (String appid);
+
+	/**
+	 * @see FEBAPI#startApplication(String)
+	 */
+	public CompletableFuture<FEBResponse> startApplication (String appid);
+
+	/**
+	 * The number of requests that have been started and have not yet completed.
+	 *
+	 * @return int
+	 */
+	public int getInFlightCount();
+
+	/**
+	 * Stops accepting new requests.  Requests already submitted are allowed to complete.
+	 */
+	public void shutdown();
+}
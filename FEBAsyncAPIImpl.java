@@ -0,0 +1,428 @@
+package com.hcl.feb.api;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implements {@link FEBAsyncAPI} on top of a {@link FEBAPI}.  At most maxInFlight requests are running at any one time.
+ * Requests beyond that limit are queued without holding a thread and start as soon as a running request completes.
+ *
+ * When the FEBAPI is a FEBAPIImpl whose transport is a {@link FEBAsyncTransport} (i.e. it was created with http2 = true, Java 11
+ * or later), listRecords, retrieveRecord, getFormMetaData, listAppsForUser, submitRecord, updateRecord with a JSON string and
+ * deleteRecord are sent without blocking: no thread waits on a request while it is in flight, so thousands can be in flight at
+ * once.  Retries, the circuit breaker, rate and concurrency limits, sessions, caching and coalescing apply as they do to the
+ * blocking calls.  The per-host concurrency limit (see {@link FEBAPIImpl#setConcurrencyLimit}) still caps how many of them
+ * reach the server, so raise it to allow that many, e.g. {@code febapi.setConcurrencyLimit(FEBOperationType.READ, 100, 1, 2000)}.
+ *
+ * <pre>
+ * {@code FEBAPIImpl febapi = new FEBAPIImpl(host, context, ignoreSSL, protocol, user, pwd, freedomIdentifyKey, true);
+ * FEBAsyncAPI async = new FEBAsyncAPIImpl(febapi, 2000);}
+ * </pre>
+ *
+ * Every other function, and every function on any other transport, calls the blocking FEBAPI on the configured Executor and
+ * holds one of its threads until the response has been read.  Those are the functions that stream files or attachments to or
+ * from the server.  On Java 21 or later a virtual thread executor keeps them from holding platform threads:
+ *
+ * <pre>
+ * {@code FEBAsyncAPI async = new FEBAsyncAPIImpl(febapi, Executors.newVirtualThreadPerTaskExecutor(), 2000);}
+ * </pre>
+ *
+ * On the blocking path the FEBAPI should use a transport that allows at least maxInFlight connections per host, for example
+ * {@code febapi.setTransport(new FEBPooledTransport(100, 100))}.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBAsyncAPIImpl implements FEBAsyncAPI {
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+	private final FEBAPI api;
+	private final Executor executor;
+	private final ExecutorService ownedExecutor; //only set if we created the executor
+	private final int maxInFlight;
+	private final Semaphore permits;
+	private final AtomicInteger inFlight = new AtomicInteger(0);
+	private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<Runnable>();
+	private volatile boolean shutdown = false;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBAsyncAPIImpl.class);
+
+	/**
+	 * The work done by a single FEBAPI call.
+	 */
+	private interface FEBCall<T> {
+		T call() throws FEBAPIException;
+	}
+
+	/**
+	 * Starts a request that completes on its own, without a thread waiting for it.
+	 */
+	private interface FEBAsyncCall<T> {
+		CompletableFuture<T> start();
+	}
+
+	public FEBAsyncAPIImpl(FEBAPI api) {
+		this(api, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * Creates the async API with its own pool of maxInFlight daemon threads.
+	 *
+	 * @param api - The FEBAPI used to run each request.
+	 * @param maxInFlight - The maximum number of requests running at the same time.
+	 */
+	public FEBAsyncAPIImpl(FEBAPI api, int maxInFlight) {
+		this(api, null, maxInFlight);
+	}
+
+	/**
+	 *
+	 * @param api - The FEBAPI used to run each request.
+	 * @param executor - The executor that runs the requests.  If null a pool of maxInFlight daemon threads is created.
+	 * @param maxInFlight - The maximum number of requests running at the same time.
+	 */
+	public FEBAsyncAPIImpl(FEBAPI api, Executor executor, int maxInFlight) {
+		if(api == null)
+			throw new IllegalArgumentException("The FEBAPI is required.");
+
+		if(maxInFlight < 1)
+			maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+		this.api = api;
+		this.maxInFlight = maxInFlight;
+		this.permits = new Semaphore(maxInFlight);
+
+		if(executor == null) {
+			ThreadPoolExecutor tpe = new ThreadPoolExecutor(maxInFlight, maxInFlight, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("feb-async-"));
+			tpe.allowCoreThreadTimeOut(true);
+			this.ownedExecutor = tpe;
+			this.executor = tpe;
+		} else {
+			this.ownedExecutor = null;
+			this.executor = executor;
+		}
+
+		logger.debug("Created async API, maxInFlight = {}", maxInFlight);
+	}
+
+	/**
+	 * Queues the call and starts it once a slot is available.
+	 */
+	private <T> CompletableFuture<T> submit(final FEBCall<T> call) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+
+		if(shutdown) {
+			future.completeExceptionally(new FEBAPIException("The async API has been shut down."));
+			return future;
+		}
+
+		waiting.add(new Runnable() {
+			public void run() {
+				inFlight.incrementAndGet();
+				try {
+					executor.execute(new Runnable() {
+						public void run() {
+							try {
+								future.complete(call.call());
+							} catch(Throwable t) {
+								future.completeExceptionally(t);
+							} finally {
+								finished();
+							}
+						}
+					});
+				} catch(RejectedExecutionException ree) {
+					future.completeExceptionally(new FEBAPIException("The request was rejected by the executor.", ree));
+					finished();
+				}
+			}
+		});
+
+		startWaiting();
+		return future;
+	}
+
+	/**
+	 * Queues a non-blocking call and starts it once a slot is available.  The slot is held until the call's future completes,
+	 * but no thread is.
+	 */
+	private <T> CompletableFuture<T> submitAsync(final FEBAsyncCall<T> call) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+
+		if(shutdown) {
+			future.completeExceptionally(new FEBAPIException("The async API has been shut down."));
+			return future;
+		}
+
+		waiting.add(new Runnable() {
+			public void run() {
+				inFlight.incrementAndGet();
+				CompletableFuture<T> started;
+				try {
+					started = call.start();
+				} catch(Throwable t) {
+					finished();
+					future.completeExceptionally(t);
+					return;
+				}
+				started.whenComplete((r, t) -> {
+					finished();
+					if(t != null)
+						future.completeExceptionally(FEBAPIImpl.unwrap(t));
+					else
+						future.complete(r);
+				});
+			}
+		});
+
+		startWaiting();
+		return future;
+	}
+
+	/**
+	 * The FEBAPIImpl to send non-blocking requests through, or null if the FEBAPI cannot.
+	 */
+	private FEBAPIImpl nonBlocking() {
+		return api instanceof FEBAPIImpl && ((FEBAPIImpl) api).isAsyncTransport() ? (FEBAPIImpl) api : null;
+	}
+
+	private void finished() {
+		inFlight.decrementAndGet();
+		permits.release();
+		startWaiting();
+	}
+
+	private void startWaiting() {
+		while(!waiting.isEmpty() && permits.tryAcquire()) {
+			Runnable r = waiting.poll();
+			if(r == null) {
+				permits.release();
+			} else {
+				r.run();
+			}
+		}
+	}
+
+	public CompletableFuture<FEBResponse> listRecords(final String appUid, final String formId, final FEBFilters filters, final FEBReturnFormat returnFormat) {
+		FEBAPIImpl impl = nonBlocking();
+		if(impl != null)
+			return submitAsync(() -> impl.listRecordsAsync(appUid, formId, filters, returnFormat));
+		return submit(() -> api.listRecords(appUid, formId, filters, returnFormat));
+	}
+
+	public CompletableFuture<FEBResponse> retrieveRecord(final String appUid, final String formId, final String recordUid, final FEBReturnFormat returnFormat) {
+		FEBAPIImpl impl = nonBlocking();
+		if(impl != null)
+			return submitAsync(() -> impl.retrieveRecordAsync(appUid, formId, recordUid, returnFormat));
+		return submit(() -> api.retrieveRecord(appUid, formId, recordUid, returnFormat));
+	}
+
+	public CompletableFuture<FEBResponse> getFormMetaData(final String appUid, final String formId) {
+		FEBAPIImpl impl = nonBlocking();
+		if(impl != null)
+			return submitAsync(() -> impl.getFormMetaDataAsync(appUid, formId));
+		return submit(() -> api.getFormMetaData(appUid, formId));
+	}
+
+	public CompletableFuture<FEBResponse> retrieveAttachmentByUidToPath(final String appUid, final String formId, final String attachmentUID, final String filePath) {
+		return submit(() -> api.retrieveAttachmentByUidToPath(appUid, formId, attachmentUID, filePath));
+	}
+
+	public CompletableFuture<InputStream> retrieveAttachmentByUidToStream(final String appUid, final String formId, final String attachmentUID) {
+		return submit(() -> api.retrieveAttachmentByUidToStream(appUid, formId, attachmentUID));
+	}
+
+	public CompletableFuture<FEBResponse> retrieveAttachmentByFieldIdToPath(final String appUid, final String formId, final String recId, final String fieldID, final String filePath) {
+		return submit(() -> api.retrieveAttachmentByFieldIdToPath(appUid, formId, recId, fieldID, filePath));
+	}
+
+	public CompletableFuture<InputStream> retrieveAttachmentByFieldIdToStream(final String appUid, final String formId, final String recId, final String fieldID) {
+		return submit(() -> api.retrieveAttachmentByFieldIdToStream(appUid, formId, recId, fieldID));
+	}
+
+	public CompletableFuture<FEBResponse> uploadAttachment(final String appUid, final String formId, final String mediaType, final String filePath) {
+		return submit(() -> api.uploadAttachment(appUid, formId, mediaType, filePath));
+	}
+
+	public CompletableFuture<FEBResponse> uploadAttachment(final String appUid, final String formId, final String mediaType, final String fileName, final InputStream fileStream) {
+		return submit(() -> api.uploadAttachment(appUid, formId, mediaType, fileName, fileStream));
+	}
+
+	public CompletableFuture<FEBResponse> submitRecord(final String appUid, final String formId, final String jsonData) {
+		FEBAPIImpl impl = nonBlocking();
+		if(impl != null)
+			return submitAsync(() -> impl.submitRecordAsync(appUid, formId, jsonData));
+		return submit(() -> api.submitRecord(appUid, formId, jsonData));
+	}
+
+	public CompletableFuture<FEBResponse> submitRecord(final String appUid, final String formId, final JSONObject jsonData) {
+		FEBAPIImpl impl = nonBlocking();
+		if(impl != null)
+			return submitAsync(() -> impl.submitRecordAsync(appUid, formId, jsonData.toJSONString()));
+		return submit(() -> api.submitRecord(appUid, formId, jsonData));
+	}
+
+	public CompletableFuture<FEBResponse> submitRecord(final String appUid, final String formId, final File jsonData) {
+		return submit(() -> api.submitRecord(appUid, formId, jsonData));
+	}
+
+	public CompletableFuture<FEBResponse> submitRecordWithAttachment(final String appUid, final String formId, final String jsonData, final String pressedButton, final String attachFieldID, final String mediaType, final String filePath) {
+		return submit(() -> api.submitRecordWithAttachment(appUid, formId, jsonData, pressedButton, attachFieldID, mediaType, filePath));
+	}
+
+	public CompletableFuture<FEBResponse> submitRecordWithAttachment(final String appUid, final String formId, final String jsonData, final String pressedButton, final String attachFieldID, final String mediaType, final String fileName, final InputStream fileStream) {
+		return submit(() -> api.submitRecordWithAttachment(appUid, formId, jsonData, pressedButton, attachFieldID, mediaType, fileName, fileStream));
+	}
+
+	public CompletableFuture<FEBResponse> getSampleJSONForForm(final String appUid, final String formId) {
+		return submit(() -> api.getSampleJSONForForm(appUid, formId));
+	}
+
+	public CompletableFuture<FEBResponse> getCompleteJSONForForm(final String appUid, final String formId) {
+		return submit(() -> api.getCompleteJSONForForm(appUid, formId));
+	}
+
+	public CompletableFuture<FEBResponse> updateRecord(final String appUid, final String formId, final String recordUid, final String jsonData) {
+		FEBAPIImpl impl = nonBlocking();
+		if(impl != null)
+			return submitAsync(() -> impl.updateRecordAsync(appUid, formId, recordUid, jsonData));
+		return submit(() -> api.updateRecord(appUid, formId, recordUid, jsonData));
+	}
+
+	public CompletableFuture<FEBResponse> updateRecord(final String appUid, final String formId, final String recordUid, final JSONObject jsonData) {
+		return submit(() -> api.updateRecord(appUid, formId, recordUid, jsonData));
+	}
+
+	public CompletableFuture<FEBResponse> updateRecord(final String appUid, final String formId, final String recordUid, final File jsonData) {
+		return submit(() -> api.updateRecord(appUid, formId, recordUid, jsonData));
+	}
+
+	public CompletableFuture<FEBResponse> retrieveAndUpdateRecord(final String appUid, final String formId, final String recordUid, final String pressedButton, final String flowState, final HashMap<String,String> itemsToSet) {
+		return submit(() -> api.retrieveAndUpdateRecord(appUid, formId, recordUid, pressedButton, flowState, itemsToSet));
+	}
+
+	public CompletableFuture<FEBResponse> deleteRecord(final String appUid, final String formId, final String recordUid) {
+		FEBAPIImpl impl = nonBlocking();
+		if(impl != null)
+			return submitAsync(() -> impl.deleteRecordAsync(appUid, formId, recordUid));
+		return submit(() -> api.deleteRecord(appUid, formId, recordUid));
+	}
+
+	public CompletableFuture<FEBResponse> deleteRecords(final String appUid, final String formId, final FEBFilters filters) {
+		return submit(() -> api.deleteRecords(appUid, formId, filters));
+	}
+
+	public CompletableFuture<FEBResponse> exportApplication(final String appUid, final String basePath, final boolean includeData) {
+		return submit(() -> api.exportApplication(appUid, basePath, includeData));
+	}
+
+	public CompletableFuture<InputStream> exportApplication(final String appUid, final boolean includeData) {
+		return submit(() -> api.exportApplication(appUid, includeData));
+	}
+
+	public CompletableFuture<FEBResponse> deleteApplication(final String appUid) {
+		return submit(() -> api.deleteApplication(appUid));
+	}
+
+	public CompletableFuture<FEBResponse> deleteApplications(final ArrayList<String> appUids) {
+		return submit(() -> api.deleteApplications(appUids));
+	}
+
+	public CompletableFuture<FEBResponse> importApplication(final String appPath, final boolean deployApp, final boolean includeData, final boolean removePreviousIds, final String tags) {
+		return submit(() -> api.importApplication(appPath, deployApp, includeData, removePreviousIds, tags));
+	}
+
+	public CompletableFuture<FEBResponse> importApplication(final File appFile, final boolean deployApp, final boolean includeData, final boolean removePreviousIds, final String tags) {
+		return submit(() -> api.importApplication(appFile, deployApp, includeData, removePreviousIds, tags));
+	}
+
+	public CompletableFuture<FEBResponse> importApplication(final InputStream appStream, final String appName, final boolean deployApp, final boolean includeData, final boolean removePreviousIds, final String tags) {
+		return submit(() -> api.importApplication(appStream, appName, deployApp, includeData, removePreviousIds, tags));
+	}
+
+	public CompletableFuture<FEBResponse> upgradeApplication(final String appPath, final boolean includeData, final String appUid) {
+		return submit(() -> api.upgradeApplication(appPath, includeData, appUid));
+	}
+
+	public CompletableFuture<FEBResponse> upgradeApplication(final File appFile, final boolean includeData, final String appUid) {
+		return submit(() -> api.upgradeApplication(appFile, includeData, appUid));
+	}
+
+	public CompletableFuture<FEBResponse> upgradeApplication(final InputStream appStream, final boolean includeData, final String appUid) {
+		return submit(() -> api.upgradeApplication(appStream, includeData, appUid));
+	}
+
+	public CompletableFuture<FEBResponse> listAppsForUser(final Integer pageNum, final Integer pageSize, final String sortBy, final String orderBy) {
+		FEBAPIImpl impl = nonBlocking();
+		if(impl != null)
+			return submitAsync(() -> impl.listAppsForUserAsync(pageNum, pageSize, sortBy, orderBy));
+		return submit(() -> api.listAppsForUser(pageNum, pageSize, sortBy, orderBy));
+	}
+
+	public CompletableFuture<FEBResponse> adminListApps(final Integer pageNum, final Integer pageSize, final String sortBy, final String orderBy) {
+		return submit(() -> api.adminListApps(pageNum, pageSize, sortBy, orderBy));
+	}
+
+	public CompletableFuture<FEBResponse> stopApplication(final String appid) {
+		return submit(() -> api.stopApplication(appid));
+	}
+
+	public CompletableFuture<FEBResponse> startApplication(final String appid) {
+		return submit(() -> api.startApplication(appid));
+	}
+
+	public int getInFlightCount() {
+		return inFlight.get();
+	}
+
+	public int getQueuedCount() {
+		return waiting.size();
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		if(ownedExecutor != null)
+			ownedExecutor.shutdown();
+	}
+
+	/**
+	 * Creates named daemon threads so that an unused async API does not keep the JVM alive.
+	 */
+	static class DaemonThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger(0);
+
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.hcl.feb.api;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link FEBTransport} that can also send a request without blocking the calling thread.  FEBAsyncAPIImpl uses it, when
+ * the FEBAPIImpl it wraps has one, to keep requests in flight without a thread waiting on each of them.
+ *
+ * {@link FEBHttp2Transport} is the implementation provided with the API.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public interface FEBAsyncTransport extends FEBTransport {
+
+	/**
+	 * Sends the request of a connection obtained from {@link #openConnection(java.net.URL)}, once its method and headers have
+	 * been set.  The future completes with the same connection once the whole response has been received, so reading the
+	 * response does not block, or exceptionally with the IOException that stopped the exchange.  The connection must still be
+	 * released through {@link #releaseConnection(HttpURLConnection, boolean)}.
+	 *
+	 * @param conn - The connection to send.
+	 * @param body - The complete request body, or null if there is none.
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<HttpURLConnection> sendAsync(HttpURLConnection conn, byte[] body);
+}
@@ -0,0 +1,19 @@
+package com.hcl.feb.api;
+
+/**
+ * Receives the result of each record submitted by a {@link FEBBatchSubmitter} as soon as the record's request finishes.
+ * Results arrive on the submitter's worker threads and are not in input order, use {@link FEBRecordResult#index} to match
+ * them to the input.  Implementations must be thread safe.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public interface FEBBatchListener {
+
+	/**
+	 * Called once for each record, whether it succeeded or not.
+	 *
+	 * @param result - The outcome of the record.
+	 */
+	public void onResult(FEBRecordResult result);
+}
@@ -0,0 +1,208 @@
+package com.hcl.feb.api;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Submits many records to a form with several requests in flight at once.  The input is read lazily: a record is only taken
+ * from the Iterable (or Stream) once one of the "concurrency" slots is free, so the input can be far larger than memory and the
+ * load runs as fast as the server accepts records.
+ *
+ * <pre>
+ * {@code FEBBatchSubmitter batch = new FEBBatchSubmitter(febapi, 16);
+ * try {
+ * 	List<FEBRecordResult> results = batch.submitRecords(appid, "F_Form1", records);
+ * 	for(FEBRecordResult res : results) {
+ * 		if(!res.isSuccess())
+ * 			logger.error("Record {} failed: {}", res.index, res.responseText);
+ * 	}
+ * } finally {
+ * 	batch.shutdown();
+ * }}
+ * </pre>
+ *
+ * A record that fails does not stop the batch, its error is reported in its FEBRecordResult.  Each request holds a connection
+ * from the FEBAPI's transport while it runs, so the concurrency should not exceed the transport's connections per host.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBBatchSubmitter {
+
+	public static final int DEFAULT_CONCURRENCY = 8;
+
+	private final FEBAPI api;
+	private final int concurrency;
+	private final ThreadPoolExecutor pool;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBBatchSubmitter.class);
+
+	public FEBBatchSubmitter(FEBAPI api) {
+		this(api, DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 *
+	 * @param api - The FEBAPI used to submit the records.
+	 * @param concurrency - The maximum number of records submitted at the same time.
+	 */
+	public FEBBatchSubmitter(FEBAPI api, int concurrency) {
+		if(concurrency < 1)
+			concurrency = 1;
+
+		this.api = api;
+		this.concurrency = concurrency;
+		this.pool = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new FEBAsyncAPIImpl.DaemonThreadFactory("feb-batch-"));
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * Submits every record and waits for them all to finish.
+	 *
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param records - The records to submit, each must identify the pressedButton and flowState.
+	 * @return the result of each record, in the same order as the input
+	 * @throws FEBAPIException if interrupted or the submitter has been shut down
+	 */
+	public List<FEBRecordResult> submitRecords(String appUid, String formId, Iterable<JSONObject> records) throws FEBAPIException {
+		ArrayList<FEBRecordResult> results = new ArrayList<FEBRecordResult>();
+		run(appUid, formId, records.iterator(), null, results);
+		return results;
+	}
+
+	/**
+	 * Submits every record of the stream and waits for them all to finish.
+	 *
+	 * @see #submitRecords(String, String, Iterable)
+	 */
+	public List<FEBRecordResult> submitRecords(String appUid, String formId, Stream<JSONObject> records) throws FEBAPIException {
+		ArrayList<FEBRecordResult> results = new ArrayList<FEBRecordResult>();
+		run(appUid, formId, records.iterator(), null, results);
+		return results;
+	}
+
+	/**
+	 * Submits every record and waits for them all to finish, passing each result to the listener as soon as it is known instead
+	 * of collecting them.  Use this for loads too large to keep every result in memory.
+	 *
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param records - The records to submit.
+	 * @param listener - Receives the result of each record.
+	 * @return the number of records submitted
+	 * @throws FEBAPIException if interrupted or the submitter has been shut down
+	 * @throws RuntimeException from the Iterator, once the records already submitted have finished
+	 */
+	public int submitRecords(String appUid, String formId, Iterator<JSONObject> records, FEBBatchListener listener) throws FEBAPIException {
+		return run(appUid, formId, records, listener, null);
+	}
+
+	/**
+	 * Stops the worker threads.  Records still being submitted will fail.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	private int run(final String appUid, final String formId, Iterator<JSONObject> records, final FEBBatchListener listener, List<FEBRecordResult> results) throws FEBAPIException {
+		final Semaphore permits = new Semaphore(concurrency);
+		int index = 0;
+		long start = System.currentTimeMillis();
+
+		try {
+			while(true) {
+				//do not read the next record until there is a slot for it
+				permits.acquire();
+
+				final JSONObject rec;
+				try {
+					if(!records.hasNext()) {
+						permits.release();
+						break;
+					}
+					rec = records.next();
+				} catch(RuntimeException re) {
+					permits.release();
+					throw re;
+				}
+
+				final FEBRecordResult result = new FEBRecordResult(index++);
+				if(results != null)
+					results.add(result);
+
+				try {
+					pool.execute(new Runnable() {
+						public void run() {
+							try {
+								submit(appUid, formId, rec, result);
+								if(listener != null)
+									listener.onResult(result);
+							} catch(RuntimeException re) {
+								logger.debug("The batch listener failed for record {}. {}", result.index, re.getMessage());
+							} finally {
+								permits.release();
+							}
+						}
+					});
+				} catch(RejectedExecutionException ree) {
+					permits.release();
+					throw new FEBAPIException("The batch submitter has been shut down.", ree);
+				}
+			}
+
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new FEBAPIException("Interrupted while submitting records.", ie);
+		} finally {
+			//wait for the records already submitted, also when the input failed, so no result arrives after this returns.  Once
+			//shut down the queued records never run and would not give back their slots.
+			if(!pool.isShutdown()) {
+				permits.acquireUninterruptibly(concurrency);
+				permits.release(concurrency);
+			}
+		}
+
+		logger.debug("Submitted {} records in {}ms", index, System.currentTimeMillis() - start);
+		return index;
+	}
+
+	private void submit(String appUid, String formId, JSONObject rec, FEBRecordResult result) {
+		try {
+			FEBResponse r = api.submitRecord(appUid, formId, rec);
+			result.responseCode = r.responseCode;
+			result.responseText = r.responseText;
+
+			if(r.responseJSON != null) {
+				result.uid = (String) r.responseJSON.get("uid");
+				result.flowState = (String) r.responseJSON.get("flowState");
+
+				Object id = r.responseJSON.get("id");
+				if(id instanceof Number)
+					result.id = ((Number) id).longValue();
+			}
+		} catch(FEBAPIException e) {
+			result.error = e;
+			result.responseText = e.getMessage();
+		} catch(RuntimeException e) {
+			result.error = new FEBAPIException(e.getMessage(), e);
+			result.responseText = e.getMessage();
+		}
+	}
+}
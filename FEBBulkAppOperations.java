@@ -0,0 +1,182 @@
+package com.hcl.feb.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs an application management operation (delete, start, stop or export) against many applications, with up to "parallelism"
+ * applications processed at the same time.
+ *
+ * <pre>
+ * {@code FEBBulkAppOperations bulk = new FEBBulkAppOperations(febapi, 10);
+ * try {
+ * 	List<FEBAppResult> results = bulk.exportApplications(appUids, "/backup/apps", true);
+ * 	for(FEBAppResult res : results) {
+ * 		if(!res.isSuccess())
+ * 			logger.error("Failed to export {}: {}", res.appUid, res.responseText);
+ * 	}
+ * } finally {
+ * 	bulk.shutdown();
+ * }}
+ * </pre>
+ *
+ * An application that fails does not stop the others, its error is reported in its FEBAppResult.  Results are returned in the
+ * same order as the application UIDs.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBBulkAppOperations {
+
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	private final FEBAPI api;
+	private final int parallelism;
+	private final ThreadPoolExecutor pool;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBBulkAppOperations.class);
+
+	public FEBBulkAppOperations(FEBAPI api) {
+		this(api, DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 *
+	 * @param api - The FEBAPI used to run the operations.
+	 * @param parallelism - The maximum number of applications processed at the same time.
+	 */
+	public FEBBulkAppOperations(FEBAPI api, int parallelism) {
+		if(parallelism < 1)
+			parallelism = 1;
+
+		this.api = api;
+		this.parallelism = parallelism;
+		this.pool = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new FEBAsyncAPIImpl.DaemonThreadFactory("feb-apps-"));
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public List<FEBAppResult> deleteApplications(Collection<String> appUids) throws FEBAPIException {
+		return run(appUids, FEBAppOperation.DELETE, null, false);
+	}
+
+	public List<FEBAppResult> startApplications(Collection<String> appUids) throws FEBAPIException {
+		return run(appUids, FEBAppOperation.START, null, false);
+	}
+
+	public List<FEBAppResult> stopApplications(Collection<String> appUids) throws FEBAPIException {
+		return run(appUids, FEBAppOperation.STOP, null, false);
+	}
+
+	/**
+	 * Exports each application to basePath/appUid.nitro_s.
+	 *
+	 * @param appUids - The applications to export.
+	 * @param basePath - The directory the exports are written to.
+	 * @param includeData - true to include the submitted records.
+	 * @return the result of each application, in the same order as appUids
+	 * @throws FEBAPIException if interrupted
+	 */
+	public List<FEBAppResult> exportApplications(Collection<String> appUids, String basePath, boolean includeData) throws FEBAPIException {
+		return run(appUids, FEBAppOperation.EXPORT, basePath, includeData);
+	}
+
+	/**
+	 * Runs the operation against every application and waits for them all to finish.  basePath and includeData are only used by EXPORT.
+	 *
+	 * @param appUids - The applications to process.  Null and empty UIDs are skipped.
+	 * @param operation - The operation to run.
+	 * @param basePath - The directory exports are written to.
+	 * @param includeData - true to include the submitted records in exports.
+	 * @return the result of each application, in the same order as appUids
+	 * @throws FEBAPIException if interrupted or this object has been shut down
+	 */
+	public List<FEBAppResult> run(Collection<String> appUids, final FEBAppOperation operation, final String basePath, final boolean includeData) throws FEBAPIException {
+		ArrayList<Future<FEBAppResult>> futures = new ArrayList<Future<FEBAppResult>>();
+		ArrayList<FEBAppResult> results = new ArrayList<FEBAppResult>();
+		long start = System.currentTimeMillis();
+
+		try {
+			for(final String appUid : appUids) {
+				if(appUid == null || appUid.isEmpty())
+					continue;
+
+				futures.add(pool.submit(new Callable<FEBAppResult>() {
+					public FEBAppResult call() {
+						return runOne(appUid, operation, basePath, includeData);
+					}
+				}));
+			}
+
+			for(Future<FEBAppResult> f : futures)
+				results.add(f.get());
+		} catch(RejectedExecutionException ree) {
+			throw new FEBAPIException("The bulk application operations have been shut down.", ree);
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new FEBAPIException("Interrupted while processing applications.", ie);
+		} catch(ExecutionException ee) {
+			throw new FEBAPIException(ee.getCause().getMessage(), ee.getCause());
+		}
+
+		logger.debug("{} of {} applications took {}ms", operation, results.size(), System.currentTimeMillis() - start);
+		return results;
+	}
+
+	/**
+	 * Stops the worker threads.  Operations still in progress will fail.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	private FEBAppResult runOne(String appUid, FEBAppOperation operation, String basePath, boolean includeData) {
+		FEBAppResult result = new FEBAppResult(appUid, operation);
+		long start = System.currentTimeMillis();
+
+		try {
+			FEBResponse r = null;
+			switch(operation) {
+				case DELETE:
+					r = api.deleteApplication(appUid);
+					break;
+				case START:
+					r = api.startApplication(appUid);
+					break;
+				case STOP:
+					r = api.stopApplication(appUid);
+					break;
+				case EXPORT:
+					r = api.exportApplication(appUid, basePath, includeData);
+					break;
+			}
+			result.responseCode = r.responseCode;
+			result.responseText = r.responseText;
+		} catch(FEBAPIException e) {
+			result.error = e;
+			result.responseText = e.getMessage();
+		} catch(RuntimeException e) {
+			result.error = new FEBAPIException(e.getMessage(), e);
+			result.responseText = e.getMessage();
+		}
+
+		result.elapsedMillis = System.currentTimeMillis() - start;
+		logger.debug("{} {} returned {}", operation, appUid, result.responseCode);
+		return result;
+	}
+}
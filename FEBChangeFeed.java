@@ -0,0 +1,425 @@
+package com.hcl.feb.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the records of a form that were created or updated since the last poll, so a copy of the form can be kept in sync
+ * without listing every record each time.
+ *
+ * <pre>
+ * {@code FEBChangeFeed feed = new FEBChangeFeed(febapi, appid, "F_Form1", Paths.get("/var/sync/F_Form1.watermark"));
+ * feed.start(60000, new FEBRecordCallback() {
+ * 	public boolean onRecord(JSONObject rec) {
+ * 		replica.upsert(rec);
+ * 		return true;
+ * 	}
+ * });
+ * ...
+ * feed.stop();}
+ * </pre>
+ *
+ * The feed lists the records whose last updated timestamp is after its watermark, sorted by last updated ascending, and moves
+ * the watermark forward as records are delivered.  The watermark is saved in the watermark file after every page, so a
+ * restarted process carries on from where the previous one stopped.  A record may be delivered again if the process stops
+ * between delivering it and saving the watermark.
+ *
+ * Each request starts a little before the watermark (see setOverlap) so that records sharing the watermark's timestamp, or
+ * saved just as the previous page was read, are not missed.  The records in the overlap that were already delivered are
+ * remembered and skipped.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBChangeFeed {
+
+	public static final int DEFAULT_PAGE_SIZE = 200;
+	public static final long DEFAULT_OVERLAP = 1000;
+	public static final String DEFAULT_TIMESTAMP_PROPERTY = "lastUpdated";
+
+	//the format the date filters expect, e.g. 2018-03-17 23:28:03.810
+	private static final DateTimeFormatter FILTER_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneOffset.UTC);
+
+	private final FEBAPI api;
+	private final String appUid;
+	private final String formId;
+	private final Path watermarkFile;
+	private final FEBFilters filters;
+	private int pageSize = DEFAULT_PAGE_SIZE;
+	private long overlap = DEFAULT_OVERLAP;
+	private String timestampProperty = DEFAULT_TIMESTAMP_PROPERTY;
+
+	//state, guarded by this
+	private Instant watermark = null;
+	private final HashMap<String,Long> recent = new HashMap<String,Long>(); //uid to updated millis of records in the overlap
+	private boolean loaded = false;
+
+	private ScheduledExecutorService scheduler = null;
+	private ScheduledFuture<?> task = null;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBChangeFeed.class);
+
+	public FEBChangeFeed(FEBAPI api, String appUid, String formId, Path watermarkFile) throws FEBAPIException {
+		this(api, appUid, formId, null, watermarkFile);
+	}
+
+	/**
+	 *
+	 * @param api - The FEBAPI used to list the records.
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param filters - Limits the feed to the matching records.  May be null.  The sort and from/to are ignored.
+	 * @param watermarkFile - The file the watermark is saved in.  Each feed needs its own file.
+	 * @throws FEBAPIException if there is more than one filter and the relationship is not ALL_MATCH
+	 */
+	public FEBChangeFeed(FEBAPI api, String appUid, String formId, FEBFilters filters, Path watermarkFile) throws FEBAPIException {
+		this.api = api;
+		this.appUid = appUid;
+		this.formId = formId;
+		this.watermarkFile = watermarkFile;
+		this.filters = filters == null ? new FEBFilters() : new FEBFilters(filters);
+
+		if(this.filters.getFilterArray().size() > 1 && this.filters.getFilterRelationship() == FEBFilterRelationship.AT_LEAST_ONE_MATCHES)
+			throw new FEBAPIException("The change feed requires the filters to use the ALL_MATCH relationship.");
+	}
+
+	public void setPageSize(int pageSize) {
+		if(pageSize > 0)
+			this.pageSize = pageSize;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * How far before the watermark each request starts, in milliseconds.  Defaults to 1 second.
+	 *
+	 * @param overlap
+	 */
+	public void setOverlap(long overlap) {
+		if(overlap >= 0)
+			this.overlap = overlap;
+	}
+
+	public long getOverlap() {
+		return overlap;
+	}
+
+	/**
+	 * The property of each record that holds its last updated timestamp.  Defaults to "lastUpdated".
+	 *
+	 * @param timestampProperty
+	 */
+	public void setTimestampProperty(String timestampProperty) {
+		this.timestampProperty = timestampProperty;
+	}
+
+	public String getTimestampProperty() {
+		return timestampProperty;
+	}
+
+	/**
+	 * The last updated timestamp of the newest record delivered, or null if nothing has been delivered yet.
+	 *
+	 * @return Instant
+	 * @throws FEBAPIException if the watermark file cannot be read
+	 */
+	public synchronized Instant getWatermark() throws FEBAPIException {
+		load();
+		return watermark;
+	}
+
+	/**
+	 * Delivers every record changed since the watermark to the callback, in last updated order.  If the callback returns false the
+	 * poll stops and the record it was given counts as delivered.  If the callback throws, the poll stops and the record is
+	 * delivered again by the next poll.
+	 *
+	 * @param callback - Receives each changed record.
+	 * @return the number of records delivered
+	 * @throws FEBAPIException if the records cannot be listed or the watermark cannot be saved
+	 */
+	public synchronized int poll(FEBRecordCallback callback) throws FEBAPIException {
+		load();
+		int delivered = 0;
+		int from = 0;
+
+		while(true) {
+			Instant cursor = watermark;
+			FEBFilters f = new FEBFilters(filters);
+			if(watermark != null) {
+				String after = FILTER_FORMAT.format(watermark.minusMillis(overlap));
+				f.addFilter(FEBFilterMetaColumns.LAST_UPDATED_TIMESTAMP.getValue(), FEBFilterOperator.AFTER, after);
+				f.setFilterRelationship(FEBFilterRelationship.ALL_MATCH);
+			}
+			f.setSortBy(FEBFilterMetaColumns.SORTBY_LAST_UPDATED_TIMESTAMP.getValue());
+			f.setFilterOrder(FEBFilterOrder.ASCENDING);
+			f.setFrom(from);
+			f.setTo(from + pageSize);
+
+			JSONArray items = fetchPage(f);
+			boolean stopped = false;
+			int fresh = 0;
+
+			try {
+				for(Object o : items) {
+					JSONObject rec = (JSONObject) o;
+					String uid = (String) rec.get("uid");
+					Instant updated = getUpdated(rec);
+
+					Long seen = recent.get(uid);
+					if(seen != null && updated != null && seen.longValue() == updated.toEpochMilli())
+						continue; //delivered by an earlier page or poll
+
+					boolean more = callback.onRecord(rec);
+
+					//only once the callback has taken the record, so a record it failed on is delivered again
+					fresh++;
+					delivered++;
+					if(updated != null) {
+						if(watermark == null || updated.isAfter(watermark))
+							watermark = updated;
+						recent.put(uid, updated.toEpochMilli());
+					}
+
+					if(!more) {
+						stopped = true;
+						break;
+					}
+				}
+			} catch(RuntimeException e) {
+				//keep the records delivered before the failure
+				prune();
+				try {
+					save();
+				} catch(FEBAPIException fe) {
+					logger.debug("Failed to save the watermark. {}", fe.getMessage());
+				}
+				throw e;
+			}
+
+			prune();
+			save();
+
+			if(stopped || items.size() < pageSize)
+				break;
+
+			//a full page that did not move the watermark means more than a page of records share the overlap, so page through them
+			if(fresh == 0 || (cursor != null && cursor.equals(watermark)))
+				from += pageSize;
+			else
+				from = 0;
+		}
+
+		logger.debug("Delivered {} changed records from {}, watermark is {}", delivered, formId, watermark);
+		return delivered;
+	}
+
+	/**
+	 * Same as poll(callback), except that each changed record is put on the queue.  Waits for space if the queue is full.
+	 *
+	 * @param queue - Receives each changed record.
+	 * @return the number of records delivered
+	 * @throws FEBAPIException if the records cannot be listed or the watermark cannot be saved
+	 */
+	public int poll(final BlockingQueue<JSONObject> queue) throws FEBAPIException {
+		return poll(new FEBRecordCallback() {
+			public boolean onRecord(JSONObject rec) {
+				try {
+					queue.put(rec);
+					return true;
+				} catch(InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Polls on a background thread every intervalMillis until stop is called.  Failed polls are logged and retried at the next
+	 * interval.
+	 *
+	 * @param intervalMillis - The time between the end of one poll and the start of the next.
+	 * @param callback - Receives each changed record.
+	 */
+	public synchronized void start(long intervalMillis, final FEBRecordCallback callback) {
+		if(task != null)
+			throw new IllegalStateException("The change feed is already running.");
+
+		if(scheduler == null)
+			scheduler = Executors.newSingleThreadScheduledExecutor(new FEBAsyncAPIImpl.DaemonThreadFactory("feb-changes-"));
+
+		task = scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					poll(callback);
+				} catch(Exception e) {
+					logger.debug("Failed to poll {} for changes. {}", formId, e.getMessage());
+				}
+			}
+		}, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops polling.  A poll that is in progress is allowed to finish.
+	 */
+	public synchronized void stop() {
+		if(task != null) {
+			task.cancel(false);
+			task = null;
+		}
+		if(scheduler != null) {
+			scheduler.shutdown();
+			scheduler = null;
+		}
+	}
+
+	private JSONArray fetchPage(FEBFilters f) throws FEBAPIException {
+		FEBResponse r = api.listRecords(appUid, formId, f, FEBReturnFormat.JSON);
+
+		if(!r.isResponse20x())
+			throw new FEBAPIException("Failed to list changed records. Request returned HTTP " + r.responseCode + " (" + r.responseText + ")");
+
+		JSONArray items = null;
+		if(r.responseJSON != null)
+			items = (JSONArray) r.responseJSON.get("items");
+
+		return items == null ? new JSONArray() : items;
+	}
+
+	/**
+	 * Reads the last updated timestamp of the record.  Accepts ISO-8601 strings, the filter format (as UTC) and epoch milliseconds.
+	 */
+	private Instant getUpdated(JSONObject rec) {
+		Object value = rec.get(timestampProperty);
+		if(value == null)
+			return null;
+		if(value instanceof Number)
+			return Instant.ofEpochMilli(((Number) value).longValue());
+
+		String s = value.toString();
+		try {
+			return OffsetDateTime.parse(s).toInstant();
+		} catch(DateTimeParseException dtpe) {
+			try {
+				return Instant.parse(s);
+			} catch(DateTimeParseException dtpe2) {
+				try {
+					return LocalDateTime.parse(s, FILTER_FORMAT).toInstant(ZoneOffset.UTC);
+				} catch(DateTimeParseException dtpe3) {
+					logger.debug("Cannot read the timestamp {} of record {}", s, rec.get("uid"));
+					return null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forgets the delivered records that are now before the overlap.
+	 */
+	private void prune() {
+		if(watermark == null)
+			return;
+
+		long oldest = watermark.minusMillis(overlap).toEpochMilli();
+		Iterator<Map.Entry<String,Long>> iter = recent.entrySet().iterator();
+		while(iter.hasNext()) {
+			if(iter.next().getValue() < oldest)
+				iter.remove();
+		}
+	}
+
+	private void load() throws FEBAPIException {
+		if(loaded)
+			return;
+
+		if(Files.exists(watermarkFile)) {
+			Properties p = new Properties();
+			try(InputStream is = Files.newInputStream(watermarkFile)) {
+				p.load(is);
+			} catch(IOException ioe) {
+				throw new FEBAPIException("Failed to read the watermark. " + ioe.getMessage(), ioe);
+			}
+
+			String wm = p.getProperty("watermark");
+			if(wm != null && !wm.isEmpty())
+				watermark = Instant.parse(wm);
+
+			String rec = p.getProperty("recent", "");
+			for(String entry : rec.split(",")) {
+				int i = entry.lastIndexOf(':');
+				if(i > 0)
+					recent.put(entry.substring(0, i), Long.valueOf(entry.substring(i + 1)));
+			}
+			logger.debug("Loaded watermark {} for {}", watermark, formId);
+		}
+		loaded = true;
+	}
+
+	private void save() throws FEBAPIException {
+		Properties p = new Properties();
+		p.setProperty("appUid", appUid);
+		p.setProperty("formId", formId);
+		if(watermark != null)
+			p.setProperty("watermark", watermark.toString());
+
+		StringBuilder sb = new StringBuilder();
+		for(Map.Entry<String,Long> e : recent.entrySet()) {
+			if(sb.length() > 0)
+				sb.append(',');
+			sb.append(e.getKey()).append(':').append(e.getValue());
+		}
+		p.setProperty("recent", sb.toString());
+
+		Path tmp = null;
+		try {
+			Path dir = watermarkFile.toAbsolutePath().getParent();
+			tmp = Files.createTempFile(dir, watermarkFile.getFileName().toString(), ".part");
+			try(OutputStream os = Files.newOutputStream(tmp)) {
+				p.store(os, "FEB change feed watermark");
+			}
+			try {
+				Files.move(tmp, watermarkFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch(AtomicMoveNotSupportedException amnse) {
+				Files.move(tmp, watermarkFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+		} catch(IOException ioe) {
+			throw new FEBAPIException("Failed to save the watermark. " + ioe.getMessage(), ioe);
+		} finally {
+			if(tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch(IOException ioe) {
+					logger.debug("Failed to remove temporary file {}. {}", tmp, ioe.getMessage());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.hcl.feb.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops FEBAPIImpl sending requests to a host that keeps failing.  After failureThreshold consecutive failures (connection
+ * errors or 502, 503 and 504 responses) the breaker opens and every request to the host fails immediately for openMillis.
+ * Then a single trial request is let through: if it succeeds the breaker closes, otherwise it opens again.  A trial that ends
+ * without an outcome (see {@link #release()}), or that has not reported one after openMillis, is replaced by a new trial.
+ *
+ * FEBAPIImpl keeps one breaker per host, see FEBAPIImpl.setCircuitBreaker.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBCircuitBreaker {
+
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	public static final long DEFAULT_OPEN_MILLIS = 30000;
+
+	private enum State { CLOSED, OPEN, HALF_OPEN }
+
+	private final String host;
+	private final int failureThreshold;
+	private final long openMillis;
+
+	private State state = State.CLOSED;
+	private int failures = 0;
+	private long openedAt = 0;
+	private long trialStartedAt = 0;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBCircuitBreaker.class);
+
+	/**
+	 *
+	 * @param host - The host the breaker protects, used in messages.
+	 * @param failureThreshold - The number of consecutive failures that open the breaker.  0 disables the breaker.
+	 * @param openMillis - How long the breaker stays open before a trial request is allowed.
+	 */
+	public FEBCircuitBreaker(String host, int failureThreshold, long openMillis) {
+		this.host = host;
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * Checks that a request may be sent.
+	 *
+	 * @throws FEBAPIException if the breaker is open
+	 */
+	public synchronized void acquire() throws FEBAPIException {
+		if(failureThreshold <= 0 || state == State.CLOSED)
+			return;
+
+		long now = System.currentTimeMillis();
+		if((state == State.OPEN && now - openedAt >= openMillis) || (state == State.HALF_OPEN && now - trialStartedAt >= openMillis)) {
+			logger.debug("Circuit breaker for {} is half open", host);
+			state = State.HALF_OPEN;
+			trialStartedAt = now;
+			return; //this caller is the trial request
+		}
+
+		long since = state == State.HALF_OPEN ? trialStartedAt : openedAt;
+		long wait = Math.max(0, openMillis - (now - since));
+		throw new FEBAPIException("Requests to " + host + " are suspended after repeated failures, retry in " + wait + "ms.");
+	}
+
+	public synchronized void onSuccess() {
+		if(state != State.CLOSED)
+			logger.debug("Circuit breaker for {} is closed", host);
+		state = State.CLOSED;
+		failures = 0;
+	}
+
+	public synchronized void onFailure() {
+		if(failureThreshold <= 0)
+			return;
+
+		failures++;
+		if(state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+			logger.debug("Circuit breaker for {} is open after {} failures", host, failures);
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Reports that a request let through by acquire ended without a response or connection failure, for example because it
+	 * was interrupted.  If it was the trial request the next request becomes the trial.
+	 */
+	public synchronized void release() {
+		if(state == State.HALF_OPEN) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis() - openMillis;
+		}
+	}
+
+	public synchronized boolean isOpen() {
+		return state != State.CLOSED;
+	}
+
+	public String getHost() {
+		return host;
+	}
+}
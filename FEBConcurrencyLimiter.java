@@ -0,0 +1,170 @@
+package com.hcl.feb.api;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of requests FEBAPIImpl has waiting on a host at once, and adjusts the limit to what the host can take.
+ *
+ * The limit grows by one for every limit requests that succeed while the limit is in use (additive increase).  It shrinks
+ * by half when a request fails with a connection error or a 5xx or 429 response, and gradually, in proportion to the slowdown,
+ * while the average response time is above tolerance times the lowest response time seen.  A loaded server therefore slows the
+ * client down before it starts returning errors.
+ *
+ * <pre>
+ * {@code //writes start at 4 concurrent requests per host and may grow to 64
+ * febapi.setConcurrencyLimit(FEBOperationType.WRITE, 4, 1, 64);}
+ * </pre>
+ *
+ * The time measured is from sending the request to receiving the response headers; reading the response body does not
+ * hold a slot.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBConcurrencyLimiter {
+
+	public static final int DEFAULT_INITIAL_LIMIT = 10;
+	public static final int DEFAULT_MIN_LIMIT = 1;
+	public static final int DEFAULT_MAX_LIMIT = 100;
+	public static final double DEFAULT_TOLERANCE = 2.0;
+
+	//multiplier applied to the limit when a request fails
+	private static final double BACKOFF = 0.5;
+	//weight of the newest response time in the moving average
+	private static final double SMOOTHING = 0.1;
+	//the lowest response time is forgotten after this many samples, so that it follows a permanent change in the server
+	private static final int MIN_RTT_SAMPLES = 1000;
+
+	private final String name;
+	private final int minLimit;
+	private final int maxLimit;
+	private final double tolerance;
+
+	private double limit;
+	private int inFlight = 0;
+	private long minRtt = Long.MAX_VALUE;
+	private double smoothedRtt = -1;
+	private int samples = 0;
+	private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<CompletableFuture<Void>>();
+
+	private final Logger logger = LoggerFactory.getLogger(FEBConcurrencyLimiter.class);
+
+	/**
+	 *
+	 * @param name - Identifies the limiter in log messages.
+	 * @param initialLimit - The limit to start with.
+	 * @param minLimit - The lowest the limit can go.  At least 1.
+	 * @param maxLimit - The highest the limit can go.
+	 * @param tolerance - How many times the lowest response time the average may reach before the limit is reduced.
+	 */
+	public FEBConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, double tolerance) {
+		this.name = name;
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.tolerance = tolerance > 1 ? tolerance : DEFAULT_TOLERANCE;
+		this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public int getMinLimit() {
+		return minLimit;
+	}
+
+	public int getMaxLimit() {
+		return maxLimit;
+	}
+
+	/**
+	 * Takes a slot, waiting until the number of requests in flight is below the limit.
+	 *
+	 * @throws FEBAPIException if interrupted while waiting
+	 */
+	public synchronized void acquire() throws FEBAPIException {
+		try {
+			while(inFlight >= (int) limit)
+				wait();
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new FEBAPIException("Interrupted while waiting for the concurrency limit.", ie);
+		}
+		inFlight++;
+	}
+
+	/**
+	 * Takes a slot without blocking.  The future completes once the slot has been taken, straight away if one is free,
+	 * otherwise on the thread that releases one.
+	 *
+	 * @return CompletableFuture
+	 */
+	public CompletableFuture<Void> acquireAsync() {
+		CompletableFuture<Void> f = new CompletableFuture<Void>();
+		synchronized(this) {
+			if(inFlight >= (int) limit || !waiters.isEmpty()) {
+				waiters.add(f);
+				return f;
+			}
+			inFlight++;
+		}
+		f.complete(null);
+		return f;
+	}
+
+	/**
+	 * Gives back a slot and adjusts the limit from the outcome of the request.
+	 *
+	 * @param rttNanos - The time from sending the request to receiving the response headers.
+	 * @param overloaded - true if the request failed in a way that points to an overloaded server.
+	 */
+	public void release(long rttNanos, boolean overloaded) {
+		//the asynchronous waiters are completed outside the lock, their callbacks start requests
+		for(CompletableFuture<Void> f : releaseSlot(rttNanos, overloaded))
+			f.complete(null);
+	}
+
+	private synchronized List<CompletableFuture<Void>> releaseSlot(long rttNanos, boolean overloaded) {
+		boolean saturated = inFlight >= (int) limit;
+		inFlight--;
+		double old = limit;
+
+		if(overloaded) {
+			limit = Math.max(minLimit, limit * BACKOFF);
+		} else {
+			if(++samples >= MIN_RTT_SAMPLES) {
+				samples = 0;
+				minRtt = Long.MAX_VALUE;
+			}
+			minRtt = Math.min(minRtt, Math.max(rttNanos, 1));
+			smoothedRtt = smoothedRtt < 0 ? rttNanos : smoothedRtt + SMOOTHING * (rttNanos - smoothedRtt);
+
+			double gradient = tolerance * minRtt / smoothedRtt;
+			if(gradient < 1.0)
+				limit = Math.max(minLimit, limit * (1.0 - SMOOTHING * (1.0 - Math.max(0.5, gradient))));
+			else if(saturated)
+				limit = Math.min(maxLimit, limit + 1.0 / limit);
+		}
+
+		if((int) old != (int) limit)
+			logger.debug("Concurrency limit for {} changed from {} to {}", name, (int) old, (int) limit);
+
+		List<CompletableFuture<Void>> ready = new ArrayList<CompletableFuture<Void>>();
+		while(!waiters.isEmpty() && inFlight < (int) limit) {
+			inFlight++;
+			ready.add(waiters.poll());
+		}
+		notifyAll();
+		return ready;
+	}
+}
@@ -0,0 +1,68 @@
+package com.hcl.feb.api;
+
+import java.util.ArrayList;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * The outcome of a {@link FEBRecordDeleter} run.  The object contains:
+ *
+ * long matched					- The number of matching records found.
+ * long deleted					- The number of records deleted.
+ * long failed					- The number of records that could not be deleted.
+ * ArrayList<String> failedUids	- The UIDs of the first MAX_FAILED_UIDS records that could not be deleted.  failed counts them all.
+ * long scanMillis				- The time spent listing the records to delete.
+ * long deleteMillis			- The total time of the delete requests, across all threads.
+ * long elapsedMillis			- How long the whole run took.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBDeleteResult {
+	public static final int MAX_FAILED_UIDS = 1000;
+
+	public long matched;
+	public long deleted;
+	public long failed;
+	public ArrayList<String> failedUids = new ArrayList<String>();
+	public long scanMillis;
+	public long deleteMillis;
+	public long elapsedMillis;
+
+	/**
+	 * True if every matching record was deleted.
+	 * @return boolean
+	 */
+	public boolean isComplete() {
+		return failed == 0;
+	}
+
+	/**
+	 * Counts a record that could not be deleted, keeping its UID while there are fewer than MAX_FAILED_UIDS.
+	 */
+	void addFailure(String uid) {
+		failed++;
+		if(failedUids.size() < MAX_FAILED_UIDS)
+			failedUids.add(uid);
+	}
+
+	@SuppressWarnings("unchecked")
+	public JSONObject toJSON() {
+		JSONObject json = new JSONObject();
+		json.put("matched", matched);
+		json.put("deleted", deleted);
+		json.put("failed", failed);
+		JSONArray uids = new JSONArray();
+		uids.addAll(failedUids);
+		json.put("failedUids", uids);
+		json.put("scanMillis", scanMillis);
+		json.put("deleteMillis", deleteMillis);
+		json.put("elapsedMillis", elapsedMillis);
+		return json;
+	}
+
+	public String toString() {
+		return "Deleted " + deleted + " of " + matched + " records, " + failed + " failed in " + elapsedMillis + "ms";
+	}
+}
@@ -0,0 +1,37 @@
+package com.hcl.feb.api;
+
+import java.util.HashMap;
+
+/**
+ * A single entry of an Atom feed returned by the FEB REST API, as read by {@link FEBFeedReader}.  The common application
+ * properties are available as fields:
+ *
+ * String id			- The UID of the application (or record).
+ * String title			- The title of the entry.
+ * String updated		- The last updated timestamp.
+ * String status		- The application status (nitro:status), i.e. published, publish-stopped.
+ * Long count			- The number of records submitted to the application (nitro:count).
+ * String tags			- The tags assigned to the application (nitro:tags).
+ * String defaultForm	- The ID of the default form of the application (nitro:default-form).
+ *
+ * Every element of the entry that contains text is also available in properties, keyed by its path within the entry, i.e.
+ * "title", "author/name", "content/F_FirstName".  The href of each link is available in links, keyed by its rel attribute.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBFeedEntry {
+	public String id;
+	public String title;
+	public String updated;
+	public String status;
+	public Long count;
+	public String tags;
+	public String defaultForm;
+	public HashMap<String,String> properties = new HashMap<String,String>();
+	public HashMap<String,String> links = new HashMap<String,String>();
+
+	public String getProperty(String path) {
+		return properties.get(path);
+	}
+}
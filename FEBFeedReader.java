@@ -0,0 +1,192 @@
+package com.hcl.feb.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the entries of an Atom feed (i.e. the response of listAppsForUser) one at a time with a StAX parser, so the feed
+ * never has to be held in memory as a DOM.
+ *
+ * <pre>
+ * {@code FEBFeedReader feed = febapi.listAppsForUserToFeedReader(1, 1000, null, null);
+ * try {
+ * 	while(feed.hasNext()) {
+ * 		FEBFeedEntry app = feed.next();
+ * 		logger.info("{} ({}) is {}", app.title, app.id, app.status);
+ * 	}
+ * } finally {
+ * 	feed.close();
+ * }}
+ * </pre>
+ *
+ * If the feed cannot be parsed the iterator throws an IllegalStateException whose cause is the XMLStreamException.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBFeedReader implements Iterator<FEBFeedEntry>, Closeable {
+
+	private static final String ENTRY = "entry";
+	private static final String LINK = "link";
+
+	//the factory is thread safe once configured, so it is created once and shared
+	private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+	private final InputStream is;
+	private final XMLStreamReader reader;
+	private FEBFeedEntry nextEntry = null;
+	private boolean finished = false;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBFeedReader.class);
+
+	/**
+	 *
+	 * @param is - The stream containing the Atom feed.  It is closed when this reader is closed.
+	 * @throws FEBAPIException if the parser cannot be created
+	 */
+	public FEBFeedReader(InputStream is) throws FEBAPIException {
+		this.is = is;
+		try {
+			this.reader = INPUT_FACTORY.createXMLStreamReader(is);
+		} catch(XMLStreamException xse) {
+			throw new FEBAPIException(xse.getMessage(), xse);
+		}
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory f = XMLInputFactory.newInstance();
+		f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		f.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		f.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return f;
+	}
+
+	public boolean hasNext() {
+		if(nextEntry == null && !finished) {
+			try {
+				nextEntry = readEntry();
+			} catch(XMLStreamException xse) {
+				finished = true;
+				throw new IllegalStateException(xse.getMessage(), xse);
+			}
+			if(nextEntry == null)
+				finished = true;
+		}
+		return nextEntry != null;
+	}
+
+	public FEBFeedEntry next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+
+		FEBFeedEntry e = nextEntry;
+		nextEntry = null;
+		return e;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Moves to the next entry element and reads it, returns null at the end of the feed.
+	 */
+	private FEBFeedEntry readEntry() throws XMLStreamException {
+		while(reader.hasNext()) {
+			if(reader.next() == XMLStreamConstants.START_ELEMENT && ENTRY.equals(reader.getLocalName()))
+				return readEntryContent();
+		}
+		return null;
+	}
+
+	private FEBFeedEntry readEntryContent() throws XMLStreamException {
+		FEBFeedEntry e = new FEBFeedEntry();
+		LinkedList<String> path = new LinkedList<String>();
+		StringBuilder text = new StringBuilder();
+		boolean leaf = false;
+
+		while(reader.hasNext()) {
+			int event = reader.next();
+
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if(LINK.equals(name) && reader.getAttributeValue(null, "href") != null) {
+					String rel = reader.getAttributeValue(null, "rel");
+					e.links.put(rel == null ? "alternate" : rel, reader.getAttributeValue(null, "href"));
+				}
+				path.addLast(name);
+				text.setLength(0);
+				leaf = true;
+			} else if(event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+				if(leaf)
+					text.append(reader.getText());
+			} else if(event == XMLStreamConstants.END_ELEMENT) {
+				if(path.isEmpty()) //end of the entry
+					break;
+
+				if(leaf)
+					e.properties.put(join(path), text.toString().trim());
+
+				path.removeLast();
+				leaf = false;
+			}
+		}
+
+		e.id = e.properties.get("id");
+		e.title = e.properties.get("title");
+		e.updated = e.properties.get("updated");
+		e.status = e.properties.get("status");
+		e.tags = e.properties.get("tags");
+		e.defaultForm = e.properties.get("default-form");
+
+		String count = e.properties.get("count");
+		if(count != null && !count.isEmpty()) {
+			try {
+				e.count = Long.valueOf(count);
+			} catch(NumberFormatException nfe) {
+				logger.debug("Entry {} has a non numeric count ({})", e.id, count);
+			}
+		}
+
+		return e;
+	}
+
+	private static String join(LinkedList<String> path) {
+		if(path.size() == 1)
+			return path.getFirst();
+
+		StringBuilder sb = new StringBuilder();
+		for(String p : path) {
+			if(sb.length() > 0)
+				sb.append('/');
+			sb.append(p);
+		}
+		return sb.toString();
+	}
+
+	public void close() {
+		try {
+			reader.close();
+		} catch(XMLStreamException xse) {
+			logger.debug("Failed to close the feed parser. {}", xse.getMessage());
+		}
+		try {
+			is.close();
+		} catch(IOException ioe) {
+			logger.debug("Failed to close the feed stream. {}", ioe.getMessage());
+		}
+	}
+}
@@ -2,6 +2,8 @@ package com.hcl.feb.api;
 
 import java.util.ArrayList;
 
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,6 +21,21 @@ import org.slf4j.LoggerFactory;
  * filters.setFilterOrder(FEBFilterOrder.DESCENDING);
  * r = fa.listRecords(appid, "F_Form1", filters);}
  * </pre>
+ * 
+ * By default pages are selected with from/to offsets.  Deep offsets get slower on the server, and records can be skipped or
+ * returned twice if they are created or deleted between pages.  Keyset paging avoids both: the records are sorted by line ID
+ * (dbId) and each page asks for the records after the last line ID of the previous page.
+ * 
+ * <pre>
+ * {@code FEBFilters filters = new FEBFilters();
+ * filters.setPageSize(500);
+ * filters.setKeysetPaging(true);
+ * do {
+ * 	r = fa.listRecords(appid, "F_Form1", filters);
+ * 	...
+ * 	filters.nextPage();
+ * } while(filters.hasMorePages());}
+ * </pre>
  */
 public class FEBFilters {
 	private ArrayList<FEBFilterParam> filters = new ArrayList<FEBFilterParam>();
@@ -28,6 +45,10 @@ public class FEBFilters {
 	private Integer from = null;
 	private Integer to = null;
 	private Integer pageSize = null; //FEB default is 100?
+	private boolean keysetPaging = false;
+	private Long lastId = null; //line ID the current page starts after
+	private Long pageEndId = null; //line ID of the last record of the current page, set by listRecords
+	private boolean morePages = true;
 	
 	private final Logger logger = LoggerFactory.getLogger(FEBFilters.class);
 	
@@ -35,6 +56,22 @@ public class FEBFilters {
 		pageSize = 50;
 	}
 	
+	/**
+	 * Creates a copy of the specified filters.  The FEBFilterParam objects are shared with the original.  Keyset paging is not
+	 * copied, the copy pages with from/to, so the sort and range set on the copy are used.
+	 * 
+	 * @param other - The filters to copy.
+	 */
+	public FEBFilters(FEBFilters other) {
+		filters.addAll(other.filters);
+		relation = other.relation;
+		order = other.order;
+		sortBy = other.sortBy;
+		from = other.from;
+		to = other.to;
+		pageSize = other.pageSize;
+	}
+	
 	public void addFilter(FEBFilterParam theFilter) {
 		filters.add(theFilter);
 	}
@@ -85,6 +122,10 @@ public class FEBFilters {
 		this.to = to;
 	}
 	
+	public Integer getTo() {
+		return to;
+	}
+	
 	public void setPageSize(Integer pageSize) {
 		this.pageSize = pageSize;
 		from = 0;
@@ -95,17 +136,78 @@ public class FEBFilters {
 		return pageSize;
 	}
 	
+	/**
+	 * Changes the page size without going back to the first page.  The current page starts at the same record and ends
+	 * pageSize records later.
+	 * 
+	 * @param pageSize - The new page size.
+	 */
+	public void resizePage(int pageSize) {
+		this.pageSize = pageSize;
+		if(from == null)
+			from = 0;
+		to = from + pageSize;
+	}
+	
+	/**
+	 * Switches between keyset paging and from/to offsets.  With keyset paging the records are always sorted by line ID
+	 * ascending, the filters must be combined with ALL_MATCH and from/to only limits the size of the page.  Moves back
+	 * to the first page.
+	 * 
+	 * @param keysetPaging - true to page by line ID.
+	 */
+	public void setKeysetPaging(boolean keysetPaging) {
+		this.keysetPaging = keysetPaging;
+		pageReset();
+	}
+	
+	public boolean isKeysetPaging() {
+		return keysetPaging;
+	}
+	
+	/**
+	 * Sets the line ID the next page starts after, for keyset paging.  listRecords records the last line ID of each JSON page
+	 * so nextPage can move on by itself.  Use this to resume a scan, or with listRecordsToCallback and the other formats.
+	 * 
+	 * @param lastId - The line ID (dbId) of the last record already seen, or null to start from the first record.
+	 */
+	public void setLastId(Long lastId) {
+		this.lastId = lastId;
+	}
+	
+	public Long getLastId() {
+		return lastId;
+	}
+	
+	/**
+	 * False once a page shorter than the page size has been returned by listRecords.  Only tracked with keyset paging.
+	 * 
+	 * @return boolean
+	 */
+	public boolean hasMorePages() {
+		return morePages;
+	}
+	
 	public void nextPage() {
+		if(keysetPaging) {
+			if(pageEndId != null)
+				lastId = pageEndId;
+			pageEndId = null;
+			return;
+		}
 		from = from + pageSize;
 		to = to + pageSize;
 	}
 	
 	public void firstPage() {
-		from = 0;
-		to = pageSize;
+		pageReset();
 	}
 	
 	public void previousPage() {
+		if(keysetPaging) {
+			logger.debug("previousPage is not supported with keyset paging");
+			return;
+		}
 		if(to >= pageSize && from > 0) {
 			from = from - pageSize;
 			to = to - pageSize;
@@ -115,39 +217,89 @@ public class FEBFilters {
 	public void pageReset() {
 		from = 0;
 		to = pageSize;
+		lastId = null;
+		pageEndId = null;
+		morePages = true;
+	}
+	
+	/**
+	 * Records where the page in the response ends, so that nextPage can continue after it.
+	 * 
+	 * @param r - The JSON response of listRecords.
+	 */
+	void notePageEnd(FEBResponse r) {
+		if(!keysetPaging || r.responseJSON == null)
+			return;
+		
+		JSONArray items = (JSONArray) r.responseJSON.get("items");
+		if(items == null || items.isEmpty()) {
+			morePages = false;
+			return;
+		}
+		
+		Object id = ((JSONObject) items.get(items.size() - 1)).get("id");
+		if(id instanceof Number)
+			pageEndId = ((Number) id).longValue();
+		morePages = pageSize == null || items.size() >= pageSize;
 	}
 	
+	/**
+	 * 
+	 * @return the query string for the filters, sort and page
+	 * @throws IllegalStateException if keyset paging is used with the AT_LEAST_ONE_MATCHES relationship
+	 */
 	public String getFilterURLString() {
 		String urlStr = "";
+		int filterCount = 0;
 		
 		if(filters != null) {
 			for(int i=0;i<filters.size();i++) {				
 				urlStr = addURLParam(urlStr, filters.get(i).getFilterParam() + "__" + filters.get(i).getOperator() + "=" + filters.get(i).getValue());
 				logger.debug("    Adding param {}__{}={}", filters.get(i).getFilterParam(), filters.get(i).getOperator(), filters.get(i).getValue());
 			}
-			
-			//add filter relationship
-			if(filters.size() > 1) {
-				if(relation != null) {
-					urlStr = addURLParam(urlStr, "searchOperator=" + relation);
-					logger.debug("    Adding param searchOperator={}", relation);
-				}
-			}
+			filterCount = filters.size();
 		}
 		
-		if(from != null && to != null) {
-			urlStr = this.addURLParam(urlStr, "from=" + from + "&to=" + to);
-			logger.debug("    Adding param from={}&to={}", from, to);
+		if(keysetPaging && lastId != null) {
+			urlStr = addURLParam(urlStr, FEBFilterMetaColumns.LINE_ID.getValue() + "__" + FEBFilterOperator.GREATER_THAN + "=" + lastId);
+			logger.debug("    Adding param {}__{}={}", FEBFilterMetaColumns.LINE_ID.getValue(), FEBFilterOperator.GREATER_THAN, lastId);
+			filterCount++;
 		}
 		
-		if(sortBy != null) {
-			urlStr = this.addURLParam(urlStr, "sortBy=" + sortBy);
-			logger.debug("    Adding param sortBy={}", sortBy);
+		//add filter relationship
+		if(filterCount > 1) {
+			FEBFilterRelationship rel = relation;
+			if(keysetPaging) {
+				//the line ID condition has to apply to every record, so OR would change the result set
+				if(relation == FEBFilterRelationship.AT_LEAST_ONE_MATCHES && filters.size() > 1)
+					throw new IllegalStateException("Keyset paging cannot be used with the AT_LEAST_ONE_MATCHES relationship.");
+				rel = FEBFilterRelationship.ALL_MATCH;
+			}
+			if(rel != null) {
+				urlStr = addURLParam(urlStr, "searchOperator=" + rel);
+				logger.debug("    Adding param searchOperator={}", rel);
+			}
 		}
 		
-		if(order != null) {
-			urlStr = this.addURLParam(urlStr, "order=" + order);
-			logger.debug("    Adding param order={}", order);
+		if(keysetPaging) {
+			int size = pageSize == null ? 50 : pageSize;
+			urlStr = this.addURLParam(urlStr, "from=0&to=" + size + "&sortBy=" + FEBFilterMetaColumns.LINE_ID.getValue() + "&order=" + FEBFilterOrder.ASCENDING);
+			logger.debug("    Adding keyset params from=0&to={}&sortBy={}&order={}", size, FEBFilterMetaColumns.LINE_ID.getValue(), FEBFilterOrder.ASCENDING);
+		} else {
+			if(from != null && to != null) {
+				urlStr = this.addURLParam(urlStr, "from=" + from + "&to=" + to);
+				logger.debug("    Adding param from={}&to={}", from, to);
+			}
+			
+			if(sortBy != null) {
+				urlStr = this.addURLParam(urlStr, "sortBy=" + sortBy);
+				logger.debug("    Adding param sortBy={}", sortBy);
+			}
+			
+			if(order != null) {
+				urlStr = this.addURLParam(urlStr, "order=" + order);
+				logger.debug("    Adding param order={}", order);
+			}
 		}
 		
 		logger.debug("Returning formatted filter string = {}", urlStr);
@@ -0,0 +1,365 @@
+package com.hcl.feb.api;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scans all the records of a form by splitting it into disjoint partitions that are retrieved concurrently.  The records are
+ * exposed as a Spliterator, so a parallel stream processes each partition on its own thread while the pages themselves are
+ * retrieved on a pool of at most "workers" threads.
+ *
+ * <pre>
+ * {@code FEBFormScan scan = new FEBFormScan(febapi, appid, "F_Form1", filters, 8);
+ * scan.setPartitionMode(FEBScanPartitionMode.LINE_ID);
+ * scan.setPageSize(500);
+ * try(Stream<JSONObject> recs = scan.stream()) {
+ * 	recs.forEach(rec -> ...);
+ * } finally {
+ * 	scan.shutdown();
+ * }}
+ * </pre>
+ *
+ * Each partition retrieves its next page as soon as it starts consuming the current one.  Partitions are only split before
+ * their first page has been requested, which is how the stream framework uses a Spliterator.
+ *
+ * @author ChristopherDawes
+ * @see FEBScanPartitionMode
+ */
+public class FEBFormScan {
+
+	public static final int DEFAULT_PAGE_SIZE = 200;
+
+	private final FEBAPI api;
+	private final String appUid;
+	private final String formId;
+	private final FEBFilters filters;
+	private final int workers;
+	private final ThreadPoolExecutor pool;
+	private FEBScanPartitionMode partitionMode = FEBScanPartitionMode.OFFSET;
+	private int pageSize = DEFAULT_PAGE_SIZE;
+	private int maxPartitions;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBFormScan.class);
+
+	/**
+	 *
+	 * @param api - The FEBAPI used to list the records.
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param filters - The filters to apply to the scan.  May be null.  The from/to of the filters are ignored.
+	 * @param workers - The maximum number of pages retrieved at the same time.
+	 */
+	public FEBFormScan(FEBAPI api, String appUid, String formId, FEBFilters filters, int workers) {
+		if(workers < 1)
+			workers = 1;
+
+		this.api = api;
+		this.appUid = appUid;
+		this.formId = formId;
+		this.filters = filters == null ? new FEBFilters() : new FEBFilters(filters);
+		this.workers = workers;
+		this.maxPartitions = workers * 4;
+
+		this.pool = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new FEBAsyncAPIImpl.DaemonThreadFactory("feb-scan-"));
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	public void setPartitionMode(FEBScanPartitionMode partitionMode) {
+		this.partitionMode = partitionMode;
+	}
+
+	public FEBScanPartitionMode getPartitionMode() {
+		return partitionMode;
+	}
+
+	public void setPageSize(int pageSize) {
+		if(pageSize > 0)
+			this.pageSize = pageSize;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * The maximum number of partitions the form is split into.  Defaults to four times the number of workers.
+	 *
+	 * @param maxPartitions
+	 */
+	public void setMaxPartitions(int maxPartitions) {
+		if(maxPartitions > 0)
+			this.maxPartitions = maxPartitions;
+	}
+
+	public int getMaxPartitions() {
+		return maxPartitions;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * Returns a Spliterator over every record matching the filters.
+	 *
+	 * @return Spliterator
+	 * @throws FEBAPIException if the range of line IDs cannot be determined
+	 * @throws FEBAPIException if LINE_ID partitioning is used with more than one filter and the relationship is not ALL_MATCH
+	 */
+	public Spliterator<JSONObject> spliterator() throws FEBAPIException {
+		if(partitionMode == FEBScanPartitionMode.LINE_ID) {
+			if(filters.getFilterArray().size() > 1 && filters.getFilterRelationship() == FEBFilterRelationship.AT_LEAST_ONE_MATCHES)
+				throw new FEBAPIException("Partitioning by line ID requires the filters to use the ALL_MATCH relationship.");
+
+			Long min = findLineId(FEBFilterOrder.ASCENDING);
+			if(min == null)
+				return Spliterators.emptySpliterator();
+
+			Long max = findLineId(FEBFilterOrder.DESCENDING);
+			logger.debug("Scanning line IDs {} to {}", min, max);
+			return new LineIdPartition(min, max + 1, 1);
+		}
+
+		if(filters.getSortBy() == null) //paging by offset needs a stable order
+			filters.setSortBy(FEBFilterMetaColumns.LINE_ID.getValue());
+
+		return new OffsetPartition(0, 1);
+	}
+
+	/**
+	 * Returns a parallel stream of every record matching the filters.
+	 *
+	 * @return Stream
+	 * @throws FEBAPIException if the scan cannot be started
+	 */
+	public Stream<JSONObject> stream() throws FEBAPIException {
+		return StreamSupport.stream(spliterator(), true);
+	}
+
+	/**
+	 * Stops the worker threads.  Partitions that are still running will fail.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Returns the lowest or highest line ID matching the filters, or null if there are no records.
+	 */
+	private Long findLineId(FEBFilterOrder order) throws FEBAPIException {
+		FEBFilters f = new FEBFilters(filters);
+		f.setSortBy(FEBFilterMetaColumns.LINE_ID.getValue());
+		f.setFilterOrder(order);
+		f.setFrom(0);
+		f.setTo(1);
+
+		JSONArray items = fetchPage(f);
+		if(items.isEmpty())
+			return null;
+
+		return getLineId((JSONObject) items.get(0));
+	}
+
+	private JSONArray fetchPage(FEBFilters f) throws FEBAPIException {
+		FEBResponse r = api.listRecords(appUid, formId, f, FEBReturnFormat.JSON);
+
+		if(!r.isResponse20x())
+			throw new FEBAPIException("Failed to list records. Request returned HTTP " + r.responseCode + " (" + r.responseText + ")");
+
+		JSONArray items = null;
+		if(r.responseJSON != null)
+			items = (JSONArray) r.responseJSON.get("items");
+
+		return items == null ? new JSONArray() : items;
+	}
+
+	private static long getLineId(JSONObject rec) {
+		return ((Number) rec.get("id")).longValue();
+	}
+
+	/**
+	 * The common paging logic of a partition.  The next page is requested on the worker pool as soon as the current one arrives.
+	 */
+	private abstract class Partition implements Spliterator<JSONObject> {
+		private Iterator<?> page = null;
+		private Future<JSONArray> pending = null;
+		protected boolean started = false;
+		protected boolean exhausted = false;
+
+		/**
+		 * The filters for the next page of this partition.
+		 */
+		protected abstract FEBFilters nextPageFilters() throws FEBAPIException;
+
+		/**
+		 * Moves the partition past the page that was just received.
+		 */
+		protected abstract void advance(JSONArray items);
+
+		public boolean tryAdvance(Consumer<? super JSONObject> action) {
+			while(page == null || !page.hasNext()) {
+				if(exhausted && pending == null)
+					return false;
+
+				JSONArray items = takePage();
+				page = items.iterator();
+			}
+
+			action.accept((JSONObject) page.next());
+			return true;
+		}
+
+		private JSONArray takePage() {
+			started = true;
+			try {
+				if(pending == null)
+					pending = requestPage();
+
+				JSONArray items = pending.get();
+				pending = null;
+
+				advance(items);
+				if(items.size() < pageSize)
+					exhausted = true;
+				else
+					pending = requestPage();
+
+				return items;
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for records.", ie);
+			} catch(ExecutionException ee) {
+				exhausted = true;
+				pending = null;
+				throw new IllegalStateException(ee.getCause().getMessage(), ee.getCause());
+			} catch(FEBAPIException e) {
+				exhausted = true;
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+		}
+
+		private Future<JSONArray> requestPage() throws FEBAPIException {
+			final FEBFilters f = nextPageFilters();
+			return pool.submit(new Callable<JSONArray>() {
+				public JSONArray call() throws Exception {
+					return fetchPage(f);
+				}
+			});
+		}
+
+		public int characteristics() {
+			return NONNULL;
+		}
+	}
+
+	/**
+	 * Retrieves pages firstPage, firstPage + stride, firstPage + 2*stride, ... until a page is not full.  Splitting doubles
+	 * the stride and hands every other page to the new partition.
+	 */
+	private class OffsetPartition extends Partition {
+		private long nextPage;
+		private long stride;
+		private long estimate = Long.MAX_VALUE;
+
+		OffsetPartition(long firstPage, long stride) {
+			this.nextPage = firstPage;
+			this.stride = stride;
+		}
+
+		protected FEBFilters nextPageFilters() {
+			FEBFilters f = new FEBFilters(filters);
+			f.setFrom((int) (nextPage * pageSize));
+			f.setTo((int) ((nextPage + 1) * pageSize));
+			return f;
+		}
+
+		protected void advance(JSONArray items) {
+			nextPage += stride;
+		}
+
+		public Spliterator<JSONObject> trySplit() {
+			if(started || stride * 2 > maxPartitions)
+				return null;
+
+			OffsetPartition other = new OffsetPartition(nextPage + stride, stride * 2);
+			stride = stride * 2;
+			estimate = estimate >>> 1;
+			other.estimate = estimate;
+			return other;
+		}
+
+		public long estimateSize() {
+			return estimate;
+		}
+	}
+
+	/**
+	 * Retrieves the records with a line ID from lo (inclusive) to hi (exclusive) in line ID order, continuing each page after
+	 * the last line ID seen.  Splitting hands the lower half of the range to the new partition.  Like the stride of an
+	 * OffsetPartition, parts is the number of partitions the whole range would have if every partition split as often as this
+	 * one, and is kept to maxPartitions.
+	 */
+	private class LineIdPartition extends Partition {
+		private long lo;
+		private final long hi;
+		private long parts;
+
+		LineIdPartition(long lo, long hi, long parts) {
+			this.lo = lo;
+			this.hi = hi;
+			this.parts = parts;
+		}
+
+		protected FEBFilters nextPageFilters() throws FEBAPIException {
+			FEBFilters f = new FEBFilters(filters);
+			f.addFilter(FEBFilterMetaColumns.LINE_ID.getValue(), FEBFilterOperator.GREATER_THAN_OR_EQUAL_TO, Long.toString(lo));
+			f.addFilter(FEBFilterMetaColumns.LINE_ID.getValue(), FEBFilterOperator.LESS_THAN, Long.toString(hi));
+			f.setFilterRelationship(FEBFilterRelationship.ALL_MATCH);
+			f.setSortBy(FEBFilterMetaColumns.LINE_ID.getValue());
+			f.setFilterOrder(FEBFilterOrder.ASCENDING);
+			f.setFrom(0);
+			f.setTo(pageSize);
+			return f;
+		}
+
+		protected void advance(JSONArray items) {
+			if(!items.isEmpty())
+				lo = getLineId((JSONObject) items.get(items.size() - 1)) + 1;
+		}
+
+		public Spliterator<JSONObject> trySplit() {
+			if(started || hi - lo <= pageSize || parts * 2 > maxPartitions)
+				return null;
+
+			long mid = lo + (hi - lo) / 2;
+			parts = parts * 2;
+			LineIdPartition other = new LineIdPartition(lo, mid, parts);
+			lo = mid;
+			return other;
+		}
+
+		public long estimateSize() {
+			return hi - lo;
+		}
+
+		public int characteristics() {
+			return NONNULL | ORDERED;
+		}
+	}
+}
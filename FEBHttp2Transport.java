@@ -0,0 +1,609 @@
+package com.hcl.feb.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link FEBTransport} that sends requests with the JDK's java.net.http.HttpClient so that concurrent requests to the same
+ * server are multiplexed as HTTP/2 streams over a single connection, instead of each one holding its own HTTP/1.1 socket.
+ * HTTP/2 is negotiated during the TLS handshake, a server that does not offer it is spoken to over HTTP/1.1 without any change
+ * for the caller.
+ *
+ * <pre>
+ * {@code FEBAPIImpl febapi = new FEBAPIImpl(host, context, ignoreSSL, protocol, user, pwd, freedomIdentifyKey, true);}
+ * </pre>
+ *
+ * The connections returned are adapters over the HttpClient exchange, so FEBAPIImpl uses them as it would any HttpURLConnection.
+ * Request bodies are streamed to the server as they are written.  The TLS settings are those of the FEBAPIImpl the transport is
+ * set on, see {@link FEBAPIImpl#setTLSConfig(FEBTLSConfig)}.
+ *
+ * Plain http URLs are sent as HTTP/1.1 unless cleartext upgrade is turned on, since an "Upgrade: h2c" header confuses some proxies.
+ *
+ * The transport is also a {@link FEBAsyncTransport}: sendAsync hands the request to the HttpClient and returns at once, so
+ * FEBAsyncAPIImpl can keep many requests in flight on the HttpClient's own selector thread.
+ *
+ * Note: Requires Java 11 or later.  This is the only class in the API that does, FEBAPIImpl loads it by name so the rest of the
+ * API can be built for Java 8 with this file left out.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBHttp2Transport implements FEBAsyncTransport {
+
+	public static final long DEFAULT_CONNECT_TIMEOUT = 30000;
+
+	//headers the HttpClient sets itself and refuses from the caller
+	private static final Set<String> RESTRICTED_HEADERS = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+	static {
+		RESTRICTED_HEADERS.addAll(Arrays.asList("Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+	}
+
+	private volatile FEBTLSConfig tlsConfig;
+	private long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private long requestTimeout = 0;
+	private boolean cleartextUpgrade = false;
+	private volatile boolean shutdown = false;
+
+	private HttpClient client = null;
+	private final ExecutorService executor = Executors.newCachedThreadPool(new FEBAsyncAPIImpl.DaemonThreadFactory("feb-http2-"));
+
+	private final Logger logger = LoggerFactory.getLogger(FEBHttp2Transport.class);
+
+	public FEBHttp2Transport() {
+		this(new FEBTLSConfig());
+	}
+
+	/**
+	 *
+	 * @param tlsConfig - The TLS settings for https URLs.
+	 */
+	public FEBHttp2Transport(FEBTLSConfig tlsConfig) {
+		this.tlsConfig = tlsConfig == null ? new FEBTLSConfig() : tlsConfig;
+	}
+
+	public HttpURLConnection openConnection(URL url) throws IOException {
+		if(shutdown)
+			throw new IOException("The transport has been shut down.");
+
+		return new Http2Connection(url, this);
+	}
+
+	public CompletableFuture<HttpURLConnection> sendAsync(HttpURLConnection conn, byte[] body) {
+		try {
+			if(shutdown)
+				throw new IOException("The transport has been shut down.");
+			if(!(conn instanceof Http2Connection))
+				throw new IOException("The connection was not opened by this transport.");
+			return ((Http2Connection) conn).sendBuffered(body);
+		} catch(IOException ioe) {
+			return CompletableFuture.failedFuture(ioe);
+		}
+	}
+
+	public void releaseConnection(HttpURLConnection conn, boolean reusable) {
+		if(conn == null)
+			return;
+
+		if(reusable && !shutdown) {
+			//closing the response stream ends the stream, the connection stays open for other requests
+			try {
+				InputStream is = null;
+				try {
+					is = conn.getResponseCode() >= 400 ? conn.getErrorStream() : conn.getInputStream();
+				} catch(IOException ioe) {
+					is = conn.getErrorStream();
+				}
+				if(is != null)
+					is.close();
+			} catch(IOException ioe) {
+				logger.debug("Failed to close the response, cancelling it. {}", ioe.getMessage());
+				conn.disconnect();
+			}
+		} else {
+			conn.disconnect();
+		}
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Returns the HttpClient, building it on first use.
+	 *
+	 * @return HttpClient
+	 * @throws IOException if the TLS settings are invalid
+	 */
+	synchronized HttpClient getClient() throws IOException {
+		if(client == null) {
+			HttpClient.Builder b = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_2)
+					.followRedirects(HttpClient.Redirect.NORMAL)
+					.executor(executor);
+			if(connectTimeout > 0)
+				b.connectTimeout(Duration.ofMillis(connectTimeout));
+			try {
+				b.sslContext(tlsConfig.getSSLContext());
+			} catch(FEBAPIException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+			client = b.build();
+			logger.debug("Created HTTP/2 client, connectTimeout = {}", connectTimeout);
+		}
+		return client;
+	}
+
+	public FEBTLSConfig getTLSConfig() {
+		return tlsConfig;
+	}
+
+	/**
+	 * Sets the TLS settings for https URLs.  FEBAPIImpl sets its own settings on the transport, so this is only needed when the
+	 * transport is used on its own.
+	 *
+	 * @param tlsConfig
+	 */
+	public synchronized void setTLSConfig(FEBTLSConfig tlsConfig) {
+		if(tlsConfig == null || tlsConfig == this.tlsConfig)
+			return;
+		this.tlsConfig = tlsConfig;
+		client = null;
+	}
+
+	public long getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public synchronized void setConnectTimeout(long connectTimeout) {
+		this.connectTimeout = connectTimeout;
+		client = null;
+	}
+
+	/**
+	 * How long to wait for the response headers of a request, in milliseconds.  0, the default, waits indefinitely.
+	 *
+	 * @return long
+	 */
+	public long getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	public void setRequestTimeout(long requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+
+	public boolean isCleartextUpgrade() {
+		return cleartextUpgrade;
+	}
+
+	/**
+	 * true to also try HTTP/2 on plain http URLs, using the "Upgrade: h2c" header.  Defaults to false.
+	 *
+	 * @param cleartextUpgrade
+	 */
+	public void setCleartextUpgrade(boolean cleartextUpgrade) {
+		this.cleartextUpgrade = cleartextUpgrade;
+	}
+
+	/**
+	 * An HttpURLConnection over a single HttpClient exchange.  The request is sent when the body is opened, or when the response
+	 * is first asked for if there is no body.
+	 */
+	static class Http2Connection extends HttpURLConnection {
+
+		//collects the whole response body, so that reading it from the connection does not block
+		private static final HttpResponse.BodyHandler<InputStream> BUFFERED = info -> HttpResponse.BodySubscribers.mapping(
+				HttpResponse.BodySubscribers.ofByteArray(), b -> (InputStream) new ByteArrayInputStream(b));
+
+		private final FEBHttp2Transport transport;
+		private BodyPipe body = null;
+		private CompletableFuture<HttpResponse<InputStream>> future = null;
+		private HttpResponse<InputStream> response = null;
+		private List<String> headerKeys = null;
+		private List<String> headerValues = null;
+
+		Http2Connection(URL url, FEBHttp2Transport transport) {
+			super(url);
+			this.transport = transport;
+		}
+
+		@Override
+		public void connect() throws IOException {
+			//nothing to do, the exchange starts with the request body or the response
+		}
+
+		@Override
+		public synchronized OutputStream getOutputStream() throws IOException {
+			if(body != null)
+				return body.out;
+			if(future != null)
+				throw new IOException("Cannot write the request body after the response has been read.");
+
+			body = new BodyPipe();
+			long length = fixedContentLengthLong != -1 ? fixedContentLengthLong : fixedContentLength;
+			HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.ofInputStream(body::open);
+			if(length >= 0)
+				publisher = HttpRequest.BodyPublishers.fromPublisher(publisher, length);
+			send(publisher, HttpResponse.BodyHandlers.ofInputStream());
+			body.future = future;
+			return body.out;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			HttpResponse<InputStream> r = response();
+			if(r.statusCode() >= 400) {
+				String msg = "Server returned HTTP response code: " + r.statusCode() + " for URL: " + url;
+				if(r.statusCode() == 404 || r.statusCode() == 410)
+					throw new FileNotFoundException(msg);
+				throw new IOException(msg);
+			}
+			return r.body();
+		}
+
+		@Override
+		public InputStream getErrorStream() {
+			HttpResponse<InputStream> r;
+			synchronized(this) {
+				r = response;
+			}
+			return r != null && r.statusCode() >= 400 ? r.body() : null;
+		}
+
+		@Override
+		public int getResponseCode() throws IOException {
+			return response().statusCode();
+		}
+
+		@Override
+		public String getResponseMessage() throws IOException {
+			//HTTP/2 has no reason phrase, use the standard one
+			return reasonPhrase(response().statusCode());
+		}
+
+		@Override
+		public String getHeaderField(String name) {
+			HttpResponse<InputStream> r = responseQuietly();
+			return r == null || name == null ? null : r.headers().firstValue(name).orElse(null);
+		}
+
+		@Override
+		public Map<String,List<String>> getHeaderFields() {
+			HttpResponse<InputStream> r = responseQuietly();
+			if(r == null)
+				return Collections.emptyMap();
+			Map<String,List<String>> m = new TreeMap<String,List<String>>(String.CASE_INSENSITIVE_ORDER);
+			m.putAll(r.headers().map());
+			return Collections.unmodifiableMap(m);
+		}
+
+		@Override
+		public String getHeaderFieldKey(int n) {
+			return headerLists() && n > 0 && n < headerKeys.size() ? headerKeys.get(n) : null;
+		}
+
+		@Override
+		public String getHeaderField(int n) {
+			return headerLists() && n >= 0 && n < headerValues.size() ? headerValues.get(n) : null;
+		}
+
+		@Override
+		public void disconnect() {
+			CompletableFuture<HttpResponse<InputStream>> f;
+			HttpResponse<InputStream> r;
+			synchronized(this) {
+				f = future;
+				r = response;
+			}
+			if(r != null) {
+				try {
+					r.body().close();
+				} catch(IOException ioe) {
+					//closing cancels the stream, nothing else to do
+				}
+			} else if(f != null) {
+				f.cancel(true);
+			}
+			if(body != null)
+				body.abort();
+		}
+
+		@Override
+		public boolean usingProxy() {
+			return false;
+		}
+
+		/**
+		 * The HTTP version the response was received with, or null if there is no response yet.
+		 *
+		 * @return HttpClient.Version
+		 */
+		public HttpClient.Version getVersion() {
+			HttpResponse<InputStream> r = responseQuietly();
+			return r == null ? null : r.version();
+		}
+
+		/**
+		 * Sends the request with its complete body.  The future completes with this connection once the whole response has
+		 * been received.
+		 *
+		 * @param body - The request body, or null.
+		 * @return CompletableFuture
+		 * @throws IOException if the request has already been sent
+		 */
+		synchronized CompletableFuture<HttpURLConnection> sendBuffered(byte[] body) throws IOException {
+			if(future != null || this.body != null)
+				throw new IOException("The request has already been sent.");
+
+			send(body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body), BUFFERED);
+			return future.thenApply(r -> {
+				synchronized(this) {
+					response = r;
+				}
+				return (HttpURLConnection) this;
+			});
+		}
+
+		private synchronized void send(HttpRequest.BodyPublisher publisher, HttpResponse.BodyHandler<InputStream> handler) throws IOException {
+			HttpRequest.Builder b;
+			try {
+				b = HttpRequest.newBuilder(url.toURI());
+			} catch(URISyntaxException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+			if("http".equalsIgnoreCase(url.getProtocol()) && !transport.isCleartextUpgrade())
+				b.version(HttpClient.Version.HTTP_1_1);
+			if(transport.getRequestTimeout() > 0)
+				b.timeout(Duration.ofMillis(transport.getRequestTimeout()));
+
+			for(Map.Entry<String,List<String>> h : getRequestProperties().entrySet()) {
+				if(h.getKey() == null || RESTRICTED_HEADERS.contains(h.getKey()))
+					continue;
+				for(String v : h.getValue())
+					b.header(h.getKey(), v);
+			}
+			b.method(method, publisher);
+
+			connected = true;
+			future = transport.getClient().sendAsync(b.build(), handler);
+		}
+
+		private HttpResponse<InputStream> response() throws IOException {
+			CompletableFuture<HttpResponse<InputStream>> f;
+			synchronized(this) {
+				if(response != null)
+					return response;
+				if(future == null)
+					send(HttpRequest.BodyPublishers.noBody(), HttpResponse.BodyHandlers.ofInputStream());
+				f = future;
+			}
+
+			//the body is complete once the response is asked for
+			if(body != null) {
+				try {
+					body.out.close();
+				} catch(IOException ioe) {
+					//the exchange has already failed, the cause is reported below
+				}
+			}
+
+			try {
+				HttpResponse<InputStream> r = f.get();
+				synchronized(this) {
+					response = r;
+				}
+				return r;
+			} catch(InterruptedException ie) {
+				f.cancel(true);
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the response.");
+			} catch(ExecutionException ee) {
+				Throwable cause = ee.getCause();
+				if(cause instanceof IOException)
+					throw new IOException(cause.getMessage(), cause);
+				throw new IOException(cause == null ? ee.getMessage() : cause.toString(), cause);
+			} catch(CancellationException ce) {
+				throw new IOException("The request was cancelled.", ce);
+			}
+		}
+
+		private HttpResponse<InputStream> responseQuietly() {
+			try {
+				return response();
+			} catch(IOException ioe) {
+				return null;
+			}
+		}
+
+		private synchronized boolean headerLists() {
+			if(headerKeys == null) {
+				HttpResponse<InputStream> r = responseQuietly();
+				if(r == null)
+					return false;
+				//index 0 is the status line, as with HttpURLConnection
+				headerKeys = new ArrayList<String>();
+				headerValues = new ArrayList<String>();
+				headerKeys.add(null);
+				headerValues.add((r.version() == HttpClient.Version.HTTP_2 ? "HTTP/2 " : "HTTP/1.1 ") + r.statusCode());
+				for(Map.Entry<String,List<String>> h : r.headers().map().entrySet()) {
+					for(String v : h.getValue()) {
+						headerKeys.add(h.getKey());
+						headerValues.add(v);
+					}
+				}
+			}
+			return true;
+		}
+	}
+
+	static String reasonPhrase(int code) {
+		switch(code) {
+			case 200: return "OK";
+			case 201: return "Created";
+			case 202: return "Accepted";
+			case 204: return "No Content";
+			case 301: return "Moved Permanently";
+			case 302: return "Found";
+			case 304: return "Not Modified";
+			case 400: return "Bad Request";
+			case 401: return "Unauthorized";
+			case 403: return "Forbidden";
+			case 404: return "Not Found";
+			case 405: return "Method Not Allowed";
+			case 409: return "Conflict";
+			case 413: return "Payload Too Large";
+			case 415: return "Unsupported Media Type";
+			case 429: return "Too Many Requests";
+			case 500: return "Internal Server Error";
+			case 502: return "Bad Gateway";
+			case 503: return "Service Unavailable";
+			case 504: return "Gateway Timeout";
+			default: return "";
+		}
+	}
+
+	/**
+	 * Hands the request body from the writing thread to the HttpClient in chunks.  The writer waits while the client is behind,
+	 * and fails if the exchange ends before the body has been sent.  The body can only be read once, so the client cannot resend
+	 * it on a redirect or retry.
+	 */
+	static class BodyPipe {
+
+		private static final byte[] EOF = new byte[0];
+		private static final byte[] ABORTED = new byte[0];
+		private static final long POLL_MILLIS = 100;
+
+		private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(16);
+		private volatile CompletableFuture<?> future = null;
+		private volatile boolean aborted = false;
+		private boolean opened = false;
+
+		final OutputStream out = new OutputStream() {
+			private boolean closed = false;
+
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] {(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if(closed)
+					throw new IOException("The request body has been closed.");
+				if(len > 0)
+					put(Arrays.copyOfRange(b, off, off + len));
+			}
+
+			@Override
+			public void close() throws IOException {
+				if(closed)
+					return;
+				closed = true;
+				put(EOF);
+			}
+		};
+
+		final InputStream in = new InputStream() {
+			private byte[] chunk = null;
+			private int pos = 0;
+
+			@Override
+			public int read() throws IOException {
+				byte[] one = new byte[1];
+				int n = read(one, 0, 1);
+				return n == -1 ? -1 : one[0] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if(len == 0)
+					return 0;
+				if(chunk == EOF)
+					return -1;
+				if(chunk == null || pos >= chunk.length) {
+					chunk = null;
+					try {
+						while(chunk == null) {
+							if(aborted)
+								throw new IOException("The request was aborted before the body was sent.");
+							chunk = chunks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+						}
+					} catch(InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while reading the request body.");
+					}
+					pos = 0;
+					if(chunk == ABORTED)
+						throw new IOException("The request was aborted before the body was sent.");
+					if(chunk == EOF)
+						return -1;
+				}
+				int n = Math.min(len, chunk.length - pos);
+				System.arraycopy(chunk, pos, b, off, n);
+				pos += n;
+				return n;
+			}
+		};
+
+		private void put(byte[] chunk) throws IOException {
+			try {
+				while(!chunks.offer(chunk, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					CompletableFuture<?> f = future;
+					if(aborted || (f != null && f.isDone()))
+						throw new IOException("The request ended before the body was sent.");
+				}
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while writing the request body.");
+			}
+		}
+
+		/**
+		 * The body for the HttpClient to send.  Throws if it is asked for again, the chunks already sent cannot be replayed.
+		 */
+		synchronized InputStream open() {
+			if(opened)
+				throw new IllegalStateException("The request body has already been sent and cannot be sent again.");
+			opened = true;
+			return in;
+		}
+
+		void abort() {
+			aborted = true;
+			chunks.clear();
+			//wakes a reader waiting for the next chunk
+			chunks.offer(ABORTED);
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package com.hcl.feb.api;
+
+/**
+ * The file formats read by {@link FEBRecordLoader}.
+ *
+ * NDJSON	- One JSON object per line, keyed by field ID.
+ * CSV		- Comma separated values.  The first line names the column of each field, either by field ID or by the field's label
+ * 			  in the form metadata.  Quoted values may contain commas and doubled quotes but not line breaks.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public enum FEBLoadFormat {
+	NDJSON, CSV;
+}
@@ -0,0 +1,25 @@
+package com.hcl.feb.api;
+
+/**
+ * The outcome of a {@link FEBRecordLoader} run.  The object contains:
+ *
+ * long submitted		- The number of records submitted during this run.
+ * long succeeded		- The number of records created.
+ * long failed			- The number of records that were rejected by the server or could not be parsed.
+ * long skipped			- The number of records already loaded by a previous run, according to the checkpoint.
+ * long elapsedMillis	- How long the run took.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBLoadResult {
+	public long submitted;
+	public long succeeded;
+	public long failed;
+	public long skipped;
+	public long elapsedMillis;
+
+	public String toString() {
+		return "submitted=" + submitted + ", succeeded=" + succeeded + ", failed=" + failed + ", skipped=" + skipped + ", elapsedMillis=" + elapsedMillis;
+	}
+}
@@ -0,0 +1,15 @@
+package com.hcl.feb.api;
+
+/**
+ * The classes of request FEBAPIImpl sends, used to configure how each class is retried.
+ *
+ * READ		- Retrieves records, metadata, attachments and feeds.
+ * WRITE	- Submits, updates and deletes records and uploads attachments.
+ * ADMIN	- Imports, exports, deletes, starts and stops applications.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public enum FEBOperationType {
+	READ, WRITE, ADMIN;
+}
@@ -0,0 +1,123 @@
+package com.hcl.feb.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the page size for a scan from how long the previous pages took and how big they were.  The page size grows while
+ * pages come back faster than the target latency and under the memory budget, and shrinks when either is exceeded, always
+ * staying between the minimum and maximum.
+ *
+ * <pre>
+ * {@code FEBPageSizer sizer = new FEBPageSizer(100, 10000, 500, 2000, 8 * 1024 * 1024);
+ * FEBRecordStream recs = new FEBRecordStream(febapi, appid, "F_Form1", filters, 2, sizer);}
+ * </pre>
+ *
+ * The cost of a record is tracked as a moving average of the time and bytes per record, and the page size moves towards the
+ * number of records that fit both the target latency and the budget, at most doubling or halving per page.  A sizer can be
+ * shared by several scans of the same form.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBPageSizer {
+
+	public static final int DEFAULT_MIN_PAGE_SIZE = 50;
+	public static final int DEFAULT_MAX_PAGE_SIZE = 5000;
+	public static final long DEFAULT_TARGET_LATENCY = 2000;
+	public static final long DEFAULT_MAX_PAGE_BYTES = 16 * 1024 * 1024;
+
+	//weight of the newest page in the moving averages
+	private static final double SMOOTHING = 0.3;
+
+	private final int minPageSize;
+	private final int maxPageSize;
+	private final long targetLatency;
+	private final long maxPageBytes;
+
+	private int pageSize;
+	private double millisPerRecord = -1;
+	private double bytesPerRecord = -1;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBPageSizer.class);
+
+	public FEBPageSizer() {
+		this(DEFAULT_MIN_PAGE_SIZE, DEFAULT_MAX_PAGE_SIZE, DEFAULT_MIN_PAGE_SIZE, DEFAULT_TARGET_LATENCY, DEFAULT_MAX_PAGE_BYTES);
+	}
+
+	/**
+	 *
+	 * @param minPageSize - The smallest page size that will be used.
+	 * @param maxPageSize - The largest page size that will be used.
+	 * @param initialPageSize - The page size of the first page.
+	 * @param targetLatency - The time each page should take to retrieve, in milliseconds.
+	 * @param maxPageBytes - The largest response a page should produce, in bytes.
+	 */
+	public FEBPageSizer(int minPageSize, int maxPageSize, int initialPageSize, long targetLatency, long maxPageBytes) {
+		if(minPageSize < 1)
+			minPageSize = 1;
+		if(maxPageSize < minPageSize)
+			maxPageSize = minPageSize;
+
+		this.minPageSize = minPageSize;
+		this.maxPageSize = maxPageSize;
+		this.targetLatency = targetLatency > 0 ? targetLatency : DEFAULT_TARGET_LATENCY;
+		this.maxPageBytes = maxPageBytes > 0 ? maxPageBytes : DEFAULT_MAX_PAGE_BYTES;
+		this.pageSize = clamp(initialPageSize);
+	}
+
+	/**
+	 * The page size to use for the next page.
+	 *
+	 * @return int
+	 */
+	public synchronized int getPageSize() {
+		return pageSize;
+	}
+
+	public int getMinPageSize() {
+		return minPageSize;
+	}
+
+	public int getMaxPageSize() {
+		return maxPageSize;
+	}
+
+	/**
+	 * Adjusts the page size from a page that was retrieved.
+	 *
+	 * @param records - The number of records on the page.
+	 * @param elapsedMillis - How long the page took to retrieve and parse.
+	 * @param bytes - The size of the response, or -1 if it is not known.
+	 */
+	public synchronized void record(int records, long elapsedMillis, long bytes) {
+		if(records <= 0)
+			return;
+
+		millisPerRecord = average(millisPerRecord, (double) Math.max(elapsedMillis, 1) / records);
+		if(bytes >= 0)
+			bytesPerRecord = average(bytesPerRecord, (double) bytes / records);
+
+		double fit = targetLatency / millisPerRecord;
+		if(bytesPerRecord > 0)
+			fit = Math.min(fit, maxPageBytes / bytesPerRecord);
+
+		//move at most a factor of 2 per page so one slow page does not collapse the size
+		long next = (long) fit;
+		next = Math.max(next, pageSize / 2);
+		next = Math.min(next, (long) pageSize * 2);
+
+		int old = pageSize;
+		pageSize = clamp(next);
+		if(pageSize != old)
+			logger.debug("Page of {} records took {}ms ({} bytes), page size {} -> {}", records, elapsedMillis, bytes, old, pageSize);
+	}
+
+	private static double average(double current, double sample) {
+		return current < 0 ? sample : current + SMOOTHING * (sample - current);
+	}
+
+	private int clamp(long size) {
+		return (int) Math.max(minPageSize, Math.min(maxPageSize, size));
+	}
+}
@@ -0,0 +1,222 @@
+package com.hcl.feb.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The default {@link FEBTransport}.  Caps the number of connections in use at once and releases each one so that its socket
+ * can be reused by the next request to the same FEB server, instead of paying for a new TCP and TLS handshake each time.
+ *
+ * The number of connections is capped in two ways:
+ *
+ * maxConnectionsPerHost	- The number of connections that may be in use against a single host at once.
+ * maxConnections			- The number of connections that may be in use across all hosts at once.
+ *
+ * A caller that asks for a connection while the cap is reached waits up to acquireTimeout milliseconds for one to be released.
+ *
+ * Note: This class does not hold idle sockets itself.  They are kept by the JVM's HttpURLConnection keep-alive cache, which is
+ * shared by every HTTP client in the JVM.  It is configured through the http.keepAlive and http.maxConnections system properties,
+ * which the transport leaves alone unless applyKeepAliveProperties() is called.  By default the JVM keeps up to 5 idle sockets per
+ * host and closes them after the time given in the server's Keep-Alive header, or 5 seconds if there is none.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBPooledTransport implements FEBTransport {
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 10;
+	public static final int DEFAULT_MAX_CONNECTIONS = 50;
+	public static final long DEFAULT_ACQUIRE_TIMEOUT = 60000;
+
+	private int maxConnectionsPerHost;
+	private int maxConnections;
+	private long acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+	private int connectTimeout = 0;
+	private int readTimeout = 0;
+	private volatile boolean shutdown = false;
+
+	private final Semaphore totalPermits;
+	private final ConcurrentHashMap<String,Semaphore> hostPermits = new ConcurrentHashMap<String,Semaphore>();
+	private final ConcurrentHashMap<HttpURLConnection,Semaphore> leases = new ConcurrentHashMap<HttpURLConnection,Semaphore>();
+
+	private final Logger logger = LoggerFactory.getLogger(FEBPooledTransport.class);
+
+	public FEBPooledTransport() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 *
+	 * @param maxConnectionsPerHost - The maximum number of connections in use against a single host.
+	 * @param maxConnections - The maximum number of connections in use across all hosts.
+	 */
+	public FEBPooledTransport(int maxConnectionsPerHost, int maxConnections) {
+		if(maxConnectionsPerHost < 1)
+			maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+		if(maxConnections < maxConnectionsPerHost)
+			maxConnections = maxConnectionsPerHost;
+
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.maxConnections = maxConnections;
+		this.totalPermits = new Semaphore(maxConnections, true);
+
+		logger.debug("Created pooled transport, maxConnectionsPerHost = {}, maxConnections = {}", maxConnectionsPerHost, maxConnections);
+	}
+
+	public HttpURLConnection openConnection(URL url) throws IOException {
+		if(shutdown)
+			throw new IOException("The transport has been shut down.");
+
+		Semaphore hostSem = getHostPermits(url);
+		acquire(totalPermits, "Timed out waiting for a connection, all " + maxConnections + " connections are in use.");
+		try {
+			acquire(hostSem, "Timed out waiting for a connection to " + url.getHost() + ", all " + maxConnectionsPerHost + " connections are in use.");
+		} catch(IOException ioe) {
+			totalPermits.release();
+			throw ioe;
+		}
+
+		HttpURLConnection conn = null;
+		try {
+			conn = (HttpURLConnection) url.openConnection();
+			conn.setConnectTimeout(connectTimeout);
+			conn.setReadTimeout(readTimeout);
+			leases.put(conn, hostSem);
+		} finally {
+			if(conn == null) {
+				hostSem.release();
+				totalPermits.release();
+			}
+		}
+
+		return conn;
+	}
+
+	public void releaseConnection(HttpURLConnection conn, boolean reusable) {
+		if(conn == null)
+			return;
+
+		Semaphore hostSem = leases.remove(conn);
+		if(hostSem == null) //already released
+			return;
+
+		try {
+			if(reusable && !shutdown) {
+				//closing the response stream hands the socket back to the keep-alive cache
+				InputStream is = null;
+				try {
+					is = conn.getResponseCode() >= 400 ? conn.getErrorStream() : conn.getInputStream();
+				} catch(IOException ioe) {
+					is = conn.getErrorStream();
+				}
+				if(is != null)
+					is.close();
+			} else {
+				conn.disconnect();
+			}
+		} catch(IOException ioe) {
+			logger.debug("Failed to return connection to the pool, closing it. {}", ioe.getMessage());
+			conn.disconnect();
+		} finally {
+			hostSem.release();
+			totalPermits.release();
+		}
+	}
+
+	/**
+	 * Sizes the JVM's keep-alive cache to match this transport: http.keepAlive is turned on and http.maxConnections is set to
+	 * maxConnectionsPerHost, so that a socket can be kept for every connection allowed per host.  A property that has already been
+	 * set is left as it is.
+	 *
+	 * These are JVM-wide settings that affect every HttpURLConnection, not just the ones opened by this transport.  They are read
+	 * once, when the JVM makes its first HTTP connection, so this should be called at start up.
+	 */
+	public void applyKeepAliveProperties() {
+		setDefaultProperty("http.keepAlive", "true");
+		setDefaultProperty("http.maxConnections", Integer.toString(maxConnectionsPerHost));
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		for(HttpURLConnection conn : leases.keySet()) {
+			releaseConnection(conn, false);
+		}
+	}
+
+	private Semaphore getHostPermits(URL url) {
+		int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		String key = url.getProtocol() + "://" + url.getHost() + ":" + port;
+
+		Semaphore s = hostPermits.get(key);
+		if(s == null) {
+			Semaphore newSem = new Semaphore(maxConnectionsPerHost, true);
+			s = hostPermits.putIfAbsent(key, newSem);
+			if(s == null)
+				s = newSem;
+		}
+		return s;
+	}
+
+	private void acquire(Semaphore s, String timeoutMessage) throws IOException {
+		try {
+			if(!s.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS))
+				throw new IOException(timeoutMessage);
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a connection.", ie);
+		}
+	}
+
+	private void setDefaultProperty(String key, String value) {
+		if(System.getProperty(key) == null)
+			System.setProperty(key, value);
+	}
+
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * The number of connections currently in use.
+	 * @return int
+	 */
+	public int getLeasedCount() {
+		return leases.size();
+	}
+
+	public long getAcquireTimeout() {
+		return acquireTimeout;
+	}
+
+	public void setAcquireTimeout(long acquireTimeout) {
+		this.acquireTimeout = acquireTimeout;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+}
@@ -0,0 +1,94 @@
+package com.hcl.feb.api;
+
+/**
+ * A token bucket that limits how many requests FEBAPIImpl sends per second.  The bucket holds up to burst tokens and is
+ * refilled at requestsPerSecond; each request takes a token and waits for one if the bucket is empty.
+ *
+ * <pre>
+ * {@code //at most 20 writes a second to each host, with bursts of up to 40
+ * febapi.setRateLimit(FEBOperationType.WRITE, 20, 40);}
+ * </pre>
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBRateLimiter {
+
+	private final double requestsPerSecond;
+	private final int burst;
+
+	private double tokens;
+	private long refilledAt;
+
+	/**
+	 *
+	 * @param requestsPerSecond - The sustained rate.
+	 * @param burst - The number of requests that can be sent at once after a quiet period.  At least 1.
+	 */
+	public FEBRateLimiter(double requestsPerSecond, int burst) {
+		if(requestsPerSecond <= 0)
+			throw new IllegalArgumentException("requestsPerSecond must be greater than 0");
+
+		this.requestsPerSecond = requestsPerSecond;
+		this.burst = Math.max(1, burst);
+		this.tokens = this.burst;
+		this.refilledAt = System.nanoTime();
+	}
+
+	public double getRequestsPerSecond() {
+		return requestsPerSecond;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * Takes a token, waiting until one is available.
+	 *
+	 * @throws FEBAPIException if interrupted while waiting
+	 */
+	public void acquire() throws FEBAPIException {
+		long wait = reserve();
+		if(wait > 0) {
+			try {
+				Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new FEBAPIException("Interrupted while waiting for the rate limit.", ie);
+			}
+		}
+	}
+
+	/**
+	 * Takes a token without waiting for it.  The caller must not send the request until the time returned has passed, which
+	 * lets an asynchronous caller schedule the request instead of blocking a thread.
+	 *
+	 * @return the number of nanoseconds to wait before the token may be used, 0 if it may be used now
+	 */
+	public synchronized long reserve() {
+		refill();
+		//the token is taken now, callers behind this one wait for the tokens after it
+		tokens -= 1;
+		return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / requestsPerSecond * 1000000000L);
+	}
+
+	/**
+	 * Takes a token if one is available now.
+	 *
+	 * @return true if a token was taken
+	 */
+	public synchronized boolean tryAcquire() {
+		refill();
+		if(tokens < 1)
+			return false;
+		tokens -= 1;
+		return true;
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		tokens = Math.min(burst, tokens + (now - refilledAt) * requestsPerSecond / 1000000000L);
+		refilledAt = now;
+	}
+}
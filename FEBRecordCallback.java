@@ -0,0 +1,31 @@
+package com.hcl.feb.api;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Receives the records of a listRecordsToCallback or retrieveRecordToCallback request one at a time, as they are parsed from
+ * the response.  The record is not referenced by the API once onRecord returns, so it can be garbage collected as soon as
+ * the callback is done with it.
+ *
+ * <pre>
+ * {@code FEBResponse r = febapi.listRecordsToCallback(appid, "F_Form1", filters, new FEBRecordCallback() {
+ * 	public boolean onRecord(JSONObject rec) {
+ * 		writer.write(rec.get("uid") + "," + rec.get("F_FirstName"));
+ * 		return true;
+ * 	}
+ * });}
+ * </pre>
+ *
+ * @author ChristopherDawes
+ *
+ */
+public interface FEBRecordCallback {
+
+	/**
+	 * Called for each record in the response.
+	 *
+	 * @param record - A single record, as it appears in the "items" array of the response.
+	 * @return true to continue with the next record, false to stop reading the response.
+	 */
+	public boolean onRecord(JSONObject record);
+}
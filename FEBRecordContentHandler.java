@@ -0,0 +1,132 @@
+package com.hcl.feb.api;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Parses a FEB record list response as a stream of events, building one record at a time and handing each to a
+ * {@link FEBRecordCallback}.  Everything outside of the "items" array (recordCount, formId, etc.) is collected in the
+ * header object.
+ *
+ * @author ChristopherDawes
+ *
+ */
+class FEBRecordContentHandler implements ContentHandler {
+
+	private static final String ITEMS = "items";
+
+	private final FEBRecordCallback callback;
+	private final JSONObject header = new JSONObject();
+	private final JSONArray itemsMarker = new JSONArray(); //stands in for the items array, records are never added to it
+	private final LinkedList<Object> containers = new LinkedList<Object>();
+	private final LinkedList<String> keys = new LinkedList<String>();
+	private int recordCount = 0;
+	private boolean stopped = false;
+
+	FEBRecordContentHandler(FEBRecordCallback callback) {
+		this.callback = callback;
+	}
+
+	public JSONObject getHeader() {
+		return header;
+	}
+
+	/**
+	 * The number of records passed to the callback.
+	 * @return int
+	 */
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * True if the callback asked to stop before the end of the response.
+	 * @return boolean
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	public void startJSON() throws ParseException, IOException {
+		containers.clear();
+		keys.clear();
+	}
+
+	public void endJSON() throws ParseException, IOException {
+	}
+
+	public boolean startObject() throws ParseException, IOException {
+		containers.push(containers.isEmpty() ? header : new JSONObject());
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	public boolean endObject() throws ParseException, IOException {
+		Object obj = containers.pop();
+
+		if(containers.peek() == itemsMarker) {
+			JSONObject rec = (JSONObject) obj;
+
+			//normalize the record's id to an integer.  populateFEBResponse only does this for the top level id of a response, so
+			//the records in the items of a listRecords response keep whatever type the parser gave them.
+			Object id = rec.get("id");
+			if(id instanceof Double)
+				rec.put("id", ((Double) id).intValue());
+
+			recordCount++;
+			if(!callback.onRecord(rec)) {
+				stopped = true;
+				return false;
+			}
+		} else if(!containers.isEmpty()) {
+			addValue(obj);
+		}
+		return true;
+	}
+
+	public boolean startObjectEntry(String key) throws ParseException, IOException {
+		keys.push(key);
+		return true;
+	}
+
+	public boolean endObjectEntry() throws ParseException, IOException {
+		keys.pop();
+		return true;
+	}
+
+	public boolean startArray() throws ParseException, IOException {
+		if(containers.size() == 1 && containers.peek() == header && ITEMS.equals(keys.peek()))
+			containers.push(itemsMarker);
+		else
+			containers.push(new JSONArray());
+		return true;
+	}
+
+	public boolean endArray() throws ParseException, IOException {
+		Object arr = containers.pop();
+		if(arr != itemsMarker && !containers.isEmpty())
+			addValue(arr);
+		return true;
+	}
+
+	public boolean primitive(Object value) throws ParseException, IOException {
+		if(!containers.isEmpty() && containers.peek() != itemsMarker)
+			addValue(value);
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addValue(Object value) {
+		Object parent = containers.peek();
+		if(parent instanceof JSONObject) {
+			((JSONObject) parent).put(keys.peek(), value);
+		} else if(parent instanceof JSONArray) {
+			((JSONArray) parent).add(value);
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package com.hcl.feb.api;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes every record of a form that matches a set of filters, with several delete requests in flight at once.
+ *
+ * <pre>
+ * {@code FEBRecordDeleter deleter = new FEBRecordDeleter(febapi, 16);
+ * try {
+ * 	FEBDeleteResult res = deleter.deleteRecords(appid, "F_Form1", filters);
+ * 	if(!res.isComplete())
+ * 		logger.error("Could not delete {}", res.failedUids);
+ * } finally {
+ * 	deleter.shutdown();
+ * }}
+ * </pre>
+ *
+ * The records to delete are found by walking the form in line ID (dbId) order, each page continuing after the last line ID of
+ * the previous one and stopping at the highest line ID that matched when the delete started.  Unlike paging by offset this is
+ * not affected by the records being deleted, and records created while the delete runs are left alone.  Each page is deleted
+ * while the next one is retrieved.
+ *
+ * When the filters use the AT_LEAST_ONE_MATCHES relationship the line ID range cannot be added to them, so the matching records
+ * are listed a page at a time from the start of the result, in line ID order, and each page is deleted before the next is
+ * listed.  The next page starts after the records that could not be deleted, which are still at the start of the result.
+ * Records with a line ID higher than the highest that matched when the delete started are left alone.
+ *
+ * Only the first {@link FEBDeleteResult#MAX_FAILED_UIDS} failed UIDs are kept, failed counts every one.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBRecordDeleter {
+
+	public static final int DEFAULT_CONCURRENCY = 8;
+	public static final int DEFAULT_PAGE_SIZE = 500;
+
+	private final FEBAPI api;
+	private final int concurrency;
+	private final ThreadPoolExecutor pool;
+	private int pageSize = DEFAULT_PAGE_SIZE;
+	private FEBPageSizer sizer = null;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBRecordDeleter.class);
+
+	public FEBRecordDeleter(FEBAPI api) {
+		this(api, DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 *
+	 * @param api - The FEBAPI used to list and delete the records.
+	 * @param concurrency - The maximum number of records deleted at the same time.
+	 */
+	public FEBRecordDeleter(FEBAPI api, int concurrency) {
+		if(concurrency < 1)
+			concurrency = 1;
+
+		this.api = api;
+		this.concurrency = concurrency;
+		this.pool = new ThreadPoolExecutor(concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new FEBAsyncAPIImpl.DaemonThreadFactory("feb-delete-"));
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * The number of records listed per request.  Defaults to 500.
+	 *
+	 * @param pageSize
+	 */
+	public void setPageSize(int pageSize) {
+		if(pageSize > 0)
+			this.pageSize = pageSize;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Chooses the number of records listed per request from the previous requests, instead of the fixed page size.
+	 *
+	 * @param sizer - The page sizer, or null to use the fixed page size.
+	 */
+	public void setPageSizer(FEBPageSizer sizer) {
+		this.sizer = sizer;
+	}
+
+	public FEBPageSizer getPageSizer() {
+		return sizer;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * Deletes the records matching the filters and waits for every delete to finish.
+	 *
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param filters - The records to delete.  May be null to delete every record.  The from/to and sort of the filters are ignored.
+	 * @return FEBDeleteResult
+	 * @throws FEBAPIException if the records cannot be listed
+	 */
+	public FEBDeleteResult deleteRecords(String appUid, String formId, FEBFilters filters) throws FEBAPIException {
+		FEBFilters base = filters == null ? new FEBFilters() : new FEBFilters(filters);
+		FEBDeleteResult result = new FEBDeleteResult();
+		Semaphore permits = new Semaphore(concurrency);
+		AtomicLong deleteMillis = new AtomicLong(0);
+		long start = System.currentTimeMillis();
+
+		try {
+			long hi = getHighestLineId(appUid, formId, base, result);
+			if(hi >= 0) {
+				if(base.getFilterArray().size() > 1 && base.getFilterRelationship() == FEBFilterRelationship.AT_LEAST_ONE_MATCHES)
+					pageAndDelete(appUid, formId, base, hi, result, permits, deleteMillis);
+				else
+					scanAndDelete(appUid, formId, base, hi, result, permits, deleteMillis);
+			}
+
+			//wait for the last deletes
+			permits.acquire(concurrency);
+			permits.release(concurrency);
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new FEBAPIException("Interrupted while deleting records.", ie);
+		}
+
+		result.deleteMillis = deleteMillis.get();
+		result.elapsedMillis = System.currentTimeMillis() - start;
+		logger.debug("{} from {}", result, formId);
+		return result;
+	}
+
+	/**
+	 * Stops the worker threads.  Deletes still in progress will fail.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * The highest line ID that matches the filters, or -1 if none do.  Records created after this point are not deleted.
+	 */
+	private long getHighestLineId(String appUid, String formId, FEBFilters base, FEBDeleteResult result) throws FEBAPIException {
+		long scanStart = System.currentTimeMillis();
+		FEBFilters f = new FEBFilters(base);
+		f.setSortBy(FEBFilterMetaColumns.LINE_ID.getValue());
+		f.setFilterOrder(FEBFilterOrder.DESCENDING);
+		f.setFrom(0);
+		f.setTo(1);
+		JSONArray last = fetchPage(appUid, formId, f, null);
+		result.scanMillis += System.currentTimeMillis() - scanStart;
+		return last.isEmpty() ? -1 : getLineId((JSONObject) last.get(0));
+	}
+
+	private void scanAndDelete(String appUid, String formId, FEBFilters base, long highest, FEBDeleteResult result, Semaphore permits, AtomicLong deleteMillis) throws FEBAPIException, InterruptedException {
+		long hi = highest + 1;
+		long lo = 0;
+
+		while(true) {
+			long pageStart = System.currentTimeMillis();
+			int size = nextPageSize();
+			FEBFilters f = new FEBFilters(base);
+			f.addFilter(FEBFilterMetaColumns.LINE_ID.getValue(), FEBFilterOperator.GREATER_THAN_OR_EQUAL_TO, Long.toString(lo));
+			f.addFilter(FEBFilterMetaColumns.LINE_ID.getValue(), FEBFilterOperator.LESS_THAN, Long.toString(hi));
+			f.setFilterRelationship(FEBFilterRelationship.ALL_MATCH);
+			f.setSortBy(FEBFilterMetaColumns.LINE_ID.getValue());
+			f.setFilterOrder(FEBFilterOrder.ASCENDING);
+			f.setFrom(0);
+			f.setTo(size);
+
+			JSONArray items = fetchPage(appUid, formId, f, sizer);
+			result.scanMillis += System.currentTimeMillis() - pageStart;
+
+			for(Object o : items) {
+				JSONObject rec = (JSONObject) o;
+				result.matched++;
+				delete(appUid, formId, (String) rec.get("uid"), result, permits, deleteMillis);
+			}
+
+			//the server may return fewer than asked for, only an empty page is the end
+			if(items.isEmpty())
+				break;
+			lo = getLineId((JSONObject) items.get(items.size() - 1)) + 1;
+		}
+	}
+
+	/**
+	 * Lists a page of matching records by offset, deletes them and waits for the deletes before listing the next page.  The
+	 * records that could not be deleted stay at the start of the result, so the next page starts after them.
+	 */
+	private void pageAndDelete(String appUid, String formId, FEBFilters base, long highest, FEBDeleteResult result, Semaphore permits, AtomicLong deleteMillis) throws FEBAPIException, InterruptedException {
+		while(true) {
+			long pageStart = System.currentTimeMillis();
+			int size = nextPageSize();
+			long from;
+			synchronized(result) {
+				from = result.failed;
+			}
+			FEBFilters f = new FEBFilters(base);
+			f.setSortBy(FEBFilterMetaColumns.LINE_ID.getValue());
+			f.setFilterOrder(FEBFilterOrder.ASCENDING);
+			f.setFrom((int) from);
+			f.setTo((int) from + size);
+
+			JSONArray items = fetchPage(appUid, formId, f, sizer);
+			result.scanMillis += System.currentTimeMillis() - pageStart;
+
+			boolean done = items.isEmpty();
+			for(Object o : items) {
+				JSONObject rec = (JSONObject) o;
+				if(getLineId(rec) > highest) {
+					done = true;
+					break;
+				}
+				result.matched++;
+				delete(appUid, formId, (String) rec.get("uid"), result, permits, deleteMillis);
+			}
+
+			//the offset of the next page depends on how many of these failed
+			permits.acquire(concurrency);
+			permits.release(concurrency);
+
+			if(done)
+				return;
+		}
+	}
+
+	/**
+	 * Deletes the record on the worker pool once a slot is free.
+	 */
+	private void delete(final String appUid, final String formId, final String uid, final FEBDeleteResult result, final Semaphore permits, final AtomicLong deleteMillis) throws FEBAPIException, InterruptedException {
+		permits.acquire();
+		try {
+			pool.execute(new Runnable() {
+				public void run() {
+					long start = System.currentTimeMillis();
+					boolean ok = false;
+					try {
+						FEBResponse r = api.deleteRecord(appUid, formId, uid);
+						ok = r.responseCode == 200 || r.responseCode == 204;
+						if(!ok)
+							logger.debug("Failed to delete record {}. Request returned HTTP {} ({})", uid, r.responseCode, r.responseText);
+					} catch(Exception e) {
+						logger.debug("Failed to delete record {}. {}", uid, e.getMessage());
+					} finally {
+						deleteMillis.addAndGet(System.currentTimeMillis() - start);
+						synchronized(result) {
+							if(ok)
+								result.deleted++;
+							else
+								result.addFailure(uid);
+						}
+						permits.release();
+					}
+				}
+			});
+		} catch(RejectedExecutionException ree) {
+			permits.release();
+			throw new FEBAPIException("The record deleter has been shut down.", ree);
+		}
+	}
+
+	private int nextPageSize() {
+		FEBPageSizer s = sizer;
+		return s == null ? pageSize : s.getPageSize();
+	}
+
+	private JSONArray fetchPage(String appUid, String formId, FEBFilters f, FEBPageSizer s) throws FEBAPIException {
+		long start = System.currentTimeMillis();
+		FEBResponse r = api.listRecords(appUid, formId, f, FEBReturnFormat.JSON);
+
+		if(!r.isResponse20x())
+			throw new FEBAPIException("Failed to get records to delete. Request returned HTTP " + r.responseCode + " (" + r.responseText + ")");
+
+		JSONArray items = null;
+		if(r.responseJSON != null)
+			items = (JSONArray) r.responseJSON.get("items");
+
+		if(items == null)
+			items = new JSONArray();
+
+		if(s != null)
+			s.record(items.size(), System.currentTimeMillis() - start, r.responseLength);
+
+		return items;
+	}
+
+	private static long getLineId(JSONObject rec) {
+		return ((Number) rec.get("id")).longValue();
+	}
+}
@@ -0,0 +1,679 @@
+package com.hcl.feb.api;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the records of a large NDJSON or CSV file into a form.  The file is read a line at a time through a FileChannel and
+ * the records are submitted concurrently by a {@link FEBBatchSubmitter}, so memory use does not depend on the size of the file.
+ *
+ * <pre>
+ * {@code FEBRecordLoader loader = new FEBRecordLoader(febapi, appid, "F_Form1", 16);
+ * loader.setPressedButton("S_Submit");
+ * loader.setFlowState("ST_Start");
+ * loader.setRejectFile(Paths.get("/data/people.rejects.csv"));
+ * FEBLoadResult res = loader.load(Paths.get("/data/people.csv"), FEBLoadFormat.CSV);
+ * logger.info("Loaded {}", res);}
+ * </pre>
+ *
+ * Progress is saved in a checkpoint file (by default the data file's name followed by ".checkpoint").  The checkpoint holds
+ * the offset in the file before which every line has been processed, plus the offsets of the few lines after it that have
+ * finished while earlier lines were still in flight.  If the load stops part way through, calling load again with the same
+ * file picks up where it stopped.  The checkpoint is written every checkpointInterval records and when load returns or throws,
+ * so after an error only the records that were in flight are submitted a second time.  If the JVM itself dies, up to
+ * checkpointInterval + concurrency records can be submitted a second time.  Once the whole file is loaded the checkpoint is
+ * kept, so delete it to load the same file again.
+ *
+ * CSV files are parsed a line at a time, quoted fields that contain line breaks are not supported.
+ *
+ * A record that the server rejects, or a line that cannot be parsed, counts as processed.  If a reject file is set the line is
+ * written to it so it can be corrected and loaded again.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBRecordLoader {
+
+	public static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+	private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+	private final FEBAPI api;
+	private final String appUid;
+	private final String formId;
+	private final int concurrency;
+	private Path checkpointFile = null;
+	private Path rejectFile = null;
+	private String pressedButton = null;
+	private String flowState = null;
+	private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBRecordLoader.class);
+
+	/**
+	 *
+	 * @param api - The FEBAPI used to submit the records.
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param concurrency - The maximum number of records submitted at the same time.
+	 */
+	public FEBRecordLoader(FEBAPI api, String appUid, String formId, int concurrency) {
+		this.api = api;
+		this.appUid = appUid;
+		this.formId = formId;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * The file the progress is saved in.  Defaults to the data file with ".checkpoint" appended.
+	 *
+	 * @param checkpointFile
+	 */
+	public void setCheckpointFile(Path checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	public Path getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	/**
+	 * The file the lines that failed are appended to.  Not set by default.
+	 *
+	 * @param rejectFile
+	 */
+	public void setRejectFile(Path rejectFile) {
+		this.rejectFile = rejectFile;
+	}
+
+	public Path getRejectFile() {
+		return rejectFile;
+	}
+
+	/**
+	 * The pressedButton added to every record that does not have one.
+	 *
+	 * @param pressedButton
+	 */
+	public void setPressedButton(String pressedButton) {
+		this.pressedButton = pressedButton;
+	}
+
+	public String getPressedButton() {
+		return pressedButton;
+	}
+
+	/**
+	 * The flowState added to every record that does not have one.
+	 *
+	 * @param flowState
+	 */
+	public void setFlowState(String flowState) {
+		this.flowState = flowState;
+	}
+
+	public String getFlowState() {
+		return flowState;
+	}
+
+	/**
+	 * The number of finished records between writes of the checkpoint file.  Defaults to 1000.
+	 *
+	 * @param checkpointInterval
+	 */
+	public void setCheckpointInterval(int checkpointInterval) {
+		if(checkpointInterval > 0)
+			this.checkpointInterval = checkpointInterval;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * Loads the file, resuming from its checkpoint if there is one, and waits for every record to finish.
+	 *
+	 * @param file - The NDJSON or CSV file.
+	 * @param format - The format of the file.
+	 * @return FEBLoadResult
+	 * @throws FEBAPIException if the file or checkpoint cannot be read or written
+	 * @throws FEBAPIException if the form metadata cannot be retrieved for a CSV file
+	 */
+	public FEBLoadResult load(Path file, FEBLoadFormat format) throws FEBAPIException {
+		Path cp = checkpointFile != null ? checkpointFile : Paths.get(file.toString() + ".checkpoint");
+		long start = System.currentTimeMillis();
+
+		Run run = new Run(cp, format);
+		FEBBatchSubmitter batch = new FEBBatchSubmitter(api, concurrency);
+		try {
+			run.open(file);
+			batch.submitRecords(appUid, formId, run, run);
+		} catch(IOException ioe) {
+			throw new FEBAPIException(ioe.getMessage(), ioe);
+		} finally {
+			//if the load stopped early, records may still be in flight.  Their results go to the reject file and the checkpoint.
+			run.awaitIdle();
+			batch.shutdown();
+			run.saveProgress();
+			run.close();
+		}
+
+		if(run.failure != null)
+			throw new FEBAPIException("Failed to save the progress of the load. " + run.failure.getMessage(), run.failure);
+
+		run.result.elapsedMillis = System.currentTimeMillis() - start;
+		logger.debug("Loaded {}: {}", file, run.result);
+		return run.result;
+	}
+
+	/**
+	 * Maps the CSV column names to field IDs, by ID first and then by label.  Returns the data type of each field by ID.
+	 */
+	private HashMap<String,String> getFieldTypes(List<String> columns, String[] fieldIds) throws FEBAPIException {
+		FEBResponse r = api.getFormMetaData(appUid, formId);
+		if(!r.isResponse20x() || r.responseJSON == null)
+			throw new FEBAPIException("Failed to retrieve the form metadata. Request returned HTTP " + r.responseCode + " (" + r.responseText + ")");
+
+		JSONObject meta = r.responseJSON.containsKey("metadata") ? (JSONObject) r.responseJSON.get("metadata") : r.responseJSON;
+		JSONArray fields = (JSONArray) meta.get("fields");
+
+		HashMap<String,String> types = new HashMap<String,String>();
+		HashMap<String,String> labels = new HashMap<String,String>();
+		if(fields != null) {
+			for(Object o : fields) {
+				JSONObject f = (JSONObject) o;
+				String name = (String) f.get("name");
+				types.put(name, (String) f.get("dataType"));
+				if(f.get("label") != null)
+					labels.put(((String) f.get("label")).trim().toLowerCase(), name);
+			}
+		}
+
+		for(int i = 0; i < columns.size(); i++) {
+			String col = columns.get(i).trim();
+			if(types.containsKey(col) || "pressedButton".equals(col) || "flowState".equals(col)) {
+				fieldIds[i] = col;
+			} else if(labels.containsKey(col.toLowerCase())) {
+				fieldIds[i] = labels.get(col.toLowerCase());
+			} else {
+				logger.debug("Column {} does not match a field of {} and is ignored", col, formId);
+			}
+		}
+		return types;
+	}
+
+	/**
+	 * Splits a line of CSV into its values.
+	 */
+	static List<String> parseCSVLine(String line) {
+		ArrayList<String> values = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder();
+		boolean quoted = false;
+
+		for(int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if(quoted) {
+				if(c == '"') {
+					if(i + 1 < line.length() && line.charAt(i + 1) == '"') {
+						sb.append('"');
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else {
+					sb.append(c);
+				}
+			} else if(c == '"') {
+				quoted = true;
+			} else if(c == ',') {
+				values.add(sb.toString());
+				sb.setLength(0);
+			} else {
+				sb.append(c);
+			}
+		}
+		values.add(sb.toString());
+		return values;
+	}
+
+	/**
+	 * Converts a CSV value to the JSON type of the field.  Values that do not parse are sent as strings.
+	 */
+	private static Object toFieldValue(String value, String dataType) {
+		if(dataType == null)
+			return value;
+
+		try {
+			if("decimal".equals(dataType) || "float".equals(dataType) || "double".equals(dataType))
+				return Double.valueOf(value.trim());
+			if("integer".equals(dataType) || "int".equals(dataType) || "long".equals(dataType))
+				return Long.valueOf(value.trim());
+		} catch(NumberFormatException nfe) {
+			return value;
+		}
+		if("boolean".equals(dataType))
+			return Boolean.valueOf(value.trim());
+
+		return value;
+	}
+
+	/**
+	 * The state of a single load.  It is the record source and the result listener of the batch, and keeps track of which lines
+	 * have finished so the checkpoint can be written.
+	 */
+	private class Run implements Iterator<JSONObject>, FEBBatchListener, Closeable {
+		private final Path checkpoint;
+		private final FEBLoadFormat format;
+		private final FEBLoadResult result = new FEBLoadResult();
+		private final JSONParser parser = new JSONParser();
+		private LineReader reader;
+		private String header = null;
+		private String[] fieldIds = null;
+		private HashMap<String,String> fieldTypes = null;
+		private BufferedWriter rejects = null;
+		private IOException failure = null;
+		private boolean opened = false;
+		private boolean closed = false; //guarded by this
+
+		//progress, guarded by this
+		private final TreeMap<Long,String> pending = new TreeMap<Long,String>(); //lines in flight by offset
+		private final HashMap<Integer,Long> offsets = new HashMap<Integer,Long>(); //batch index to line offset
+		private final TreeSet<Long> doneAhead = new TreeSet<Long>(); //finished lines at or after the watermark
+		private long readUpTo = 0; //the offset after the last line read
+		private long committed = 0;
+		private int sinceCheckpoint = 0;
+
+		//read ahead, only used by the submitting thread
+		private JSONObject nextRecord = null;
+		private long nextOffset = -1;
+		private long nextEnd = -1;
+		private String nextLine = null;
+		private int index = 0;
+
+		Run(Path checkpoint, FEBLoadFormat format) {
+			this.checkpoint = checkpoint;
+			this.format = format;
+		}
+
+		void open(Path file) throws IOException, FEBAPIException {
+			long watermark = 0;
+			if(Files.exists(checkpoint)) {
+				List<String> lines = Files.readAllLines(checkpoint, StandardCharsets.UTF_8);
+				watermark = Long.parseLong(lines.get(0).trim());
+				committed = Long.parseLong(lines.get(1).trim());
+				for(int i = 2; i < lines.size(); i++) {
+					if(!lines.get(i).trim().isEmpty())
+						doneAhead.add(Long.valueOf(lines.get(i).trim()));
+				}
+				result.skipped = committed + doneAhead.size();
+				logger.debug("Resuming {} from offset {}, {} records already loaded", file, watermark, result.skipped);
+			}
+
+			reader = new LineReader(file);
+			if(format == FEBLoadFormat.CSV) {
+				header = reader.readLine();
+				if(header == null)
+					throw new FEBAPIException("The CSV file is empty.");
+				List<String> columns = parseCSVLine(header);
+				fieldIds = new String[columns.size()];
+				fieldTypes = getFieldTypes(columns, fieldIds);
+				watermark = Math.max(watermark, reader.getNextOffset());
+			}
+			reader.seek(watermark);
+			readUpTo = watermark;
+
+			if(rejectFile != null) {
+				boolean created = !Files.exists(rejectFile);
+				rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				if(created && header != null) {
+					rejects.write(header);
+					rejects.newLine();
+				}
+			}
+			opened = true;
+		}
+
+		public boolean hasNext() {
+			try {
+				while(nextRecord == null) {
+					String line = reader.readLine();
+					if(line == null)
+						return false;
+
+					//readUpTo only moves past a line once it is pending or done, otherwise the watermark could pass it while it
+					//is held here
+					long offset = reader.getLineOffset();
+					long end = reader.getNextOffset();
+					synchronized(this) {
+						if(line.trim().isEmpty()) {
+							readUpTo = end;
+							continue;
+						}
+						if(doneAhead.contains(offset)) { //loaded by the previous run
+							readUpTo = end;
+							markDone(offset);
+							continue;
+						}
+					}
+
+					JSONObject rec = parse(line);
+					if(rec == null) {
+						synchronized(this) {
+							result.failed++;
+							reject(line);
+							readUpTo = end;
+							markDone(offset);
+						}
+						continue;
+					}
+
+					nextRecord = rec;
+					nextOffset = offset;
+					nextEnd = end;
+					nextLine = line;
+				}
+				return true;
+			} catch(IOException ioe) {
+				throw new IllegalStateException(ioe.getMessage(), ioe);
+			}
+		}
+
+		public JSONObject next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+
+			synchronized(this) {
+				pending.put(nextOffset, nextLine);
+				readUpTo = nextEnd;
+				offsets.put(index++, nextOffset);
+				result.submitted++;
+			}
+			JSONObject rec = nextRecord;
+			nextRecord = null;
+			nextLine = null;
+			return rec;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public synchronized void onResult(FEBRecordResult res) {
+			if(closed) {
+				//the line is not marked done, so it is submitted again when the load is resumed
+				logger.debug("Result of record {} arrived after the load ended, ignoring it", res.index);
+				return;
+			}
+
+			Long offset = offsets.remove(res.index);
+			String line = pending.remove(offset);
+			if(pending.isEmpty())
+				notifyAll();
+
+			if(res.isSuccess()) {
+				result.succeeded++;
+			} else {
+				result.failed++;
+				logger.debug("Record at offset {} failed: {}", offset, res.responseText);
+				reject(line);
+			}
+			markDone(offset);
+
+			if(++sinceCheckpoint >= checkpointInterval) {
+				try {
+					writeCheckpoint();
+				} catch(IOException ioe) {
+					if(failure == null)
+						failure = ioe;
+					logger.debug("Failed to write the checkpoint. {}", ioe.getMessage());
+				}
+			}
+		}
+
+		/**
+		 * Records that the line has been processed and moves the watermark past every line that is done.  Called holding the lock.
+		 */
+		private void markDone(long offset) {
+			doneAhead.add(offset);
+			long watermark = getWatermark();
+			while(!doneAhead.isEmpty() && doneAhead.first() < watermark) {
+				doneAhead.pollFirst();
+				committed++;
+			}
+		}
+
+		private long getWatermark() {
+			return pending.isEmpty() ? readUpTo : pending.firstKey();
+		}
+
+		/**
+		 * Waits until every record that was handed to the batch has a result.  At most concurrency records are in flight, so this
+		 * also waits when the load has been interrupted, and then restores the interrupt.
+		 */
+		synchronized void awaitIdle() {
+			boolean interrupted = false;
+			while(!pending.isEmpty()) {
+				try {
+					wait();
+				} catch(InterruptedException ie) {
+					interrupted = true;
+				}
+			}
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		/**
+		 * Writes the checkpoint when the load ends, whether it finished or not.  A failure is kept in failure.
+		 */
+		synchronized void saveProgress() {
+			if(!opened)
+				return;
+			try {
+				writeCheckpoint();
+			} catch(IOException ioe) {
+				if(failure == null)
+					failure = ioe;
+				logger.debug("Failed to write the checkpoint. {}", ioe.getMessage());
+			}
+		}
+
+		synchronized void writeCheckpoint() throws IOException {
+			StringBuilder sb = new StringBuilder();
+			sb.append(getWatermark()).append('\n');
+			sb.append(committed).append('\n');
+			for(Long o : doneAhead)
+				sb.append(o).append('\n');
+
+			Path dir = checkpoint.toAbsolutePath().getParent();
+			Path tmp = Files.createTempFile(dir, checkpoint.getFileName().toString(), ".part");
+			try {
+				Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+				try {
+					Files.move(tmp, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} catch(AtomicMoveNotSupportedException amnse) {
+					Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+
+			if(rejects != null)
+				rejects.flush();
+			sinceCheckpoint = 0;
+		}
+
+		private void reject(String line) {
+			if(rejects == null || line == null)
+				return;
+
+			try {
+				rejects.write(line);
+				rejects.newLine();
+			} catch(IOException ioe) {
+				logger.debug("Failed to write to the reject file. {}", ioe.getMessage());
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private JSONObject parse(String line) {
+			JSONObject rec = null;
+
+			if(format == FEBLoadFormat.NDJSON) {
+				try {
+					Object o = parser.parse(line);
+					if(o instanceof JSONObject)
+						rec = (JSONObject) o;
+				} catch(ParseException pe) {
+					logger.debug("Line at offset {} is not valid JSON. {}", reader.getLineOffset(), pe.getMessage());
+				}
+			} else {
+				List<String> values = parseCSVLine(line);
+				rec = new JSONObject();
+				for(int i = 0; i < values.size() && i < fieldIds.length; i++) {
+					if(fieldIds[i] != null && !values.get(i).isEmpty())
+						rec.put(fieldIds[i], toFieldValue(values.get(i), fieldTypes.get(fieldIds[i])));
+				}
+			}
+
+			if(rec != null) {
+				if(pressedButton != null && !rec.containsKey("pressedButton"))
+					rec.put("pressedButton", pressedButton);
+				if(flowState != null && !rec.containsKey("flowState"))
+					rec.put("flowState", flowState);
+			}
+			return rec;
+		}
+
+		public synchronized void close() {
+			closed = true;
+			if(reader != null)
+				reader.close();
+
+			if(rejects != null) {
+				try {
+					rejects.close();
+				} catch(IOException ioe) {
+					logger.debug("Failed to close the reject file. {}", ioe.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads UTF-8 lines from a FileChannel through a large buffer, keeping track of the offset of each line in the file.
+	 */
+	private static class LineReader implements Closeable {
+		private final FileChannel channel;
+		private ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		private long bufStart = 0; //the file offset of the first byte in the buffer
+		private long lineOffset = -1;
+		private long nextOffset = 0;
+		private boolean eof = false;
+
+		LineReader(Path file) throws IOException {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+			buf.limit(0);
+		}
+
+		/**
+		 * The offset of the line last returned by readLine.
+		 */
+		long getLineOffset() {
+			return lineOffset;
+		}
+
+		/**
+		 * The offset of the line after the one last returned by readLine.
+		 */
+		long getNextOffset() {
+			return nextOffset;
+		}
+
+		void seek(long offset) throws IOException {
+			channel.position(offset);
+			buf.clear();
+			buf.limit(0);
+			bufStart = offset;
+			nextOffset = offset;
+			eof = false;
+		}
+
+		String readLine() throws IOException {
+			int scanned = buf.position();
+			while(true) {
+				byte[] a = buf.array();
+				for(int i = scanned; i < buf.limit(); i++) {
+					if(a[i] == '\n')
+						return takeLine(i, i + 1);
+				}
+				scanned = buf.limit();
+
+				if(eof) {
+					if(buf.hasRemaining())
+						return takeLine(buf.limit(), buf.limit());
+					return null;
+				}
+
+				//move the partial line to the start of the buffer, growing it if the line does not fit
+				int start = buf.position();
+				bufStart += start;
+				scanned -= start;
+				if(buf.remaining() == buf.capacity()) {
+					ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+					bigger.put(buf);
+					buf = bigger;
+				} else {
+					buf.compact();
+				}
+
+				if(channel.read(buf) < 0)
+					eof = true;
+				buf.flip();
+			}
+		}
+
+		private String takeLine(int end, int next) {
+			int start = buf.position();
+			lineOffset = bufStart + start;
+			nextOffset = bufStart + next;
+			buf.position(next);
+
+			byte[] a = buf.array();
+			if(end > start && a[end - 1] == '\r')
+				end--;
+			return new String(a, start, end - start, StandardCharsets.UTF_8);
+		}
+
+		public void close() {
+			try {
+				channel.close();
+			} catch(IOException ioe) {
+				//nothing else to do
+			}
+		}
+	}
+}
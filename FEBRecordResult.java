@@ -0,0 +1,37 @@
+package com.hcl.feb.api;
+
+/**
+ * The outcome of submitting a single record as part of a batch.  The object contains:
+ *
+ * int index				- The position of the record in the input, starting at 0.
+ * int responseCode			- The HTTP code returned for the record, or -1 if the request could not be made.
+ * String responseText		- Any text returned from the response.
+ * String uid				- The UID of the created record.
+ * Long id					- The line ID of the created record.
+ * String flowState			- The stage the record moved to.
+ * FEBAPIException error	- The exception thrown while submitting the record, if any.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBRecordResult {
+	public int index;
+	public int responseCode = -1;
+	public String responseText = "";
+	public String uid;
+	public Long id;
+	public String flowState;
+	public FEBAPIException error;
+
+	public FEBRecordResult(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * True if the record was created.
+	 * @return boolean
+	 */
+	public boolean isSuccess() {
+		return error == null && (responseCode == 200 || responseCode == 201);
+	}
+}
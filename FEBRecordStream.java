@@ -0,0 +1,295 @@
+package com.hcl.feb.api;
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Iterates over every record returned by listRecords, requesting the next page automatically.  While the records of one page
+ * are being consumed the next page is already being retrieved on a background thread.  At most maxBufferedPages + 2 pages are
+ * held in memory at once: the pages waiting in the buffer, the page being retrieved and the page being consumed.
+ *
+ * <pre>
+ * {@code FEBFilters filters = new FEBFilters();
+ * filters.addFilter(new FEBFilterParam("F_Status",FEBFilterOperator.EQUALS,"Closed"));
+ * filters.setPageSize(500);
+ *
+ * FEBRecordStream recs = new FEBRecordStream(febapi, appid, "F_Form1", filters, 2);
+ * try {
+ * 	while(recs.hasNext()) {
+ * 		JSONObject rec = recs.next();
+ * 		. . .
+ * 	}
+ * } finally {
+ * 	recs.close();
+ * }}
+ * </pre>
+ *
+ * or as a java.util.stream.Stream:
+ *
+ * <pre>
+ * {@code try(Stream<JSONObject> s = new FEBRecordStream(febapi, appid, "F_Form1", filters).stream()) {
+ * 	s.filter(...).forEach(...);
+ * }}
+ * </pre>
+ *
+ * The stream pages through a copy of the filters, the filters passed in are not changed.  When a FEBPageSizer is given the size
+ * of each page is taken from it instead of the filters.  The server may return fewer records than a large page asks for, so
+ * with a sizer only an empty page ends the stream, and once a short page has been followed by more records its size is used
+ * as the most this stream asks for.  If a page cannot be retrieved the iterator throws an
+ * IllegalStateException whose cause is the FEBAPIException.
+ *
+ * Close the stream when it is not read to the end.  A stream that is dropped without being closed stops its background thread
+ * once it has been garbage collected.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBRecordStream implements Iterator<JSONObject>, Closeable {
+
+	public static final int DEFAULT_MAX_BUFFERED_PAGES = 2;
+
+	//markers put on the queue by the page reader
+	private static final Object END_OF_RECORDS = new Object();
+	//how often a page reader waiting for space checks that the stream is still in use
+	private static final long OFFER_POLL_MILLIS = 1000;
+
+	private final BlockingQueue<Object> pages;
+	private final PageReader pageReader;
+	private final Thread reader;
+	private Iterator<?> current = null;
+	private boolean finished = false;
+	private volatile boolean closed = false;
+
+	public FEBRecordStream(FEBAPI api, String appUid, String formId, FEBFilters filters) {
+		this(api, appUid, formId, filters, DEFAULT_MAX_BUFFERED_PAGES);
+	}
+
+	/**
+	 *
+	 * @param api - The FEBAPI used to list the records.
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param filters - The filters to apply, the page size of the filters is used for each request.  May be null.
+	 * @param maxBufferedPages - The maximum number of pages retrieved ahead of the page being consumed.
+	 */
+	public FEBRecordStream(FEBAPI api, String appUid, String formId, FEBFilters filters, int maxBufferedPages) {
+		this(api, appUid, formId, filters, maxBufferedPages, null);
+	}
+
+	/**
+	 *
+	 * @param api - The FEBAPI used to list the records.
+	 * @param appUid - The FEB application UID.
+	 * @param formId - The ID of the form.
+	 * @param filters - The filters to apply.  May be null.
+	 * @param maxBufferedPages - The maximum number of pages retrieved ahead of the page being consumed.
+	 * @param sizer - Chooses the size of each page from the previous ones.  May be null to use the page size of the filters.
+	 */
+	public FEBRecordStream(FEBAPI api, String appUid, String formId, FEBFilters filters, int maxBufferedPages, FEBPageSizer sizer) {
+		if(maxBufferedPages < 1)
+			maxBufferedPages = DEFAULT_MAX_BUFFERED_PAGES;
+
+		//a copy, the caller's filters are left as they were.  The copy does not carry keyset paging, so it is set again.
+		FEBFilters f = filters == null ? new FEBFilters() : new FEBFilters(filters);
+		if(filters != null && filters.isKeysetPaging()) {
+			f.setKeysetPaging(true);
+			f.setLastId(filters.getLastId());
+		}
+		if(f.getFrom() == null)
+			f.firstPage();
+
+		this.pages = new ArrayBlockingQueue<Object>(maxBufferedPages);
+		this.pageReader = new PageReader(this, api, appUid, formId, f, sizer, pages);
+
+		this.reader = new Thread(pageReader, "feb-record-stream-" + formId);
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	/**
+	 * Runs on the reader thread, puts each page of records on the queue until the last page is reached.  Only holds a weak
+	 * reference to the stream, so that it can tell when the stream has been dropped without being closed.
+	 */
+	private static class PageReader implements Runnable {
+		private final WeakReference<FEBRecordStream> owner;
+		private final FEBAPI api;
+		private final String appUid;
+		private final String formId;
+		private final FEBFilters filters;
+		private final FEBPageSizer sizer;
+		private final BlockingQueue<Object> pages;
+		private volatile boolean closed = false;
+
+		private final Logger logger = LoggerFactory.getLogger(FEBRecordStream.class);
+
+		PageReader(FEBRecordStream owner, FEBAPI api, String appUid, String formId, FEBFilters filters, FEBPageSizer sizer, BlockingQueue<Object> pages) {
+			this.owner = new WeakReference<FEBRecordStream>(owner);
+			this.api = api;
+			this.appUid = appUid;
+			this.formId = formId;
+			this.filters = filters;
+			this.sizer = sizer;
+			this.pages = pages;
+		}
+
+		public void run() {
+			//the most records the server has been seen to return in one page, learnt from a short page that was not the last
+			int serverCap = Integer.MAX_VALUE;
+			int lastShort = -1;
+
+			try {
+				while(!closed) {
+					if(sizer != null)
+						filters.resizePage(Math.min(sizer.getPageSize(), serverCap));
+
+					logger.debug("Retrieving records {} to {}", filters.getFrom(), filters.getTo());
+					long start = System.currentTimeMillis();
+					FEBResponse r = api.listRecords(appUid, formId, filters, FEBReturnFormat.JSON);
+
+					if(!r.isResponse20x())
+						throw new FEBAPIException("Failed to list records. Request returned HTTP " + r.responseCode + " (" + r.responseText + ")");
+
+					JSONArray items = null;
+					if(r.responseJSON != null)
+						items = (JSONArray) r.responseJSON.get("items");
+
+					if(sizer != null && items != null)
+						sizer.record(items.size(), System.currentTimeMillis() - start, r.responseLength);
+
+					if(items != null && !items.isEmpty() && !put(items))
+						return;
+
+					if(items == null || items.isEmpty() || (sizer == null && items.size() < filters.getPageSize())) {
+						put(END_OF_RECORDS);
+						return;
+					}
+
+					if(lastShort > 0 && lastShort < serverCap) {
+						serverCap = lastShort;
+						logger.debug("Server returned at most {} records per page for {}", serverCap, formId);
+					}
+					lastShort = -1;
+
+					if(items.size() < filters.getPageSize()) {
+						//continue after the records returned, not the records asked for
+						lastShort = items.size();
+						filters.resizePage(items.size());
+					}
+
+					filters.nextPage();
+				}
+			} catch(InterruptedException ie) {
+				//closed by the consumer
+			} catch(FEBAPIException e) {
+				putQuietly(e);
+			} catch(RuntimeException e) {
+				putQuietly(new FEBAPIException(e.getMessage(), e));
+			}
+		}
+
+		/**
+		 * Waits for space on the queue.  Gives up if the stream is closed or has been dropped by the consumer.
+		 *
+		 * @return false if the page was not queued
+		 */
+		private boolean put(Object o) throws InterruptedException {
+			while(!pages.offer(o, OFFER_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				if(closed)
+					return false;
+				if(owner.get() == null) {
+					logger.debug("Record stream for {} was not closed, stopping its reader", formId);
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void putQuietly(Object o) {
+			try {
+				put(o);
+			} catch(InterruptedException ie) {
+				//closed by the consumer
+			}
+		}
+	}
+
+	public boolean hasNext() {
+		while(!finished && (current == null || !current.hasNext())) {
+			if(closed)
+				throw new IllegalStateException("The record stream has been closed.");
+
+			Object page;
+			try {
+				page = pages.take();
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for records.", ie);
+			}
+
+			if(page == END_OF_RECORDS) {
+				finished = true;
+				current = null;
+			} else if(page instanceof FEBAPIException) {
+				finished = true;
+				current = null;
+				throw new IllegalStateException(((FEBAPIException) page).getMessage(), (FEBAPIException) page);
+			} else {
+				current = ((JSONArray) page).iterator();
+			}
+		}
+
+		return !finished;
+	}
+
+	public JSONObject next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+
+		return (JSONObject) current.next();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns the records as a sequential java.util.stream.Stream.  Closing the Stream closes this FEBRecordStream.
+	 *
+	 * @return Stream
+	 */
+	public Stream<JSONObject> stream() {
+		Spliterator<JSONObject> s = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(s, false).onClose(new Runnable() {
+			public void run() {
+				close();
+			}
+		});
+	}
+
+	/**
+	 * Stops retrieving pages and discards any that are buffered.
+	 */
+	public void close() {
+		if(!closed) {
+			closed = true;
+			pageReader.closed = true;
+			reader.interrupt();
+			pages.clear();
+			current = null;
+		}
+	}
+}
@@ -1,5 +1,15 @@
 package com.hcl.feb.api;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
 import org.json.simple.JSONObject;
 import org.w3c.dom.Document;
 
@@ -12,6 +22,7 @@ import org.w3c.dom.Document;
  * byte[] responseBinary	- The bytes from the response.  Used only by listRecords when exporting as ms_excel or open_doc.
  * int responseCode 		- The HTTP code returned from the response.
  * String responseText 		- Any text returned from the response.
+ * long responseLength		- The number of bytes read from the response body after decompression, or -1 if not known.
  * 
  * 
  * @author ChristopherDawes
@@ -24,6 +35,7 @@ public class FEBResponse {
     public int responseCode;
     public String responseText;
     public Document responseXML;
+    public long responseLength;
     
     public FEBResponse() {
     	responseJSON = null;
@@ -31,6 +43,7 @@ public class FEBResponse {
     	responseCode = -1;
     	responseText = "";
     	responseBinary = null;
+    	responseLength = -1;
     }
     
     public boolean isResponse20x() {
@@ -41,5 +54,30 @@ public class FEBResponse {
     	
     	return r;
     }
+    
+    /**
+     * Writes the body of the response to the stream in the form it was read as: responseBinary as it is, responseXML
+     * serialized back to XML and responseJSON as JSON text.  Nothing is written if the response has no body.  The stream is
+     * not closed.
+     * 
+     * @param os - The stream to write to.
+     * @throws IOException if the stream cannot be written
+     */
+    void writeBody(OutputStream os) throws IOException {
+    	if(responseBinary != null) {
+    		os.write(responseBinary);
+    	} else if(responseXML != null) {
+    		try {
+    			TransformerFactory.newInstance().newTransformer().transform(new DOMSource(responseXML), new StreamResult(os));
+    		} catch(TransformerException te) {
+    			throw new IOException(te.getMessage(), te);
+    		}
+    	} else if(responseJSON != null) {
+    		Writer w = new OutputStreamWriter(os, "UTF-8");
+    		responseJSON.writeJSONString(w);
+    		w.flush();
+    	}
+    	os.flush();
+    }
 	
 }
@@ -0,0 +1,234 @@
+package com.hcl.feb.api;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.w3c.dom.Document;
+
+/**
+ * A size bounded, least recently used cache of FEBResponse objects.  Each entry expires ttl milliseconds after it was stored
+ * or last revalidated.  An expired entry is kept (until it is evicted) along with its ETag and Last-Modified validators, so
+ * the caller can make a conditional request and refresh the entry when the server answers 304 Not Modified.
+ *
+ * Responses are copied on the way in and on the way out, so callers are free to modify what they are given.
+ *
+ * A response fetched while its key was invalidated must not be stored, or the data from before the change would be served
+ * until the entry expires.  Callers take a stamp before they send the request and pass it to put, which drops the response if
+ * the key, or a prefix of it, was invalidated since the stamp was taken.
+ *
+ * @author ChristopherDawes
+ *
+ */
+class FEBResponseCache {
+
+	/**
+	 * A cached response and the validators returned with it.
+	 */
+	static class Entry {
+		final FEBResponse response;
+		final String etag;
+		final String lastModified;
+		volatile long expires;
+
+		Entry(FEBResponse response, String etag, String lastModified, long expires) {
+			this.response = response;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.expires = expires;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() >= expires;
+		}
+
+		boolean canRevalidate() {
+			return etag != null || lastModified != null;
+		}
+	}
+
+	private volatile long ttl;
+	private volatile int maxEntries;
+	private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<String,Entry>(16, 0.75f, true);
+
+	//the generation each key or prefix was last invalidated in, oldest first.  When one is forgotten the floor is raised to
+	//its generation, so responses stamped before it are still dropped.
+	private static final int MAX_INVALIDATIONS = 10000;
+	private final LinkedHashMap<String,Long> invalidations = new LinkedHashMap<String,Long>();
+	private long generation = 0;
+	private long floor = 0;
+
+	/**
+	 *
+	 * @param ttl - The number of milliseconds an entry is used without checking with the server.
+	 * @param maxEntries - The maximum number of entries kept, 0 disables the cache.
+	 */
+	FEBResponseCache(long ttl, int maxEntries) {
+		this.ttl = ttl;
+		this.maxEntries = maxEntries;
+	}
+
+	long getTTL() {
+		return ttl;
+	}
+
+	void setTTL(long ttl) {
+		this.ttl = ttl;
+	}
+
+	int getMaxEntries() {
+		return maxEntries;
+	}
+
+	synchronized void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		trim();
+	}
+
+	boolean isEnabled() {
+		return maxEntries > 0;
+	}
+
+	/**
+	 * Returns the entry for the key whether it has expired or not, or null if there is none.
+	 */
+	synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * The stamp to pass to put for a request that is about to be sent.
+	 */
+	synchronized long stamp() {
+		return generation;
+	}
+
+	/**
+	 * False if the key, or a prefix of it ending in "/", has been invalidated since the stamp was taken.
+	 */
+	synchronized boolean isCurrent(String key, long stamp) {
+		if(stamp < floor)
+			return false;
+
+		int i = -1;
+		while((i = key.indexOf('/', i + 1)) >= 0) {
+			Long g = invalidations.get(key.substring(0, i + 1));
+			if(g != null && g > stamp)
+				return false;
+		}
+		Long g = invalidations.get(key);
+		return g == null || g <= stamp;
+	}
+
+	/**
+	 * Stores a copy of a 20x response, unless its key was invalidated after the stamp was taken.  Anything else is ignored.
+	 *
+	 * @param stamp - The value of stamp() taken before the request was sent.
+	 */
+	synchronized void put(String key, FEBResponse response, String etag, String lastModified, long stamp) {
+		if(!isEnabled() || response == null || !response.isResponse20x())
+			return;
+		if(!isCurrent(key, stamp))
+			return;
+
+		entries.put(key, new Entry(copy(response), etag, lastModified, System.currentTimeMillis() + ttl));
+		trim();
+	}
+
+	/**
+	 * Marks the entry as fresh again, i.e. after the server answered a conditional request with 304 Not Modified.
+	 */
+	void touch(Entry e) {
+		e.expires = System.currentTimeMillis() + ttl;
+	}
+
+	synchronized void remove(String key) {
+		entries.remove(key);
+		invalidated(key);
+	}
+
+	/**
+	 * Removes every entry whose key starts with the prefix.
+	 */
+	synchronized void removeAll(String prefix) {
+		Iterator<String> iter = entries.keySet().iterator();
+		while(iter.hasNext()) {
+			if(iter.next().startsWith(prefix))
+				iter.remove();
+		}
+		invalidated(prefix);
+	}
+
+	synchronized void clear() {
+		entries.clear();
+		invalidations.clear();
+		generation++;
+		floor = generation;
+	}
+
+	private void invalidated(String keyOrPrefix) {
+		generation++;
+		invalidations.remove(keyOrPrefix); //so it moves to the end
+		invalidations.put(keyOrPrefix, generation);
+
+		if(invalidations.size() > MAX_INVALIDATIONS) {
+			Iterator<Map.Entry<String,Long>> iter = invalidations.entrySet().iterator();
+			floor = Math.max(floor, iter.next().getValue());
+			iter.remove();
+		}
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	private void trim() {
+		Iterator<Map.Entry<String,Entry>> iter = entries.entrySet().iterator();
+		while(entries.size() > maxEntries && iter.hasNext()) {
+			iter.next();
+			iter.remove();
+		}
+	}
+
+	/**
+	 * Returns a copy of the response that shares nothing mutable with the original.
+	 */
+	static FEBResponse copy(FEBResponse r) {
+		FEBResponse c = new FEBResponse();
+		c.responseCode = r.responseCode;
+		c.responseText = r.responseText;
+		c.responseJSON = r.responseJSON == null ? null : copy(r.responseJSON);
+		c.responseBinary = r.responseBinary == null ? null : r.responseBinary.clone();
+		c.responseXML = r.responseXML == null ? null : (Document) r.responseXML.cloneNode(true);
+		c.responseLength = r.responseLength;
+		return c;
+	}
+
+	@SuppressWarnings("unchecked")
+	static JSONObject copy(JSONObject obj) {
+		JSONObject c = new JSONObject();
+		for(Object o : obj.entrySet()) {
+			Map.Entry<Object,Object> e = (Map.Entry<Object,Object>) o;
+			c.put(e.getKey(), copyValue(e.getValue()));
+		}
+		return c;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONArray copy(JSONArray arr) {
+		JSONArray c = new JSONArray();
+		for(Object o : arr)
+			c.add(copyValue(o));
+		return c;
+	}
+
+	private static Object copyValue(Object o) {
+		if(o instanceof JSONObject)
+			return copy((JSONObject) o);
+		if(o instanceof JSONArray)
+			return copy((JSONArray) o);
+		return o;
+	}
+}
@@ -0,0 +1,124 @@
+package com.hcl.feb.api;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Defines how a failed request is retried by FEBAPIImpl.  A request is retried when the connection fails or the server returns
+ * one of the retryable status codes, up to maxAttempts attempts in total.  Before each retry the caller waits a random time
+ * between 0 and baseDelay * 2^retry (capped at maxDelay), or longer if the server sent a Retry-After header.
+ *
+ * <pre>
+ * {@code FEBRetryPolicy writes = new FEBRetryPolicy(5, 500, 30000);
+ * febapi.setRetryPolicy(FEBOperationType.WRITE, writes);}
+ * </pre>
+ *
+ * Only requests that are safe to repeat are retried: GET, PUT and DELETE always, POST only when it carries an idempotency
+ * key (see FEBAPIImpl.setIdempotencyKeyHeader) or when the connection could not be made at all.  A request whose body is
+ * read from a caller's InputStream is never retried, the stream cannot be read twice.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBRetryPolicy {
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_BASE_DELAY = 200;
+	public static final long DEFAULT_MAX_DELAY = 10000;
+	public static final long DEFAULT_MAX_RETRY_AFTER = 60000;
+
+	private final int maxAttempts;
+	private final long baseDelay;
+	private final long maxDelay;
+	private long maxRetryAfter = DEFAULT_MAX_RETRY_AFTER;
+	private final Set<Integer> retryableCodes = new HashSet<Integer>();
+
+	public FEBRetryPolicy() {
+		this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+	}
+
+	/**
+	 *
+	 * @param maxAttempts - The number of attempts, including the first.  1 disables retries.
+	 * @param baseDelay - The upper bound of the wait before the first retry, in milliseconds.  Doubles for each retry.
+	 * @param maxDelay - The largest upper bound of the wait, in milliseconds.
+	 */
+	public FEBRetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelay = Math.max(0, baseDelay);
+		this.maxDelay = Math.max(this.baseDelay, maxDelay);
+
+		retryableCodes.add(429);
+		retryableCodes.add(502);
+		retryableCodes.add(503);
+		retryableCodes.add(504);
+	}
+
+	/**
+	 * A policy that never retries.
+	 *
+	 * @return FEBRetryPolicy
+	 */
+	public static FEBRetryPolicy noRetries() {
+		return new FEBRetryPolicy(1, 0, 0);
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getBaseDelay() {
+		return baseDelay;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * The longest Retry-After the caller will honour, in milliseconds.  Longer values are cut to this.  Defaults to 1 minute.
+	 *
+	 * @param maxRetryAfter
+	 */
+	public void setMaxRetryAfter(long maxRetryAfter) {
+		this.maxRetryAfter = Math.max(0, maxRetryAfter);
+	}
+
+	public long getMaxRetryAfter() {
+		return maxRetryAfter;
+	}
+
+	/**
+	 * Sets the status codes that are retried.  Defaults to 429, 502, 503 and 504.
+	 *
+	 * @param codes
+	 */
+	public synchronized void setRetryableCodes(int... codes) {
+		retryableCodes.clear();
+		for(int c : codes)
+			retryableCodes.add(c);
+	}
+
+	public synchronized boolean isRetryable(int responseCode) {
+		return retryableCodes.contains(responseCode);
+	}
+
+	/**
+	 * The time to wait before the retry.
+	 *
+	 * @param retry - 1 for the first retry, 2 for the second, and so on.
+	 * @param retryAfter - The wait asked for by the server in milliseconds, or -1 if none.
+	 * @return the wait in milliseconds
+	 */
+	public long getDelay(int retry, long retryAfter) {
+		long cap = baseDelay << Math.min(retry - 1, 30);
+		if(cap <= 0 || cap > maxDelay)
+			cap = maxDelay;
+
+		long delay = cap > 0 ? ThreadLocalRandom.current().nextLong(cap + 1) : 0;
+		if(retryAfter > 0)
+			delay = Math.max(delay, Math.min(retryAfter, maxRetryAfter));
+		return delay;
+	}
+}
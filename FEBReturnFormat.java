@@ -4,6 +4,7 @@ package com.hcl.feb.api;
  * Object that defines the supported return formats from the FEB REST endpoints.
  * 
  * listRecords supports all return formats. If exporting as ms_excel or open_doc then the binary file is stored in FEBResponse.responseBinary
+ * exportRecordsToPath, exportRecordsToChannel and exportRecordsToOutputStream write ms_excel or open_doc exports directly to the target without holding them in memory
  * retrieveRecord can be exported as XML or JSON
  * 
  * @author ChristopherDawes
@@ -0,0 +1,15 @@
+package com.hcl.feb.api;
+
+/**
+ * Defines how {@link FEBFormScan} splits a form into partitions that can be retrieved in parallel.
+ *
+ * OFFSET	- Each partition retrieves every Nth page using from/to offsets.  Works with any filter relationship and sort order.
+ * LINE_ID	- Each partition retrieves a range of line IDs (dbId).  Records are returned in dbId order and the scan is not affected
+ * 			  by records being inserted or deleted while it runs.  The filters must use the ALL_MATCH relationship.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public enum FEBScanPartitionMode {
+	OFFSET, LINE_ID;
+}
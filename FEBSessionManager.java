@@ -0,0 +1,130 @@
+package com.hcl.feb.api;
+
+import java.net.HttpURLConnection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the session cookies (JSESSIONID and the LTPA tokens) that the FEB server sets once a request has been authenticated,
+ * so that FEBAPIImpl can send them instead of Basic credentials and the server does not check the user against its registry
+ * on every request.  The cookies are kept per host and shared by every thread and connection.
+ *
+ * When a request sent with the cookies returns 401 the session is dropped and the request is sent again with Basic
+ * credentials, which establishes a new session.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBSessionManager {
+
+	private final ConcurrentHashMap<String,Session> sessions = new ConcurrentHashMap<String,Session>();
+
+	private final Logger logger = LoggerFactory.getLogger(FEBSessionManager.class);
+
+	/**
+	 * The cookies of one host.  Never modified once created, a change replaces the whole session.
+	 */
+	private static class Session {
+		final Map<String,String> cookies;
+		final String header;
+
+		Session(Map<String,String> cookies) {
+			this.cookies = cookies;
+			StringBuilder sb = new StringBuilder();
+			for(Map.Entry<String,String> e : cookies.entrySet()) {
+				if(sb.length() > 0)
+					sb.append("; ");
+				sb.append(e.getKey()).append('=').append(e.getValue());
+			}
+			this.header = sb.toString();
+		}
+	}
+
+	/**
+	 * Returns the value of the Cookie header that carries the session for the host.
+	 *
+	 * @param host - The host and port, as in the URL.
+	 * @return the cookies, or null if there is no session
+	 */
+	public String getCookieHeader(String host) {
+		Session s = sessions.get(host);
+		return s == null ? null : s.header;
+	}
+
+	/**
+	 * Records the session cookies set by a response.  Cookies that are deleted by the response (Max-Age=0) are removed.
+	 *
+	 * @param host - The host and port, as in the URL.
+	 * @param conn - A connection whose response headers have been received.
+	 */
+	public void capture(String host, HttpURLConnection conn) {
+		final LinkedHashMap<String,String> set = new LinkedHashMap<String,String>();
+		for(Map.Entry<String,List<String>> h : conn.getHeaderFields().entrySet()) {
+			if(h.getKey() == null || !h.getKey().equalsIgnoreCase("Set-Cookie"))
+				continue;
+
+			for(String value : h.getValue()) {
+				String[] parts = value.split(";");
+				int eq = parts[0].indexOf('=');
+				if(eq <= 0)
+					continue;
+
+				String name = parts[0].substring(0, eq).trim();
+				if(!isSessionCookie(name))
+					continue;
+
+				boolean deleted = false;
+				for(int i = 1; i < parts.length; i++) {
+					if(parts[i].trim().replace(" ", "").equalsIgnoreCase("Max-Age=0"))
+						deleted = true;
+				}
+				set.put(name, deleted ? null : parts[0].substring(eq + 1).trim());
+			}
+		}
+
+		if(set.isEmpty())
+			return;
+
+		sessions.compute(host, (k, old) -> {
+			LinkedHashMap<String,String> cookies = new LinkedHashMap<String,String>();
+			if(old != null)
+				cookies.putAll(old.cookies);
+			for(Map.Entry<String,String> e : set.entrySet()) {
+				if(e.getValue() == null || e.getValue().isEmpty())
+					cookies.remove(e.getKey());
+				else
+					cookies.put(e.getKey(), e.getValue());
+			}
+			return cookies.isEmpty() ? null : new Session(cookies);
+		});
+		logger.debug("Captured session cookies {} for {}", set.keySet(), host);
+	}
+
+	/**
+	 * Drops the session of the host after it was rejected.  If another thread has already replaced the session the new one is kept.
+	 *
+	 * @param host - The host and port, as in the URL.
+	 * @param rejected - The Cookie header that was rejected.
+	 */
+	public void invalidate(String host, String rejected) {
+		Session s = sessions.get(host);
+		if(s != null && s.header.equals(rejected) && sessions.remove(host, s))
+			logger.debug("Session for {} was rejected", host);
+	}
+
+	/**
+	 * Forgets every session.
+	 */
+	public void clear() {
+		sessions.clear();
+	}
+
+	private static boolean isSessionCookie(String name) {
+		return name.equalsIgnoreCase("JSESSIONID") || name.startsWith("LtpaToken");
+	}
+}
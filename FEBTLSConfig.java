@@ -0,0 +1,226 @@
+package com.hcl.feb.api;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The TLS settings FEBAPIImpl uses for HTTPS connections.  The SSLContext is built once, the first time a connection needs it,
+ * and shared by every connection, so the random number generator is seeded once and TLS sessions are resumed instead of
+ * a full handshake being made for every new socket.  Sharing the socket factory also lets HttpURLConnection keep HTTPS
+ * sockets alive between requests.
+ *
+ * <pre>
+ * {@code FEBTLSConfig tls = new FEBTLSConfig();
+ * tls.setTrustStore("/etc/feb/truststore.p12", "changeit".toCharArray(), "PKCS12");
+ * tls.setKeyStore("/etc/feb/client.p12", "secret".toCharArray(), "PKCS12");
+ * febapi.setTLSConfig(tls);}
+ * </pre>
+ *
+ * Without a trust store the JVM's default trust store is used, and without a key store the client certificate set by the
+ * javax.net.ssl.keyStore system properties is used.  When neither store is set and trustAll is false the JVM's default SSLContext
+ * is shared as it is, the session cache settings then do not apply.  trustAll accepts any certificate and is only meant for
+ * development, it is what the ignoreSSL constructor argument of FEBAPIImpl turns on.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public class FEBTLSConfig {
+
+	public static final String DEFAULT_PROTOCOL = "TLS";
+	public static final int DEFAULT_SESSION_CACHE_SIZE = 1000;
+	public static final int DEFAULT_SESSION_TIMEOUT = 86400;
+
+	private final boolean trustAll;
+	private final String protocol;
+	private String trustStore = null;
+	private char[] trustStorePassword = null;
+	private String trustStoreType = null;
+	private String keyStore = null;
+	private char[] keyStorePassword = null;
+	private String keyStoreType = null;
+	private int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+	private int sessionTimeout = DEFAULT_SESSION_TIMEOUT;
+
+	private SSLContext context = null;
+
+	private final Logger logger = LoggerFactory.getLogger(FEBTLSConfig.class);
+
+	public FEBTLSConfig() {
+		this(false, DEFAULT_PROTOCOL);
+	}
+
+	/**
+	 *
+	 * @param trustAll - true to accept any server certificate.  Should not be true in a production implementation.
+	 * @param protocol - The protocol of the SSLContext, i.e. TLS, TLSv1.2.  Defaults to TLS.
+	 */
+	public FEBTLSConfig(boolean trustAll, String protocol) {
+		this.trustAll = trustAll;
+		this.protocol = protocol == null || protocol.isEmpty() ? DEFAULT_PROTOCOL : protocol;
+	}
+
+	/**
+	 * Sets the trust store used to verify the server certificate.
+	 *
+	 * @param path - The trust store file.
+	 * @param password - The trust store password, may be null.
+	 * @param type - The store type, i.e. PKCS12 or JKS.  Defaults to the JVM's default type.
+	 */
+	public synchronized void setTrustStore(String path, char[] password, String type) {
+		this.trustStore = path;
+		this.trustStorePassword = password;
+		this.trustStoreType = type;
+		context = null;
+	}
+
+	/**
+	 * Sets the key store holding the client certificate, for servers that require client authentication.  The keys must use the
+	 * store password.
+	 *
+	 * @param path - The key store file.
+	 * @param password - The key store password.
+	 * @param type - The store type, i.e. PKCS12 or JKS.  Defaults to the JVM's default type.
+	 */
+	public synchronized void setKeyStore(String path, char[] password, String type) {
+		this.keyStore = path;
+		this.keyStorePassword = password;
+		this.keyStoreType = type;
+		context = null;
+	}
+
+	/**
+	 * The number of TLS sessions kept for resumption.  Defaults to 1000, 0 means no limit.  Not used with the JVM's default SSLContext.
+	 *
+	 * @param sessionCacheSize
+	 */
+	public synchronized void setSessionCacheSize(int sessionCacheSize) {
+		this.sessionCacheSize = Math.max(0, sessionCacheSize);
+		context = null;
+	}
+
+	/**
+	 * How long a TLS session can be resumed, in seconds.  Defaults to 24 hours, 0 means no limit.
+	 *
+	 * @param sessionTimeout
+	 */
+	public synchronized void setSessionTimeout(int sessionTimeout) {
+		this.sessionTimeout = Math.max(0, sessionTimeout);
+		context = null;
+	}
+
+	public boolean isTrustAll() {
+		return trustAll;
+	}
+
+	public String getProtocol() {
+		return protocol;
+	}
+
+	/**
+	 * Returns the shared SSLContext, building it on first use.
+	 *
+	 * @return SSLContext
+	 * @throws FEBAPIException if a store cannot be read or the protocol is not supported
+	 */
+	public synchronized SSLContext getSSLContext() throws FEBAPIException {
+		if(context == null)
+			context = buildContext();
+		return context;
+	}
+
+	public SSLSocketFactory getSocketFactory() throws FEBAPIException {
+		return getSSLContext().getSocketFactory();
+	}
+
+	public HostnameVerifier getHostnameVerifier() {
+		return HttpsURLConnection.getDefaultHostnameVerifier();
+	}
+
+	private SSLContext buildContext() throws FEBAPIException {
+		try {
+			if(!trustAll && trustStore == null && keyStore == null && DEFAULT_PROTOCOL.equals(protocol)) {
+				//same as SSLSocketFactory.getDefault(), including the javax.net.ssl system properties
+				logger.debug("Using the default SSLContext");
+				return SSLContext.getDefault();
+			}
+
+			KeyManager[] keyManagers = null;
+			if(keyStore != null) {
+				keyManagers = getKeyManagers(loadStore(keyStore, keyStorePassword, keyStoreType), keyStorePassword);
+			} else {
+				String sysStore = System.getProperty("javax.net.ssl.keyStore");
+				if(sysStore != null && !sysStore.isEmpty() && !"NONE".equals(sysStore)) {
+					String pwd = System.getProperty("javax.net.ssl.keyStorePassword");
+					char[] sysPassword = pwd == null ? null : pwd.toCharArray();
+					keyManagers = getKeyManagers(loadStore(sysStore, sysPassword, System.getProperty("javax.net.ssl.keyStoreType")), sysPassword);
+				}
+			}
+
+			TrustManager[] trustManagers = null;
+			if(trustAll) {
+				trustManagers = new TrustManager[] {new X509TrustManager() {
+					public X509Certificate[] getAcceptedIssuers() {
+						return new X509Certificate[0];
+					}
+					public void checkClientTrusted(X509Certificate[] certs, String authType) {
+					}
+					public void checkServerTrusted(X509Certificate[] certs, String authType) {
+					}
+				}};
+			} else if(trustStore != null) {
+				TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+				tmf.init(loadStore(trustStore, trustStorePassword, trustStoreType));
+				trustManagers = tmf.getTrustManagers();
+			}
+
+			SSLContext sc = SSLContext.getInstance(protocol);
+			sc.init(keyManagers, trustManagers, null);
+
+			SSLSessionContext sessions = sc.getClientSessionContext();
+			if(sessions != null) {
+				sessions.setSessionCacheSize(sessionCacheSize);
+				sessions.setSessionTimeout(sessionTimeout);
+			}
+
+			logger.debug("Created {} SSLContext (trustAll={}, trustStore={}, keyStore={})", protocol, trustAll, trustStore, keyStore);
+			return sc;
+		} catch(FEBAPIException e) {
+			throw e;
+		} catch(Exception e) {
+			throw new FEBAPIException("Failed to create the SSLContext. " + e.getMessage(), e);
+		}
+	}
+
+	private static KeyManager[] getKeyManagers(KeyStore ks, char[] password) throws Exception {
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		kmf.init(ks, password);
+		return kmf.getKeyManagers();
+	}
+
+	private static KeyStore loadStore(String path, char[] password, String type) throws FEBAPIException {
+		try(InputStream is = Files.newInputStream(Paths.get(path))) {
+			KeyStore ks = KeyStore.getInstance(type == null || type.isEmpty() ? KeyStore.getDefaultType() : type);
+			ks.load(is, password);
+			return ks;
+		} catch(Exception e) {
+			throw new FEBAPIException("Failed to load " + path + ". " + e.getMessage(), e);
+		}
+	}
+}
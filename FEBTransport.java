@@ -0,0 +1,57 @@
+package com.hcl.feb.api;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Defines how FEBAPIImpl obtains and gives back the HTTP connections used to talk to the FEB REST API.  Every FEBAPI
+ * method opens its connection through {@link #openConnection(URL)} and hands it back through {@link #releaseConnection(HttpURLConnection, boolean)}
+ * once the response has been consumed, so an implementation is free to pool, limit or reuse the underlying sockets.
+ *
+ * The default implementation is {@link FEBPooledTransport}.  A custom transport can be set with:
+ *
+ * <pre>
+ * {@code FEBAPIImpl febapi = new FEBAPIImpl(host, context, ignoreSSL, protocol, user, pwd, freedomIdentifyKey);
+ * febapi.setTransport(new FEBPooledTransport(20, 100));}
+ * </pre>
+ *
+ * Implementations must be thread safe, a single FEBAPIImpl may be shared by many threads.
+ *
+ * @author ChristopherDawes
+ *
+ */
+public interface FEBTransport {
+
+	/**
+	 * Opens a connection to the specified URL.  The request method, headers and SSL settings are applied by the caller.
+	 *
+	 * @param url - The URL of the FEB REST endpoint.
+	 * @return HttpURLConnection
+	 * @throws IOException if the connection cannot be opened
+	 */
+	public HttpURLConnection openConnection(URL url) throws IOException;
+
+	/**
+	 * Returns a connection that was obtained from {@link #openConnection(URL)}.  Releasing a connection more than once has no effect.
+	 *
+	 * @param conn - The connection to release.
+	 * @param reusable - true if the response has been received and the socket may be kept alive for another request, false if
+	 * the exchange was abandoned and the socket must be closed.
+	 */
+	public void releaseConnection(HttpURLConnection conn, boolean reusable);
+
+	/**
+	 * Releases any resources held by the transport.  The transport should not be used after it has been shut down.
+	 */
+	public void shutdown();
+
+	/**
+	 * Called by FEBAPIImpl with its TLS settings when the transport is set on it and whenever they change.  Transports that hand
+	 * out HttpURLConnections from url.openConnection() can ignore it, FEBAPIImpl applies the settings to each HTTPS connection.
+	 *
+	 * @param tlsConfig - The TLS settings of the FEBAPIImpl.
+	 */
+	public default void setTLSConfig(FEBTLSConfig tlsConfig) {
+	}
+}
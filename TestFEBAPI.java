@@ -10,10 +10,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
@@ -33,13 +39,21 @@ import org.w3c.dom.NodeList;
 import com.hcl.feb.api.FEBAPI;
 import com.hcl.feb.api.FEBAPIException;
 import com.hcl.feb.api.FEBAPIImpl;
+import com.hcl.feb.api.FEBChangeFeed;
 import com.hcl.feb.api.FEBFilterMetaColumns;
 import com.hcl.feb.api.FEBFilterOperator;
 import com.hcl.feb.api.FEBFilterOrder;
 import com.hcl.feb.api.FEBFilterParam;
 import com.hcl.feb.api.FEBFilterRelationship;
 import com.hcl.feb.api.FEBFilters;
+import com.hcl.feb.api.FEBLoadFormat;
+import com.hcl.feb.api.FEBLoadResult;
+import com.hcl.feb.api.FEBOperationType;
+import com.hcl.feb.api.FEBRecordCallback;
+import com.hcl.feb.api.FEBRecordLoader;
+import com.hcl.feb.api.FEBRecordStream;
 import com.hcl.feb.api.FEBResponse;
+import com.hcl.feb.api.FEBRetryPolicy;
 import com.hcl.feb.api.FEBReturnFormat;
 
 public class TestFEBAPI {
@@ -624,6 +638,107 @@ public class TestFEBAPI {
 				}
 //				r = fa.upgradeApplication(f, false, appid);
 				//***********************************************************
+			} else if("streamRecords".equals(operation)) {
+				//***********************************************************
+				//STREAM ALL RECORDS, PAGES ARE RETRIEVED IN THE BACKGROUND
+				filters.setPageSize(200);
+				FEBRecordStream recs = new FEBRecordStream(fa, appid, "F_Form1", filters, 2);
+				int count = 0;
+				try {
+					while(recs.hasNext()) {
+						JSONObject rec = recs.next();
+						logger.debug("RID {} = {}", count++, rec.get("uid"));
+					}
+				} finally {
+					recs.close();
+				}
+				logger.info("Total Records: {}", count);
+				//***********************************************************
+			} else if("coalescedGets".equals(operation)) {
+				//***********************************************************
+				//IDENTICAL CONCURRENT GETS SHARE ONE REQUEST
+				final FEBAPI api = fa;
+				final String app = appid;
+				final String rid = recid;
+				ExecutorService threads = Executors.newFixedThreadPool(10);
+				ArrayList<Callable<FEBResponse>> gets = new ArrayList<Callable<FEBResponse>>();
+				for(int i=0;i<10;i++) {
+					gets.add(new Callable<FEBResponse>() {
+						public FEBResponse call() throws Exception {
+							return api.retrieveRecord(app, "F_Form1", rid, FEBReturnFormat.JSON);
+						}
+					});
+				}
+				try {
+					for(boolean coalesce : new boolean[] {true, false}) {
+						((FEBAPIImpl)fa).setCoalesceRequests(coalesce);
+						long start = System.currentTimeMillis();
+						for(Future<FEBResponse> f : threads.invokeAll(gets))
+							logger.debug("Response Code = {}", f.get().responseCode);
+						logger.info("10 identical GETs, coalesce = {}: {}ms", coalesce, System.currentTimeMillis() - start);
+					}
+				} catch (InterruptedException | ExecutionException e) {
+					e.printStackTrace();
+				} finally {
+					threads.shutdown();
+				}
+				//***********************************************************
+			} else if("loadRecords".equals(operation)) {
+				//***********************************************************
+				//LOAD AN NDJSON FILE, RUN AGAIN TO RESUME FROM THE CHECKPOINT
+				FEBRecordLoader loader = new FEBRecordLoader(fa, appid, "F_Form1", 8);
+				loader.setRejectFile(Paths.get("C:\\temp\\F_Form1.rejects.ndjson"));
+				FEBLoadResult res = loader.load(Paths.get("C:\\temp\\F_Form1.ndjson"), FEBLoadFormat.NDJSON);
+				logger.info("Load: {}", res);
+				//***********************************************************
+			} else if("changeFeed".equals(operation)) {
+				//***********************************************************
+				//RECORDS CHANGED SINCE THE LAST RUN, THE WATERMARK IS KEPT IN THE FILE
+				FEBChangeFeed feed = new FEBChangeFeed(fa, appid, "F_Form1", Paths.get("C:\\temp\\F_Form1.watermark"));
+				logger.info("Changes since {}", feed.getWatermark());
+				int changed = feed.poll(new FEBRecordCallback() {
+					public boolean onRecord(JSONObject rec) {
+						logger.debug("Changed {} at {}", rec.get("uid"), rec.get("lastUpdated"));
+						return true;
+					}
+				});
+				logger.info("Changed Records: {}, watermark is now {}", changed, feed.getWatermark());
+				//***********************************************************
+			} else if("retryPolicy".equals(operation)) {
+				//***********************************************************
+				//RETRIES AND THE CIRCUIT BREAKER, STOP THE SERVER PART WAY THROUGH TO SEE THE BREAKER OPEN
+				((FEBAPIImpl)fa).setRetryPolicy(FEBOperationType.READ, new FEBRetryPolicy(4, 500, 5000));
+				((FEBAPIImpl)fa).setCircuitBreaker(3, 10000);
+				for(int i=0;i<20;i++) {
+					long start = System.currentTimeMillis();
+					try {
+						r = fa.retrieveRecord(appid, "F_Form1", recid, FEBReturnFormat.JSON);
+						logger.info("Attempt {}: HTTP {} in {}ms", i, r.responseCode, System.currentTimeMillis() - start);
+					} catch (FEBAPIException e) {
+						logger.info("Attempt {}: {} after {}ms", i, e.getMessage(), System.currentTimeMillis() - start);
+					}
+					try {
+						Thread.sleep(1000);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+				r = null;
+				//***********************************************************
+			} else if("sessionCookies".equals(operation)) {
+				//***********************************************************
+				//REUSING THE SESSION COOKIES VERSUS SENDING BASIC CREDENTIALS EVERY TIME
+				for(boolean cookies : new boolean[] {true, false}) {
+					((FEBAPIImpl)fa).setSessionCookies(cookies);
+					long start = System.currentTimeMillis();
+					for(int i=0;i<20;i++) {
+						r = fa.listRecords(appid, "F_Form1", null, FEBReturnFormat.JSON);
+						if(!r.isResponse20x())
+							logger.info("Request {} returned HTTP {}", i, r.responseCode);
+					}
+					logger.info("20 requests, session cookies = {}: {}ms", cookies, System.currentTimeMillis() - start);
+				}
+				//***********************************************************
 			} else if("stopApp".equals(operation)) {
 				appid = "c092624c-a5cf-4204-88e9-cf318b124263";
 				r = fa.stopApplication(appid);